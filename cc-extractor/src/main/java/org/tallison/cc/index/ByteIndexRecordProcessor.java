@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An {@link IndexRecordProcessor} that takes the utf-8 bytes of a row
+ * instead of a String.  {@link CCIndexReader} hands these a slice of its
+ * read buffer, so nothing is decoded or allocated unless the processor
+ * needs it.
+ * <p>
+ * The slice is only valid until {@link #process(byte[], int, int)} returns.
+ */
+public interface ByteIndexRecordProcessor extends IndexRecordProcessor {
+
+    /**
+     * @param bytes buffer holding the row; do not modify
+     * @param offset offset of the row in the buffer
+     * @param length length of the row without the line terminator
+     * @throws IOException
+     */
+    public void process(byte[] bytes, int offset, int length) throws IOException;
+
+    @Override
+    default void process(String row) throws IOException {
+        byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+        process(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @param processor
+     * @return the processor itself if it takes bytes, otherwise an
+     * adapter that decodes each row and calls {@link IndexRecordProcessor#process(String)}
+     */
+    public static ByteIndexRecordProcessor wrap(IndexRecordProcessor processor) {
+        if (processor instanceof ByteIndexRecordProcessor) {
+            return (ByteIndexRecordProcessor) processor;
+        }
+        return new StringProcessorAdapter(processor);
+    }
+}
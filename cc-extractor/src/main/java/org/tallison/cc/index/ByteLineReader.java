@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits a stream into lines without decoding it.  Lines end with \n;
+ * a trailing \r is dropped.  The line is a slice of {@link #getBuffer()}
+ * that is only valid until the next call to {@link #readLine()}.
+ * <p>
+ * The buffer grows to hold the longest line, and it is kept
+ * across {@link #reset(InputStream)}s.
+ */
+class ByteLineReader {
+
+    static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+
+    private InputStream is;
+    private byte[] buffer;
+    private int lineStart = 0;
+    //where to look for the next \n
+    private int pos = 0;
+    private int limit = 0;
+    private int start = 0;
+    private boolean eof = false;
+
+    ByteLineReader(InputStream is) {
+        this(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    ByteLineReader(InputStream is, int bufferSize) {
+        this.is = is;
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * Starts reading from a new stream, keeping the buffer
+     */
+    void reset(InputStream is) {
+        this.is = is;
+        lineStart = 0;
+        pos = 0;
+        limit = 0;
+        start = 0;
+        eof = false;
+    }
+
+    /**
+     * @return the length of the next line or -1 if there are no more lines
+     * @throws IOException
+     */
+    int readLine() throws IOException {
+        while (true) {
+            for (int i = pos; i < limit; i++) {
+                if (buffer[i] == '\n') {
+                    return endLine(i, i + 1);
+                }
+            }
+            pos = limit;
+            if (eof) {
+                if (lineStart < limit) {
+                    return endLine(limit, limit);
+                }
+                return -1;
+            }
+            fill();
+        }
+    }
+
+    byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * @return offset of the current line in {@link #getBuffer()}
+     */
+    int getStart() {
+        return start;
+    }
+
+    private int endLine(int end, int next) {
+        start = lineStart;
+        if (end > start && buffer[end - 1] == '\r') {
+            end--;
+        }
+        lineStart = next;
+        pos = next;
+        return end - start;
+    }
+
+    private void fill() throws IOException {
+        if (lineStart > 0) {
+            System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+            limit -= lineStart;
+            pos -= lineStart;
+            lineStart = 0;
+        }
+        if (limit == buffer.length) {
+            byte[] bigger = new byte[buffer.length * 2];
+            System.arraycopy(buffer, 0, bigger, 0, limit);
+            buffer = bigger;
+        }
+        int read = is.read(buffer, limit, buffer.length - limit);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+}
@@ -17,10 +17,13 @@
 package org.tallison.cc.index;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorCompletionService;
@@ -32,8 +35,46 @@ import java.util.concurrent.TimeUnit;
 /**
  * This is the main driver for the mappers.
  *
- * Usage: java -cp xxx.jar CCIndexBatchReader &lt;numThreads&gt; &lt;cc_index_directory&gt; &lt;mapper_class&gt;
- * &lt;mapper_class_args ...&gt;
+ * Usage: java -cp xxx.jar CCIndexBatchReader &lt;options&gt; &lt;numThreads&gt; &lt;cc_index_directory&gt; &lt;mapper_class&gt;
+ * &lt;mapper_class_args ...&gt; [-- &lt;mapper_class&gt; &lt;mapper_class_args ...&gt;]...
+ * <p>
+ * Several mappers separated by "--" share a single pass over the index;
+ * each row is parsed once and the records go to all of the mappers.
+ * <p>
+ * Options:
+ * <ul>
+ *     <li>-splits &lt;n&gt; split each cdx-NNNNN.gz into n ranges at gzip member
+ *     boundaries so that several threads can work on a single shard</li>
+ *     <li>-maxRangeMB &lt;n&gt; split shards that are bigger than n MB (compressed) into
+ *     ranges of at most roughly n MB, in addition to -splits</li>
+ *     <li>-clusterIdx &lt;path&gt; cluster.idx to use to find the member boundaries;
+ *     by default, this looks for cluster.idx in the index directory and scans the
+ *     shards if it can't find it</li>
+ *     <li>-surtPrefix &lt;prefix&gt; only read the blocks from cluster.idx that may contain
+ *     keys starting with this surt prefix, e.g. "com,example)/" or "uk,"; this can be
+ *     repeated, and it requires a cluster.idx</li>
+ *     <li>-inflaters &lt;n&gt; pipelined mode: n threads inflate the shards and cut them
+ *     into batches of lines, and &lt;numThreads&gt; threads run the batches through
+ *     the mappers.  The batches go through a bounded queue, so the inflaters block
+ *     when the mappers fall behind.</li>
+ *     <li>-batchSize &lt;n&gt; lines per batch in pipelined mode (default: 1000)</li>
+ *     <li>-queueSize &lt;n&gt; max number of batches waiting for the mappers in pipelined
+ *     mode (default: 2 * (numThreads + inflaters))</li>
+ *     <li>-checkpoint &lt;path&gt; journal of finished ranges; a restarted run with the
+ *     same journal, options and mappers skips the ranges in the journal.  The mappers
+ *     write their output per range (see {@link Checkpointable}) so that the
+ *     reducers see each range exactly once.  Not available in pipelined mode.</li>
+ *     <li>-quarantine &lt;dir&gt; write the records that can't be parsed to per-thread
+ *     files in this directory; by default, they're only counted</li>
+ *     <li>-aggregate the counting mappers merge their counts in memory when they're
+ *     done, and each writes one sorted &lt;prefix&gt;.txt in its output directory
+ *     instead of a file per thread, so there's no need to run the reducers
+ *     (see {@link SharedAggregation}).  The other mappers write their files as usual.
+ *     Not available with -checkpoint.</li>
+ * </ul>
+ * <p>
+ * The ranges are handed to the threads longest first so that a big shard
+ * doesn't start at the end of the run and leave one thread working alone.
  */
 public class CCIndexBatchReader {
 
@@ -43,49 +84,217 @@ public class CCIndexBatchReader {
             "CountMimeByExt",
             "CountMimes",
             "DownSample",
+            "DuplicateStats",
             "FindURLsFromDigests",
-            "CountTopLevelDomains"
+            "CountTopLevelDomains",
+            "GroupBy"
     };
 
     private final static String PACKAGE_NAME = "org.tallison.cc.index.mappers";
 
+    private final static String MAPPER_SEPARATOR = "--";
+
+    private int splits = 1;
+    private long maxRangeSize = -1;
+    private Path clusterIdxPath = null;
+    private List<String> surtPrefixes = new ArrayList<>();
+    private int inflaters = 0;
+    private int batchSize = 1000;
+    private int queueSize = -1;
+    private Path checkpointPath = null;
+    private CheckpointJournal journal = null;
+
     public void execute(String[] args) throws Exception {
 
-        if (args[0].equals("-h") || args[0].equals("--help")) {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
             usage();
             System.exit(1);
         }
 
-
-        int numThreads = Integer.parseInt(args[0]);
-        Path indexDir = Paths.get(args[1]);
-        String pClass = args[2];
+        int i = parseOptions(args);
+        int numThreads = Integer.parseInt(args[i]);
+        Path indexDir = Paths.get(args[i+1]);
+        List<IndexRecordProcessorFactory> mappers =
+                newFactories(parseMappers(Arrays.copyOfRange(args, i+2, args.length)));
         //load index files into memory...there should only be 300 for now
-        File[] gzs = indexDir.toFile().listFiles();
-        numThreads = (gzs.length < numThreads) ? gzs.length : numThreads;
-
-        ArrayBlockingQueue<Path> paths = new ArrayBlockingQueue<>(gzs.length+numThreads);
+        File[] gzs = indexDir.toFile().listFiles((dir, name) -> name.endsWith(".gz"));
         Arrays.sort(gzs);
-        int cnt = 0;
-        for (File f : gzs) {
-            paths.add(f.toPath());
+
+        List<CCIndexRange> ranges = new ArrayList<>();
+        ClusterIdx clusterIdx = loadClusterIdx(indexDir);
+        if (surtPrefixes.size() > 0) {
+            ranges.addAll(clusterIdx.getRanges(indexDir, surtPrefixes));
+        } else {
+            for (File f : gzs) {
+                ranges.addAll(GzipMembers.split(f.toPath(), getNumRanges(f), clusterIdx));
+            }
         }
-        for (int i = 0; i < numThreads; i++) {
-            paths.add(CCIndexReaderWrapper.POISON);
+        //longest processing time first
+        Collections.sort(ranges, CCIndexRange.LONGEST_FIRST);
+        if (checkpointPath != null) {
+            if (inflaters > 0) {
+                throw new IllegalArgumentException("-checkpoint can't be used with -inflaters");
+            }
+            if (SharedAggregation.isEnabled()) {
+                throw new IllegalArgumentException("-checkpoint can't be used with -aggregate");
+            }
+            journal = CheckpointJournal.open(checkpointPath);
+            List<CCIndexRange> todo = new ArrayList<>();
+            for (CCIndexRange range : ranges) {
+                if (! journal.isCompleted(range.getId())) {
+                    todo.add(range);
+                }
+            }
+            System.err.println("skipping " + (ranges.size() - todo.size()) +
+                    " ranges that are in the checkpoint journal");
+            ranges = todo;
+        }
+        if (ranges.size() == 0) {
+            System.err.println("Couldn't find anything to process in " + indexDir);
+            return;
+        }
+        if (inflaters > 0) {
+            executePipelined(ranges, numThreads, mappers);
+        } else {
+            execute(ranges, numThreads, mappers);
         }
+        SharedAggregation.writeAll();
+        CCIndexQuarantine.close();
+        if (CCIndexQuarantine.getTotal() > 0) {
+            System.err.println("couldn't parse " + CCIndexQuarantine.getTotal() +
+                    " records: " + CCIndexQuarantine.getSummary());
+        }
+        MimeNormalizer mimes = MimeNormalizer.getDefault();
+        System.err.println("mime cache: " + mimes.getHits() + " hits, " +
+                mimes.getMisses() + " misses, " + mimes.size() + " entries");
+        System.err.println("symbols: " + CCIndexSymbols.getSummary());
+        System.exit(1);
+    }
+
+    //each thread inflates its ranges and runs the lines through its own processor
+    private void execute(List<CCIndexRange> ranges, int numThreads,
+                         List<IndexRecordProcessorFactory> mappers) throws Exception {
+        numThreads = (ranges.size() < numThreads) ? ranges.size() : numThreads;
+
+        ArrayBlockingQueue<CCIndexRange> paths = loadRanges(ranges, numThreads);
 
         ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
         ExecutorCompletionService<Integer> completionService = new ExecutorCompletionService<Integer>(executorService);
 
-        String[] newArgs = Arrays.copyOfRange(args, 3, args.length);
-        List<IndexRecordProcessor> procs = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            IndexRecordProcessor p = newProcessor(mappers);
+            completionService.submit(new CCIndexReaderWrapper(paths, p, newReader(), journal));
+        }
+        waitFor(completionService, numThreads);
+        if (journal != null) {
+            journal.close();
+        }
+        executorService.shutdown();
+        executorService.shutdownNow();
+    }
+
+    //inflater threads cut the ranges into batches of lines, and
+    //numThreads processor threads run the batches through the processors
+    private void executePipelined(List<CCIndexRange> ranges, int numThreads,
+                                  List<IndexRecordProcessorFactory> mappers) throws Exception {
+        int numInflaters = (ranges.size() < inflaters) ? ranges.size() : inflaters;
+        ArrayBlockingQueue<CCIndexRange> paths = loadRanges(ranges, numInflaters);
+        int capacity = (queueSize > 0) ? queueSize : 2 * (numThreads + numInflaters);
+        ArrayBlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(capacity + numThreads);
+
+        ExecutorService inflaterService = Executors.newFixedThreadPool(numInflaters);
+        ExecutorCompletionService<Integer> inflaterCompletionService = new ExecutorCompletionService<Integer>(inflaterService);
+        ExecutorService processorService = Executors.newFixedThreadPool(numThreads);
+        ExecutorCompletionService<Integer> processorCompletionService = new ExecutorCompletionService<Integer>(processorService);
+
+        RowFilter rowFilter = RowFilter.ACCEPT_ALL;
+        for (int t = 0; t < numThreads; t++) {
+            IndexRecordProcessor p = newProcessor(mappers);
+            //the processors are all the same, so any one's filter will do
+            rowFilter = p.getRowFilter();
+            processorCompletionService.submit(new CCIndexBatchWrapper(batches, p));
+        }
+        for (int t = 0; t < numInflaters; t++) {
+            inflaterCompletionService.submit(new CCIndexReaderWrapper(paths,
+                    new CCIndexLineBatcher(batches, batchSize, rowFilter), newReader()));
+        }
+        waitFor(inflaterCompletionService, numInflaters);
+        for (int t = 0; t < numThreads; t++) {
+            batches.put(CCIndexBatchWrapper.POISON);
+        }
+        waitFor(processorCompletionService, numThreads);
+        inflaterService.shutdownNow();
+        processorService.shutdownNow();
+    }
+
+    private static ArrayBlockingQueue<CCIndexRange> loadRanges(List<CCIndexRange> ranges, int numThreads) {
+        ArrayBlockingQueue<CCIndexRange> paths = new ArrayBlockingQueue<>(ranges.size()+numThreads);
+        for (CCIndexRange range : ranges) {
+            paths.add(range);
+        }
+        for (int t = 0; t < numThreads; t++) {
+            paths.add(CCIndexReaderWrapper.POISON);
+        }
+        return paths;
+    }
+
+    /**
+     * Splits "mapper_class args... -- mapper_class args..." into
+     * one array per mapper with the class name first.
+     */
+    private static List<String[]> parseMappers(String[] args) {
+        List<String[]> mappers = new ArrayList<>();
+        int start = 0;
+        for (int j = 0; j <= args.length; j++) {
+            if (j == args.length || args[j].equals(MAPPER_SEPARATOR)) {
+                if (j == start) {
+                    throw new IllegalArgumentException("Expected a mapper class after " + MAPPER_SEPARATOR);
+                }
+                mappers.add(Arrays.copyOfRange(args, start, j));
+                start = j + 1;
+            }
+        }
+        return mappers;
+    }
+
+    //one factory per mapper for the whole run, so that the mappers that
+    //share state across threads load it once
+    private List<IndexRecordProcessorFactory> newFactories(List<String[]> mappers) throws Exception {
+        List<IndexRecordProcessorFactory> factories = new ArrayList<>();
+        for (String[] mapper : mappers) {
+            String pClass = mapper[0];
+            IndexRecordProcessorFactory factory = IndexRecordProcessorFactory.forName(
+                    PACKAGE_NAME + "." + pClass, Arrays.copyOfRange(mapper, 1, mapper.length));
+            if (checkpointPath != null &&
+                    ! Checkpointable.class.isAssignableFrom(factory.getProcessorClass())) {
+                throw new IllegalArgumentException(pClass + " doesn't support -checkpoint");
+            }
+            factories.add(factory);
+        }
+        return factories;
+    }
 
-        for (int i = 0; i < numThreads; i++) {
-            IndexRecordProcessor p = (IndexRecordProcessor) Class.forName(PACKAGE_NAME+"."+pClass).newInstance();
-            p.init(newArgs);
-            procs.add(p);
-            completionService.submit(new CCIndexReaderWrapper(paths, p));
+    //one processor per thread; if there's more than one mapper,
+    //they share the parsed records via a MultiRecordProcessor
+    private IndexRecordProcessor newProcessor(List<IndexRecordProcessorFactory> mappers) throws Exception {
+        if (mappers.size() == 1) {
+            return mappers.get(0).newProcessor();
         }
+        List<IndexRecordProcessor> processors = new ArrayList<>();
+        for (IndexRecordProcessorFactory mapper : mappers) {
+            processors.add(mapper.newProcessor());
+        }
+        return new MultiRecordProcessor(processors);
+    }
+
+    private CCIndexReader newReader() {
+        CCIndexReader reader = new CCIndexReader();
+        reader.setSurtPrefixes(surtPrefixes);
+        return reader;
+    }
+
+    private static void waitFor(ExecutorCompletionService<Integer> completionService,
+                                int numThreads) throws Exception {
         int completed = 0;
         while (completed < numThreads) {
             Future<Integer> result = completionService.poll(1, TimeUnit.SECONDS);
@@ -96,13 +305,82 @@ public class CCIndexBatchReader {
                 //System.out.println("In completion loop: "+completed);
             }
         }
-        executorService.shutdown();
-        executorService.shutdownNow();
-        System.exit(1);
+    }
+
+    private int getNumRanges(File f) {
+        if (maxRangeSize < 1) {
+            return splits;
+        }
+        long n = (f.length() + maxRangeSize - 1) / maxRangeSize;
+        return (int) Math.max(splits, Math.min(n, Integer.MAX_VALUE));
+    }
+
+    private int parseOptions(String[] args) throws IOException {
+        int i = 0;
+        while (i < args.length && args[i].startsWith("-")) {
+            if (args[i].equals("-splits")) {
+                splits = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-maxRangeMB")) {
+                maxRangeSize = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (args[i].equals("-clusterIdx")) {
+                clusterIdxPath = Paths.get(args[++i]);
+            } else if (args[i].equals("-surtPrefix")) {
+                surtPrefixes.add(args[++i]);
+            } else if (args[i].equals("-inflaters")) {
+                inflaters = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-batchSize")) {
+                batchSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-queueSize")) {
+                queueSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-checkpoint")) {
+                checkpointPath = Paths.get(args[++i]);
+            } else if (args[i].equals("-quarantine")) {
+                CCIndexQuarantine.setDirectory(Paths.get(args[++i]));
+            } else if (args[i].equals("-aggregate")) {
+                SharedAggregation.setEnabled(true);
+            } else {
+                throw new IllegalArgumentException("I regret I don't understand: " + args[i]);
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private ClusterIdx loadClusterIdx(Path indexDir) throws IOException {
+        if (splits < 2 && maxRangeSize < 1 && surtPrefixes.size() == 0) {
+            return null;
+        }
+        Path p = clusterIdxPath;
+        if (p == null) {
+            p = indexDir.resolve(ClusterIdx.CLUSTER_IDX);
+        }
+        if (Files.isRegularFile(p)) {
+            return ClusterIdx.load(p);
+        }
+        if (clusterIdxPath != null || surtPrefixes.size() > 0) {
+            throw new IllegalArgumentException("Couldn't find cluster.idx: " + p);
+        }
+        return null;
     }
 
     private static void usage() {
-        System.out.println("java -jar cc-extractor.jar <number of reducers> <directory_of_index.gzs> <reducer_name> arguments for reducers....");
+        System.out.println("java -jar cc-extractor.jar <options> <number of reducers> <directory_of_index.gzs> <reducer_name> arguments for reducers....");
+        System.out.println("    [-- <reducer_name> arguments for reducers....]...");
+        System.out.println("Reducers separated by -- are all run in a single pass over the index.");
+        System.out.println("Options:");
+        System.out.println("-splits <n>         split each index file into n ranges so that multiple threads can work on it");
+        System.out.println("-maxRangeMB <n>     also split index files that are bigger than n MB into ranges of about n MB");
+        System.out.println("-clusterIdx <path>  cluster.idx to use for splitting (default: <directory_of_index.gzs>/cluster.idx)");
+        System.out.println("-surtPrefix <p>     only read blocks that may contain keys starting with this surt prefix (repeatable)");
+        System.out.println("-inflaters <n>      pipelined mode: n threads inflate and split the index files, and");
+        System.out.println("                    <number of reducers> threads run the reducers on batches of lines");
+        System.out.println("-batchSize <n>      lines per batch in pipelined mode (default: 1000)");
+        System.out.println("-queueSize <n>      max batches waiting for the reducers in pipelined mode");
+        System.out.println("                    (default: 2 * (<number of reducers> + inflaters))");
+        System.out.println("-checkpoint <path>  journal of finished ranges; rerun with the same arguments to resume");
+        System.out.println("-quarantine <dir>   write records that can't be parsed to files in this directory");
+        System.out.println("-aggregate          merge the counts of all threads in memory and write one sorted file");
+        System.out.println("                    per counting reducer instead of a file per thread");
         System.out.println("Available reducers include:");
         for (String s : REDUCERS) {
             System.out.println(s);
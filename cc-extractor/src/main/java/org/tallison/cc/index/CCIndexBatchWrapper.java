@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+
+/**
+ * Second stage of the pipelined mode in {@link CCIndexBatchReader}.
+ * This takes batches of lines off the queue that the {@link CCIndexLineBatcher}s
+ * fill and runs them through the processor.
+ */
+class CCIndexBatchWrapper implements Callable<Integer> {
+    public static final List<String> POISON = new ArrayList<>();
+
+    private final ArrayBlockingQueue<List<String>> queue;
+    private final IndexRecordProcessor processor;
+
+    CCIndexBatchWrapper(ArrayBlockingQueue<List<String>> queue, IndexRecordProcessor processor) {
+        this.queue = queue;
+        this.processor = processor;
+    }
+
+    @Override
+    public Integer call() throws Exception {
+        while (true) {
+            List<String> batch = queue.take();//hang
+            if (batch == POISON) {
+                break;
+            }
+            for (String line : batch) {
+                try {
+                    processor.process(line);
+                } catch (IOException e) {
+                    //bad row
+                    e.printStackTrace();
+                }
+            }
+        }
+        processor.close();
+        return 1;
+    }
+}
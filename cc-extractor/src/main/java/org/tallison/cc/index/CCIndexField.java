@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fields of a {@link CCIndexRecord} with their keys in the cdx json.
+ * <p>
+ * {@link IndexRecordProcessor}s declare the fields they read so that
+ * the parser can skip the rest.
+ */
+public enum CCIndexField {
+    URL("url"),
+    MIME("mime"),
+    MIME_DETECTED("mime-detected"),
+    STATUS("status"),
+    DIGEST("digest"),
+    LENGTH("length"),
+    OFFSET("offset"),
+    FILENAME("filename"),
+    CHARSET("charset"),
+    LANGUAGES("languages"),
+    TRUNCATED("truncated");
+
+    public static final Set<CCIndexField> ALL =
+            Collections.unmodifiableSet(EnumSet.allOf(CCIndexField.class));
+
+    private final String key;
+
+    CCIndexField(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return the key in the cdx json
+     */
+    public String getKey() {
+        return key;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * First stage of the pipelined mode in {@link CCIndexBatchReader}.  This
+ * collects the lines that a {@link CCIndexReader} inflates into batches
+ * and puts the batches on a bounded queue for the {@link CCIndexBatchWrapper}s.
+ * <p>
+ * {@link #process(String)} blocks when the queue is full, so the
+ * inflating threads can't get more than queue size * batch size lines
+ * ahead of the processing threads.
+ * <p>
+ * Run this in a {@link CCIndexReaderWrapper}; {@link #close()} sends
+ * the last partial batch.  The processors' {@link RowFilter} runs here,
+ * so rejected rows never get batched.
+ */
+class CCIndexLineBatcher implements IndexRecordProcessor {
+
+    private final ArrayBlockingQueue<List<String>> queue;
+    private final int batchSize;
+    private final RowFilter rowFilter;
+    private List<String> batch;
+
+    CCIndexLineBatcher(ArrayBlockingQueue<List<String>> queue, int batchSize) {
+        this(queue, batchSize, RowFilter.ACCEPT_ALL);
+    }
+
+    CCIndexLineBatcher(ArrayBlockingQueue<List<String>> queue, int batchSize, RowFilter rowFilter) {
+        this.queue = queue;
+        this.batchSize = batchSize;
+        this.rowFilter = rowFilter;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    @Override
+    public void init(String[] args) throws Exception {
+    }
+
+    @Override
+    public void process(String line) throws IOException {
+        batch.add(line);
+        if (batch.size() >= batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public RowFilter getRowFilter() {
+        return rowFilter;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (batch.size() > 0) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        try {
+            queue.put(batch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while waiting for the processors");
+        }
+        batch = new ArrayList<>(batchSize);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Where the rows that {@link CCIndexRecord#parseRecords(String)} can't
+ * parse go.  Each rejected record is counted by reason, and, if a directory
+ * has been set, it is appended to that thread's quarantine file as
+ * <pre>
+ * reason\tbytes of the record
+ * </pre>
+ * so that it can be looked at (or rerun) later.
+ * <p>
+ * Call {@link #close()} once all of the threads are done.
+ */
+public class CCIndexQuarantine {
+
+    public enum Reason {
+        //no json object where one was expected
+        NO_JSON,
+        //the row ends inside of a json object
+        UNTERMINATED,
+        //neither the parser nor Gson could make sense of the json
+        BAD_JSON
+    }
+
+    private static final Reason[] REASONS = Reason.values();
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(REASONS.length);
+    private static final AtomicInteger FILE_COUNTER = new AtomicInteger(0);
+    //thread id -> that thread's quarantine file
+    private static final Map<Long, OutputStream> STREAMS = new ConcurrentHashMap<>();
+    private static volatile Path directory = null;
+
+    /**
+     * @param dir directory for the quarantine files; if this isn't set,
+     *            the rejected records are only counted
+     */
+    public static void setDirectory(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        directory = dir;
+    }
+
+    static void reject(Reason reason, byte[] bytes, int offset, int length) {
+        COUNTS.incrementAndGet(reason.ordinal());
+        if (directory == null) {
+            return;
+        }
+        try {
+            OutputStream os = getStream();
+            os.write(reason.name().getBytes(StandardCharsets.US_ASCII));
+            os.write('\t');
+            os.write(bytes, offset, length);
+            os.write('\n');
+        } catch (IOException e) {
+            //not worth stopping the run over
+            System.err.println("couldn't write to quarantine: " + e.getMessage());
+        }
+    }
+
+    public static long getCount(Reason reason) {
+        return COUNTS.get(reason.ordinal());
+    }
+
+    public static long getTotal() {
+        long total = 0;
+        for (Reason reason : REASONS) {
+            total += getCount(reason);
+        }
+        return total;
+    }
+
+    /**
+     * @return e.g. "NO_JSON=0 UNTERMINATED=2 BAD_JSON=1"
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (Reason reason : REASONS) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(reason.name()).append('=').append(getCount(reason));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Flushes and closes all of the threads' quarantine files
+     */
+    public static void close() throws IOException {
+        for (OutputStream os : STREAMS.values()) {
+            os.close();
+        }
+        STREAMS.clear();
+    }
+
+    private static OutputStream getStream() throws IOException {
+        long threadId = Thread.currentThread().getId();
+        OutputStream os = STREAMS.get(threadId);
+        if (os == null) {
+            Path p = directory.resolve("quarantine_" + FILE_COUNTER.getAndIncrement() + ".txt");
+            os = new BufferedOutputStream(Files.newOutputStream(p,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+            STREAMS.put(threadId, os);
+        }
+        return os;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+
+/**
+ * A byte range [start, end) of a cdx-NNNNN.gz shard.  The start and end
+ * must fall on gzip member boundaries (or the start/end of the file) so that
+ * the range can be inflated on its own.
+ */
+public class CCIndexRange {
+
+    /**
+     * Longest range first, then by file name and start so that the
+     * order is the same from run to run.
+     */
+    public static final Comparator<CCIndexRange> LONGEST_FIRST = new Comparator<CCIndexRange>() {
+        @Override
+        public int compare(CCIndexRange a, CCIndexRange b) {
+            int c = Long.compare(b.getLength(), a.getLength());
+            if (c != 0) {
+                return c;
+            }
+            c = a.getPath().getFileName().toString().compareTo(b.getPath().getFileName().toString());
+            if (c != 0) {
+                return c;
+            }
+            return Long.compare(a.getStart(), b.getStart());
+        }
+    };
+
+    private final Path path;
+    private final long start;
+    private final long end;
+
+    public CCIndexRange(Path path, long start, long end) {
+        this.path = path;
+        this.start = start;
+        this.end = end;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start;
+    }
+
+    /**
+     * @return an id for this range that can be used in a file name,
+     * e.g. cdx-00123.gz_0-123456; this is what the checkpoint journal records
+     */
+    public String getId() {
+        return path.getFileName() + "_" + start + "-" + end;
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + ":" + start + "-" + end;
+    }
+}
@@ -17,51 +17,106 @@
 
 package org.tallison.cc.index;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.zip.GZIPInputStream;
 
-public class CCIndexReader {
+/**
+ * Reads the rows of cdx shards and hands them to an {@link IndexRecordProcessor}.
+ * <p>
+ * The gzip decoder and line buffer are reused from range to range, so this
+ * is not thread safe; use one per thread and {@link #close()} it at the end.
+ */
+public class CCIndexReader implements Closeable {
     private int count = 0;
+    private final GzipMemberDecoder decoder = new GzipMemberDecoder();
+    private final ByteLineReader lineReader = new ByteLineReader(null);
+    private RowFilter surtPrefixFilter = RowFilter.ACCEPT_ALL;
+    private long filtered = 0;
+
+    /**
+     * If set, lines whose surt key doesn't start with one of these
+     * prefixes are skipped.  This is used with {@link ClusterIdx#getRanges(Path, List)},
+     * which returns whole blocks that may contain other keys.
+     *
+     * @param surtPrefixes
+     */
+    public void setSurtPrefixes(List<String> surtPrefixes) {
+        this.surtPrefixFilter = RowFilters.surtPrefix(surtPrefixes);
+    }
 
-    public void process(Path p, IndexRecordProcessor processor) {
+    public boolean process(Path p, IndexRecordProcessor processor) {
+        long size = 0;
+        try {
+            size = Files.size(p);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        return process(new CCIndexRange(p, 0, size), processor);
+    }
 
-        System.err.println("processing "+p.toString() + " :"+count);
-        try (InputStream is = new BufferedInputStream(new GZIPInputStream(Files.newInputStream(p)))) {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))) {
-                String line = reader.readLine();
-                int lines = 0;
-                while (line != null) {
-                    try {
-                        processor.process(line);
-                        if (++count % 100000 == 0) {
-                            System.err.println(p.getFileName().toString() + ": "+count);
-                        }
-                    } catch (IOException e) {
-                        //bad row
-                        e.printStackTrace();
+    /**
+     * Processes the lines in a range of a shard.  The range must start
+     * and end on gzip member boundaries.
+     *
+     * @param range
+     * @param processor
+     * @return false if the range couldn't be read to the end; rows that
+     * the processor couldn't handle don't count
+     */
+    public boolean process(CCIndexRange range, IndexRecordProcessor processor) {
+        Path p = range.getPath();
+        ByteIndexRecordProcessor byteProcessor = ByteIndexRecordProcessor.wrap(processor);
+        RowFilter filter = RowFilters.and(surtPrefixFilter, processor.getRowFilter());
+        System.err.println("processing "+range + " :"+count);
+        try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+            decoder.reset(channel, range.getStart(), range.getEnd());
+            lineReader.reset(decoder);
+            int length = lineReader.readLine();
+            while (length > -1) {
+                byte[] bytes = lineReader.getBuffer();
+                int start = lineReader.getStart();
+                if (! filter.accept(bytes, start, length)) {
+                    filtered++;
+                    length = lineReader.readLine();
+                    continue;
+                }
+                try {
+                    byteProcessor.process(bytes, start, length);
+                    if (++count % 100000 == 0) {
+                        System.err.println(p.getFileName().toString() + ": "+count);
                     }
-                    line = reader.readLine();
+                } catch (IOException e) {
+                    //bad row
+                    e.printStackTrace();
                 }
-
+                length = lineReader.readLine();
             }
         } catch (IOException e) {
             e.printStackTrace();
+            return false;
         }
-        System.err.println("finished processing "+p.toString() + " :"+count);
+        System.err.println("finished processing "+range + " :"+count + " (filtered: "+filtered+")");
+        return true;
+    }
 
+    /**
+     * Releases the gzip decoder's inflater
+     */
+    @Override
+    public void close() {
+        decoder.close();
     }
 
     public static void main(String[] args) throws Exception {
@@ -79,6 +134,7 @@ public class CCIndexReader {
         for (File f : gzs) {
             ccIndexReader.process(f.toPath(), p);
         }
+        ccIndexReader.close();
         p.close();
     }
 
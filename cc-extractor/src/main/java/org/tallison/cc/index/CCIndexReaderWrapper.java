@@ -17,32 +17,61 @@
 
 package org.tallison.cc.index;
 
-import java.nio.file.Path;
+import java.io.IOException;
 import java.nio.file.Paths;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
 
 class CCIndexReaderWrapper implements Callable<Integer> {
-    public static final Path POISON = Paths.get("");
+    public static final CCIndexRange POISON = new CCIndexRange(Paths.get(""), 0, 0);
 
-    private final ArrayBlockingQueue<Path> queue;
+    private final ArrayBlockingQueue<CCIndexRange> queue;
     private final IndexRecordProcessor processor;
-    private final CCIndexReader reader = new CCIndexReader();
+    private final CCIndexReader reader;
+    private final CheckpointJournal journal;
 
-    public CCIndexReaderWrapper(ArrayBlockingQueue<Path> queue, IndexRecordProcessor processor) {
+    public CCIndexReaderWrapper(ArrayBlockingQueue<CCIndexRange> queue, IndexRecordProcessor processor) {
+        this(queue, processor, new CCIndexReader());
+    }
+
+    public CCIndexReaderWrapper(ArrayBlockingQueue<CCIndexRange> queue, IndexRecordProcessor processor,
+                                CCIndexReader reader) {
+        this(queue, processor, reader, null);
+    }
+
+    /**
+     * @param journal if not null, the processor must be {@link Checkpointable};
+     *                it is checkpointed after each range, and the range is added
+     *                to the journal
+     */
+    public CCIndexReaderWrapper(ArrayBlockingQueue<CCIndexRange> queue, IndexRecordProcessor processor,
+                                CCIndexReader reader, CheckpointJournal journal) {
         this.queue = queue;
         this.processor = processor;
+        this.reader = reader;
+        this.journal = journal;
     }
 
     @Override
     public Integer call() throws Exception {
         while (true) {
-            Path p = queue.take();//hang
-            if (p.equals(POISON)) {
+            CCIndexRange range = queue.take();//hang
+            if (range == POISON) {
                 break;
             }
-            reader.process(p, processor);
+            boolean finished = reader.process(range, processor);
+            if (journal != null) {
+                if (finished) {
+                    ((Checkpointable) processor).checkpoint(range.getId());
+                    journal.complete(range.getId());
+                } else {
+                    //the processor has part of this range in memory, and that would
+                    //end up in the next checkpoint; stop here and let the restart redo it
+                    throw new IOException("couldn't finish " + range + "; stopping this thread");
+                }
+            }
         }
+        reader.close();
         processor.close();
         return 1;
     }
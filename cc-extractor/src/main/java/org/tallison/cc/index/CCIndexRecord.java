@@ -17,39 +17,66 @@
 
 package org.tallison.cc.index;
 
-import java.net.URI;
-import java.net.URISyntaxException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import com.google.gson.FieldNamingPolicy;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonSyntaxException;
+import org.tallison.utils.SymbolTable;
+import org.tallison.utils.URLScanner;
 
 public class CCIndexRecord {
 
-    private static Pattern INT_PATTERN = Pattern.compile("^\\d+$");
     private static Gson gson = new GsonBuilder()
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_DASHES)
             .create();
 
 
-    private String url;
-    private String mime;
-    private String mimeDetected;
-    private Integer status;
-    private String digest;
-    private Integer length;
-    private Integer offset;
-    private String filename;
-    private String charset;
-    private String languages;
-    private String truncated;
+    private static final ThreadLocal<URLScanner> URL_SCANNER =
+            new ThreadLocal<URLScanner>() {
+                @Override
+                protected URLScanner initialValue() {
+                    return new URLScanner();
+                }
+            };
+
+    private static final ThreadLocal<CCIndexRecordParser> PARSER =
+            new ThreadLocal<CCIndexRecordParser>() {
+                @Override
+                protected CCIndexRecordParser initialValue() {
+                    return new CCIndexRecordParser();
+                }
+            };
+
+    /**
+     * Value of the numeric fields when they're missing from the row or null
+     */
+    public static final int MISSING = -1;
+
+    //package private so that CCIndexRecordParser can fill these in
+    String url;
+    String mime;
+    String mimeDetected;
+    int status = MISSING;
+    String digest;
+    long length = MISSING;
+    long offset = MISSING;
+    String filename;
+    String charset;
+    String languages;
+    String truncated;
+    //ids in CCIndexSymbols for the low-cardinality fields, by field ordinal;
+    //transient so that gson doesn't write them
+    final transient int[] ids = new int[CCIndexField.values().length];
+
+    public CCIndexRecord() {
+        Arrays.fill(ids, MISSING);
+    }
 
     public String getUrl() {
         return url;
@@ -59,7 +86,10 @@ public class CCIndexRecord {
         return mime;
     }
 
-    public Integer getStatus() {
+    /**
+     * @return the http status or {@link #MISSING}
+     */
+    public int getStatus() {
         return status;
     }
 
@@ -67,11 +97,17 @@ public class CCIndexRecord {
         return digest;
     }
 
-    public Integer getLength() {
+    /**
+     * @return the length of the record in the warc or {@link #MISSING}
+     */
+    public long getLength() {
         return length;
     }
 
-    public Integer getOffset() {
+    /**
+     * @return the offset of the record in the warc or {@link #MISSING}
+     */
+    public long getOffset() {
         return offset;
     }
 
@@ -95,14 +131,66 @@ public class CCIndexRecord {
         return truncated;
     }
 
+    /**
+     * @param field one of the fields with a table in {@link CCIndexSymbols}
+     * @return the id of the field's value in that table or {@link #MISSING}
+     * if the value is null, wasn't parsed or didn't fit in the table
+     */
+    public int getId(CCIndexField field) {
+        return ids[field.ordinal()];
+    }
+
+    void reset() {
+        url = null;
+        mime = null;
+        mimeDetected = null;
+        status = MISSING;
+        digest = null;
+        length = MISSING;
+        offset = MISSING;
+        filename = null;
+        charset = null;
+        languages = null;
+        truncated = null;
+        Arrays.fill(ids, MISSING);
+    }
+
+    /**
+     * Records handed to {@link CCIndexRecordHandler}s and {@link CCIndexRecordProcessor}s
+     * are reused; use this to keep one.
+     *
+     * @return a copy of this record
+     */
+    public CCIndexRecord copy() {
+        CCIndexRecord copy = new CCIndexRecord();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    void copyFrom(CCIndexRecord other) {
+        url = other.url;
+        mime = other.mime;
+        mimeDetected = other.mimeDetected;
+        status = other.status;
+        digest = other.digest;
+        length = other.length;
+        offset = other.offset;
+        filename = other.filename;
+        charset = other.charset;
+        languages = other.languages;
+        truncated = other.truncated;
+        System.arraycopy(other.ids, 0, ids, 0, ids.length);
+    }
+
+    /**
+     * Lower cases the mime, strips quotes and collapses whitespace.  The
+     * results are cached and canonical; see {@link MimeNormalizer}.
+     *
+     * @param s raw mime; may be null
+     * @return normalized mime or null
+     */
     public static String normalizeMime(String s) {
-        if (s == null) {
-            return null;
-        }
-        s = s.toLowerCase(Locale.ENGLISH);
-        s = s.replaceAll("^\"|\"$", "");
-        s = s.replaceAll("\\s+", " ");
-        return s.trim();
+        return MimeNormalizer.getDefault().normalize(s);
     }
 
 
@@ -113,96 +201,91 @@ public class CCIndexRecord {
     /**
      *
      * @param url
-     * @return "" if no tld could be extracted
+     * @return the last label of the host in lower case or "" if no tld could be extracted
      */
     public static String getTLD(String url) {
-        if (url == null) {
-            return "";
-        }
-        Matcher intMatcher = INT_PATTERN.matcher("");
+        URLScanner scanner = URL_SCANNER.get();
+        scanner.scan(url);
+        String tld = scanner.getTLD();
+        return (tld == null) ? "" : tld;
+    }
 
-        try {
-            URI uri = new URI(url);
-            String host = uri.getHost();
-            if (host == null) {
-                return "";
-            }
-            int i = host.lastIndexOf(".");
-            String tld = "";
-            if (i > -1 && i+1 < host.length()) {
-                tld = host.substring(i+1);
-            } else {
-                //bad host...or do we want to handle xyz.com. ?
-                return tld;
-            }
-            if (intMatcher.reset(tld).find()) {
-                return "";
-            }
-            return tld;
+    public static List<CCIndexRecord> parseRecords(String row) {
+        return parseRecords(row, CCIndexField.ALL);
+    }
 
-        } catch (URISyntaxException e) {
-            //swallow
-        }
-        return "";
+    /**
+     * Same as {@link #parseRecords(String)}, but only the <code>fields</code>
+     * are guaranteed to be filled in; the others may be <code>null</code>.
+     * Rows that fall back to Gson still have all fields filled in.
+     *
+     * @param row row from a cdx file
+     * @param fields fields that the caller needs
+     * @return records
+     */
+    public static List<CCIndexRecord> parseRecords(String row, Set<CCIndexField> fields) {
+        byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+        return parseRecords(bytes, 0, bytes.length, fields);
     }
 
-    public static List<CCIndexRecord> parseRecords(String row) {
-        AtomicInteger i = new AtomicInteger(0);
+    /**
+     * Same as {@link #parseRecords(String, Set)} for a row that is still
+     * in utf-8 bytes.
+     * <p>
+     * This allocates a record per record in the row; in the index path, use
+     * {@link CCIndexRecordParser#parseRecords(byte[], int, int, Set, CCIndexRecordHandler)}
+     * instead, which reuses one.
+     *
+     * @param bytes buffer holding the row
+     * @param offset offset of the row in the buffer
+     * @param length length of the row
+     * @param fields fields that the caller needs
+     * @return records
+     */
+    public static List<CCIndexRecord> parseRecords(byte[] bytes, int offset, int length,
+                                                   Set<CCIndexField> fields) {
         List<CCIndexRecord> records = new ArrayList<>();
-        //for now turn off multi row splitting
-        //while (i.get() < row.length()) {
-        CCIndexRecord record = parseRecord(row, i);
-        if (record != null) {
-            records.add(record);
-        }/* else {
-                break;
-            }*/
-        //}
+        try {
+            PARSER.get().parseRecords(bytes, offset, length, fields, r -> records.add(r.copy()));
+        } catch (IOException e) {
+            //can't happen
+            throw new RuntimeException(e);
+        }
         return records;
-
     }
 
-    private static CCIndexRecord parseRecord(String row, AtomicInteger i) {
+    static CCIndexRecord fromJson(String json) {
+        CCIndexRecord r = gson.fromJson(json, CCIndexRecord.class);
+        if (r != null) {
+            r.setIds();
+        }
+        return r;
+    }
 
-        int urlI = row.indexOf(' ',i.get());
-        int dateI = row.indexOf(' ', urlI+1);
-        if (row.indexOf("{") == 0) {
-            try {
-                return gson.fromJson(row, CCIndexRecord.class);
-            } catch (JsonSyntaxException e) {
-                System.out.println(">>>"+row+"<<<");
-                e.printStackTrace();
-                return null;
-            }
-        } else {
-            if (dateI < 0) {
-                return null;
-            }
-            List<Integer> ends = new ArrayList<>();
-            int end = row.indexOf('}', dateI + 1);
+    /**
+     * Looks up the ids of the low-cardinality fields and replaces
+     * the strings with the table's
+     */
+    void setIds() {
+        mime = setId(CCIndexField.MIME, mime);
+        mimeDetected = setId(CCIndexField.MIME_DETECTED, mimeDetected);
+        charset = setId(CCIndexField.CHARSET, charset);
+        languages = setId(CCIndexField.LANGUAGES, languages);
+        truncated = setId(CCIndexField.TRUNCATED, truncated);
+        filename = setId(CCIndexField.FILENAME, filename);
+    }
 
-            while (end > -1) {
-                ends.add(end);
-                end = row.indexOf('}', end + 1);
-            }
-            if (ends.size() == 0) {
-                //barf
-                return null;
-            }
-            JsonSyntaxException ex = null;
-            for (int thisEnd : ends) {
-                String json = row.substring(dateI, thisEnd+1);
-                try {
-                    CCIndexRecord record = gson.fromJson(json, CCIndexRecord.class);
-                    i.set(thisEnd + 1);
-                    return record;
-                } catch (JsonSyntaxException e) {
-                }
+    private String setId(CCIndexField field, String value) {
+        int id = MISSING;
+        if (value != null) {
+            SymbolTable table = CCIndexSymbols.get(field);
+            id = table.getId(value);
+            if (id != SymbolTable.NO_ID) {
+                value = table.getSymbol(id);
             }
-            System.out.println(">>>"+row+"<<<");
-            ex.printStackTrace();
-            return null;
         }
+        ids[field.ordinal()] = id;
+        return value;
     }
 
     @Override
@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import com.google.gson.JsonParseException;
+import org.tallison.utils.SymbolTable;
+
+/**
+ * Hand-written parser for cdx rows that works directly on the UTF-8 bytes
+ * of a row:
+ * <pre>
+ * surt_key timestamp {"url": "...", "mime": "...", ...}
+ * </pre>
+ * or on rows that are only the json object.
+ * <p>
+ * The cdx json is a flat object with (mostly) string values, so this
+ * only handles flat objects.  If a row has anything this parser
+ * doesn't understand (nested objects, arrays, malformed json, numbers
+ * that don't fit), {@link #parse(byte[], int, int, CCIndexRecord)}
+ * returns -1, and the caller should fall back to Gson.
+ * <p>
+ * Callers can pass in the set of fields that they need; the values
+ * of the other fields are skipped without being decoded, and those
+ * fields are left <code>null</code> (or {@link CCIndexRecord#MISSING}) in the record.
+ * <p>
+ * {@link #parseRecords(byte[], int, int, Set, CCIndexRecordHandler)} handles
+ * whole rows, including the Gson fallback, and it reuses a single record so
+ * that parsing a row allocates nothing beyond the field values.  The
+ * values of the low-cardinality fields come from the {@link CCIndexSymbols}
+ * tables, so those aren't allocated either once a value has been seen.
+ * <p>
+ * This is not thread safe; use one per thread.
+ */
+public class CCIndexRecordParser {
+
+    private static final CCIndexField[] FIELDS = CCIndexField.values();
+    private static final byte[][] KEYS = new byte[FIELDS.length][];
+
+    static {
+        for (CCIndexField f : FIELDS) {
+            KEYS[f.ordinal()] = bytes(f.getKey());
+        }
+    }
+
+    private static final byte[] NULL = bytes("null");
+
+    //max entries in each of this parser's symbol caches
+    private static final int SYMBOL_CACHE_SIZE = 1 << 16;
+
+    private final StringBuilder scratch = new StringBuilder();
+    private final CCIndexRowTokenizer tokenizer = new CCIndexRowTokenizer();
+    private final CCIndexRecord record = new CCIndexRecord();
+
+    //in front of the CCIndexSymbols tables, by field ordinal; null for the other fields
+    private final SymbolTable.ByteCache[] symbolCaches = new SymbolTable.ByteCache[FIELDS.length];
+
+    //set by parseString/parseLiteral
+    private int valueStart;
+    private int valueEnd;
+    private boolean valueEscaped;
+    private boolean valueNull;
+    //set by parseLong
+    private long longValue;
+
+    public CCIndexRecordParser() {
+        for (CCIndexField f : FIELDS) {
+            if (CCIndexSymbols.isSymbol(f)) {
+                symbolCaches[f.ordinal()] = CCIndexSymbols.get(f).newByteCache(SYMBOL_CACHE_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Parses all of the records in a row and hands them to the handler
+     * one at a time.  The handler gets the same {@link CCIndexRecord}
+     * each time.  Records that can't be parsed, even by Gson, go to the
+     * {@link CCIndexQuarantine}.
+     *
+     * @param bytes utf-8 bytes
+     * @param offset offset of the row in <code>bytes</code>
+     * @param length length of the row
+     * @param fields fields to decode
+     * @param handler gets each record
+     * @return the number of records handed to the handler
+     * @throws IOException if the handler throws one; the rest of the row is skipped
+     */
+    public int parseRecords(byte[] bytes, int offset, int length, Set<CCIndexField> fields,
+                            CCIndexRecordHandler handler) throws IOException {
+        int parsed = 0;
+        //the common case: this gets the first record, and the tokenizer
+        //only has to check that there's nothing after it
+        int rest = offset;
+        int firstEnd = parse(bytes, offset, length, record, fields);
+        if (firstEnd > -1) {
+            parsed++;
+            handler.process(record);
+            rest = firstEnd;
+        }
+        tokenizer.reset(bytes, rest, offset + length - rest);
+        while (tokenizer.next()) {
+            int start = tokenizer.getObjectStart();
+            int end = tokenizer.getObjectEnd();
+            if (parse(bytes, start, end - start, record, fields) != end &&
+                    ! parseWithGson(bytes, start, end - start)) {
+                CCIndexQuarantine.reject(CCIndexQuarantine.Reason.BAD_JSON, bytes,
+                        tokenizer.getRecordStart(), end - tokenizer.getRecordStart());
+                continue;
+            }
+            parsed++;
+            handler.process(record);
+        }
+        if (tokenizer.getError() != null) {
+            CCIndexQuarantine.reject(tokenizer.getError(), bytes,
+                    tokenizer.getRecordStart(), tokenizer.getEnd() - tokenizer.getRecordStart());
+        }
+        return parsed;
+    }
+
+    private boolean parseWithGson(byte[] bytes, int offset, int length) {
+        CCIndexRecord parsed;
+        try {
+            parsed = CCIndexRecord.fromJson(new String(bytes, offset, length, StandardCharsets.UTF_8));
+        } catch (JsonParseException e) {
+            return false;
+        }
+        if (parsed == null) {
+            return false;
+        }
+        record.copyFrom(parsed);
+        return true;
+    }
+
+    /**
+     * Parses the first record in the row into <code>record</code>.  The record
+     * is reset before parsing.
+     *
+     * @param bytes utf-8 bytes
+     * @param offset offset of the row in <code>bytes</code>
+     * @param length length of the row
+     * @param record record to fill
+     * @return the offset just after the closing brace of the json object or -1 if
+     * this couldn't parse the row
+     */
+    public int parse(byte[] bytes, int offset, int length, CCIndexRecord record) {
+        return parse(bytes, offset, length, record, CCIndexField.ALL);
+    }
+
+    /**
+     * Parses the first record in the row into <code>record</code>, only
+     * decoding the values for <code>fields</code>.  The record is reset before parsing.
+     *
+     * @param bytes utf-8 bytes
+     * @param offset offset of the row in <code>bytes</code>
+     * @param length length of the row
+     * @param record record to fill
+     * @param fields fields to decode
+     * @return the offset just after the closing brace of the json object or -1 if
+     * this couldn't parse the row
+     */
+    public int parse(byte[] bytes, int offset, int length, CCIndexRecord record,
+                     Set<CCIndexField> fields) {
+        int end = offset + length;
+        int i = skipWhitespace(bytes, offset, end);
+        if (i < end && bytes[i] != '{') {
+            //skip the surt key and the timestamp
+            i = indexOf(bytes, ' ', i, end);
+            if (i < 0) {
+                return -1;
+            }
+            i = indexOf(bytes, ' ', i + 1, end);
+            if (i < 0) {
+                return -1;
+            }
+            i = skipWhitespace(bytes, i, end);
+        }
+        if (i >= end || bytes[i] != '{') {
+            return -1;
+        }
+        record.reset();
+        return parseObject(bytes, i + 1, end, record, fields);
+    }
+
+    private int parseObject(byte[] bytes, int i, int end, CCIndexRecord record,
+                            Set<CCIndexField> fields) {
+        i = skipWhitespace(bytes, i, end);
+        if (i < end && bytes[i] == '}') {
+            return i + 1;
+        }
+        while (i < end) {
+            if (bytes[i] != '"') {
+                return -1;
+            }
+            i = parseString(bytes, i + 1, end);
+            if (i < 0) {
+                return -1;
+            }
+            CCIndexField field = valueEscaped ? null : getField(bytes, valueStart, valueEnd);
+            if (field != null && !fields.contains(field)) {
+                field = null;
+            }
+            i = skipWhitespace(bytes, i, end);
+            if (i >= end || bytes[i] != ':') {
+                return -1;
+            }
+            i = skipWhitespace(bytes, i + 1, end);
+            if (i >= end) {
+                return -1;
+            }
+            boolean quoted = bytes[i] == '"';
+            if (quoted) {
+                i = parseString(bytes, i + 1, end);
+            } else {
+                i = parseLiteral(bytes, i, end);
+            }
+            if (i < 0) {
+                return -1;
+            }
+            if (field != null && !setField(bytes, field, quoted, record)) {
+                return -1;
+            }
+            i = skipWhitespace(bytes, i, end);
+            if (i >= end) {
+                return -1;
+            }
+            if (bytes[i] == '}') {
+                return i + 1;
+            } else if (bytes[i] != ',') {
+                return -1;
+            }
+            i = skipWhitespace(bytes, i + 1, end);
+        }
+        return -1;
+    }
+
+    private boolean setField(byte[] bytes, CCIndexField field, boolean quoted, CCIndexRecord record) {
+        switch (field) {
+            case STATUS:
+                if (valueNull) {
+                    return true;
+                }
+                if (! parseLong(bytes) || longValue > Integer.MAX_VALUE || longValue < Integer.MIN_VALUE) {
+                    return false;
+                }
+                record.status = (int) longValue;
+                return true;
+            case LENGTH:
+                if (valueNull) {
+                    return true;
+                }
+                if (! parseLong(bytes)) {
+                    return false;
+                }
+                record.length = longValue;
+                return true;
+            case OFFSET:
+                if (valueNull) {
+                    return true;
+                }
+                if (! parseLong(bytes)) {
+                    return false;
+                }
+                record.offset = longValue;
+                return true;
+        }
+        String s = null;
+        if (quoted) {
+            SymbolTable.ByteCache cache = symbolCaches[field.ordinal()];
+            if (cache == null) {
+                s = getString(bytes);
+            } else {
+                s = getSymbol(bytes, field, cache, record);
+            }
+        } else if (!valueNull) {
+            //unquoted non-null literal for a string field
+            return false;
+        }
+        switch (field) {
+            case URL:
+                record.url = s;
+                break;
+            case MIME:
+                record.mime = s;
+                break;
+            case MIME_DETECTED:
+                record.mimeDetected = s;
+                break;
+            case DIGEST:
+                record.digest = s;
+                break;
+            case FILENAME:
+                record.filename = s;
+                break;
+            case CHARSET:
+                record.charset = s;
+                break;
+            case LANGUAGES:
+                record.languages = s;
+                break;
+            case TRUNCATED:
+                record.truncated = s;
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Looks up the current value in the field's {@link CCIndexSymbols} table,
+     * sets its id in the record and returns the table's string for it
+     */
+    private String getSymbol(byte[] bytes, CCIndexField field, SymbolTable.ByteCache cache,
+                             CCIndexRecord record) {
+        int id;
+        if (valueEscaped) {
+            String s = getString(bytes);
+            if (s == null) {
+                return null;
+            }
+            id = cache.getTable().getId(s);
+            if (id == SymbolTable.NO_ID) {
+                return s;
+            }
+        } else {
+            id = cache.getId(bytes, valueStart, valueEnd - valueStart);
+            if (id == SymbolTable.NO_ID) {
+                return getString(bytes);
+            }
+        }
+        record.ids[field.ordinal()] = id;
+        return cache.getTable().getSymbol(id);
+    }
+
+    /**
+     * Parses a json string that starts just after the opening quote and
+     * records the start and end of its contents.
+     *
+     * @return the offset after the closing quote or -1
+     */
+    private int parseString(byte[] bytes, int i, int end) {
+        valueStart = i;
+        valueEscaped = false;
+        valueNull = false;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == '"') {
+                valueEnd = i;
+                return i + 1;
+            } else if (b == '\\') {
+                valueEscaped = true;
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses an unquoted number, true/false or null
+     *
+     * @return the offset after the literal or -1
+     */
+    private int parseLiteral(byte[] bytes, int i, int end) {
+        valueStart = i;
+        valueEscaped = false;
+        while (i < end) {
+            byte b = bytes[i];
+            if (b == ',' || b == '}' || isWhitespace(b)) {
+                break;
+            } else if (b == '{' || b == '[' || b == '"' || b == ':') {
+                return -1;
+            }
+            i++;
+        }
+        valueEnd = i;
+        if (valueEnd == valueStart) {
+            return -1;
+        }
+        valueNull = equals(bytes, valueStart, valueEnd, NULL);
+        return i;
+    }
+
+    private String getString(byte[] bytes) {
+        if (!valueEscaped) {
+            return new String(bytes, valueStart, valueEnd - valueStart, StandardCharsets.UTF_8);
+        }
+        scratch.setLength(0);
+        int segmentStart = valueStart;
+        int i = valueStart;
+        while (i < valueEnd) {
+            if (bytes[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > segmentStart) {
+                scratch.append(new String(bytes, segmentStart, i - segmentStart, StandardCharsets.UTF_8));
+            }
+            if (i + 1 >= valueEnd) {
+                return null;
+            }
+            byte e = bytes[i + 1];
+            i += 2;
+            switch (e) {
+                case '"':
+                case '\\':
+                case '/':
+                    scratch.append((char) e);
+                    break;
+                case 'b':
+                    scratch.append('\b');
+                    break;
+                case 'f':
+                    scratch.append('\f');
+                    break;
+                case 'n':
+                    scratch.append('\n');
+                    break;
+                case 'r':
+                    scratch.append('\r');
+                    break;
+                case 't':
+                    scratch.append('\t');
+                    break;
+                case 'u':
+                    if (i + 4 > valueEnd) {
+                        return null;
+                    }
+                    int c = 0;
+                    for (int j = 0; j < 4; j++) {
+                        int d = Character.digit(bytes[i + j], 16);
+                        if (d < 0) {
+                            return null;
+                        }
+                        c = (c << 4) | d;
+                    }
+                    scratch.append((char) c);
+                    i += 4;
+                    break;
+                default:
+                    return null;
+            }
+            segmentStart = i;
+        }
+        if (valueEnd > segmentStart) {
+            scratch.append(new String(bytes, segmentStart, valueEnd - segmentStart, StandardCharsets.UTF_8));
+        }
+        return scratch.toString();
+    }
+
+    /**
+     * Parses the current value as a long into {@link #longValue}
+     *
+     * @return false if the value isn't an integer or if it doesn't fit in a long
+     */
+    private boolean parseLong(byte[] bytes) {
+        if (valueEscaped) {
+            return false;
+        }
+        int i = valueStart;
+        boolean negative = false;
+        if (i < valueEnd && bytes[i] == '-') {
+            negative = true;
+            i++;
+        }
+        //at most 18 digits so that this can't overflow
+        if (i >= valueEnd || valueEnd - i > 18) {
+            return false;
+        }
+        long v = 0;
+        while (i < valueEnd) {
+            int d = bytes[i] - '0';
+            if (d < 0 || d > 9) {
+                return false;
+            }
+            v = v * 10 + d;
+            i++;
+        }
+        longValue = negative ? -v : v;
+        return true;
+    }
+
+    private static CCIndexField getField(byte[] bytes, int start, int end) {
+        int len = end - start;
+        for (int f = 0; f < KEYS.length; f++) {
+            if (KEYS[f].length == len && equals(bytes, start, end, KEYS[f])) {
+                return FIELDS[f];
+            }
+        }
+        return null;
+    }
+
+    private static boolean equals(byte[] bytes, int start, int end, byte[] target) {
+        if (end - start != target.length) {
+            return false;
+        }
+        for (int i = 0; i < target.length; i++) {
+            if (bytes[start + i] != target[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int i, int end) {
+        while (i < end && isWhitespace(bytes[i])) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
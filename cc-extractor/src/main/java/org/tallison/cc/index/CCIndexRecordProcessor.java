@@ -0,0 +1,34 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+
+/**
+ * An {@link IndexRecordProcessor} that can also work on records that
+ * have already been parsed.  This lets {@link MultiRecordProcessor} parse
+ * each row once and hand the records to all of its processors.
+ * <p>
+ * Implementations must not hold on to the record after
+ * {@link #process(CCIndexRecord)} returns (it is reused for the next record;
+ * see {@link CCIndexRecord#copy()}), and they must not modify it.
+ */
+public interface CCIndexRecordProcessor extends IndexRecordProcessor, CCIndexRecordHandler {
+
+    @Override
+    public void process(CCIndexRecord record) throws IOException;
+}
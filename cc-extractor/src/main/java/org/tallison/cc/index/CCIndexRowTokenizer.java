@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+/**
+ * Splits a cdx row into its records in a single pass.  A row is normally
+ * <pre>
+ * surt_key timestamp {json}
+ * </pre>
+ * but it may be only <code>{json}</code>, and some rows have several
+ * records glued together.  The tokenizer tracks braces, strings and escapes
+ * to find the end of each json object, so braces inside of
+ * values don't confuse it, and it never looks at a byte twice.
+ * <p>
+ * This is not thread safe; use one per thread.
+ */
+class CCIndexRowTokenizer {
+
+    private byte[] bytes;
+    private int pos;
+    private int end;
+
+    private int recordStart;
+    private int objectStart;
+    private int objectEnd;
+    private CCIndexQuarantine.Reason error;
+
+    void reset(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.pos = offset;
+        this.end = offset + length;
+        this.error = null;
+    }
+
+    /**
+     * Advances to the next record in the row.
+     *
+     * @return false at the end of the row or if the rest of the row is malformed;
+     * check {@link #getError()} to tell these apart
+     */
+    boolean next() {
+        if (error != null) {
+            return false;
+        }
+        int i = skipWhitespace(pos);
+        if (i >= end) {
+            return false;
+        }
+        recordStart = i;
+        if (bytes[i] != '{') {
+            //skip the surt key and the timestamp
+            i = skipToken(i);
+            i = skipToken(skipWhitespace(i));
+            i = skipWhitespace(i);
+            if (i >= end || bytes[i] != '{') {
+                return fail(CCIndexQuarantine.Reason.NO_JSON);
+            }
+        }
+        objectStart = i;
+        int depth = 0;
+        boolean inString = false;
+        while (i < end) {
+            byte b = bytes[i++];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (--depth == 0) {
+                    objectEnd = i;
+                    pos = i;
+                    return true;
+                }
+            }
+        }
+        return fail(CCIndexQuarantine.Reason.UNTERMINATED);
+    }
+
+    /**
+     * @return the start of the current record, including the surt key and timestamp
+     */
+    int getRecordStart() {
+        return recordStart;
+    }
+
+    /**
+     * @return offset of the current record's opening brace
+     */
+    int getObjectStart() {
+        return objectStart;
+    }
+
+    /**
+     * @return offset just after the current record's closing brace
+     */
+    int getObjectEnd() {
+        return objectEnd;
+    }
+
+    /**
+     * @return the end of the row
+     */
+    int getEnd() {
+        return end;
+    }
+
+    /**
+     * @return the problem with the rest of the row (starting at {@link #getRecordStart()})
+     * or null if there wasn't one
+     */
+    CCIndexQuarantine.Reason getError() {
+        return error;
+    }
+
+    private boolean fail(CCIndexQuarantine.Reason error) {
+        this.error = error;
+        pos = end;
+        return false;
+    }
+
+    private int skipToken(int i) {
+        while (i < end && bytes[i] != ' ' && bytes[i] != '\t') {
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < end && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\r' || bytes[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import org.tallison.utils.SymbolTable;
+
+/**
+ * Shared {@link SymbolTable}s for the low-cardinality fields of the cdx
+ * records: mime, detected mime, charset, languages, truncated and the
+ * warc filename.  The {@link CCIndexRecordParser} fills in the id of each
+ * of these values (see {@link CCIndexRecord#getId(CCIndexField)}) and the
+ * strings in the record are the table's, so mappers can key on the ids
+ * or compare the strings by identity.
+ * <p>
+ * The ids are only good for the life of the jvm; they depend on the
+ * order that the threads see the values.
+ */
+public class CCIndexSymbols {
+
+    /**
+     * Max size of each table; beyond this, values get {@link SymbolTable#NO_ID}
+     */
+    public static final int MAX_SIZE = 1 << 20;
+
+    private static final SymbolTable[] TABLES = new SymbolTable[CCIndexField.values().length];
+
+    static {
+        for (CCIndexField f : new CCIndexField[]{
+                CCIndexField.MIME, CCIndexField.MIME_DETECTED, CCIndexField.CHARSET,
+                CCIndexField.LANGUAGES, CCIndexField.TRUNCATED, CCIndexField.FILENAME}) {
+            TABLES[f.ordinal()] = new SymbolTable(f.getKey(), MAX_SIZE);
+        }
+    }
+
+    /**
+     * @param field field
+     * @return the table for the field or null if the field isn't one of the
+     * low-cardinality fields
+     */
+    public static SymbolTable get(CCIndexField field) {
+        return TABLES[field.ordinal()];
+    }
+
+    /**
+     * @param field field
+     * @return whether the field has a table
+     */
+    public static boolean isSymbol(CCIndexField field) {
+        return TABLES[field.ordinal()] != null;
+    }
+
+    /**
+     * @return e.g. "mime=512, mime-detected=340, ..."
+     */
+    public static String getSummary() {
+        StringBuilder sb = new StringBuilder();
+        for (SymbolTable table : TABLES) {
+            if (table == null) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(table.getName()).append('=').append(table.size());
+        }
+        return sb.toString();
+    }
+}
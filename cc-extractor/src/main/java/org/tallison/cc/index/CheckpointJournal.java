@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Append-only journal of the units ({@link CCIndexRange}s) that a run has
+ * finished, one {@link CCIndexRange#getId()} per line.  A restarted run
+ * skips the units in the journal.
+ * <p>
+ * A unit is only added after the processor has checkpointed it
+ * (see {@link Checkpointable}).  If the process dies while writing an
+ * entry, the partial last line is dropped, and that unit is run again.
+ */
+public class CheckpointJournal implements Closeable {
+
+    private final Set<String> completed = new HashSet<>();
+    private final FileChannel channel;
+
+    private CheckpointJournal(Path p) throws IOException {
+        long validLength = -1;
+        if (Files.isRegularFile(p)) {
+            byte[] bytes = Files.readAllBytes(p);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    String id = new String(bytes, start, i - start, StandardCharsets.UTF_8).trim();
+                    if (id.length() > 0) {
+                        completed.add(id);
+                    }
+                    start = i + 1;
+                }
+            }
+            validLength = start;
+        } else if (p.getParent() != null) {
+            Files.createDirectories(p.getParent());
+        }
+        channel = FileChannel.open(p, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        if (validLength > -1 && validLength < channel.size()) {
+            //drop the partial last line
+            channel.truncate(validLength);
+        }
+    }
+
+    public static CheckpointJournal open(Path p) throws IOException {
+        return new CheckpointJournal(p);
+    }
+
+    public synchronized boolean isCompleted(String unitId) {
+        return completed.contains(unitId);
+    }
+
+    public synchronized int size() {
+        return completed.size();
+    }
+
+    /**
+     * Records that the unit is finished.  The entry is forced to disk
+     * before this returns.
+     *
+     * @param unitId
+     * @throws IOException
+     */
+    public synchronized void complete(String unitId) throws IOException {
+        write(unitId + "\n");
+        completed.add(unitId);
+    }
+
+    private void write(String s) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        while (bb.hasRemaining()) {
+            channel.write(bb);
+        }
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+
+/**
+ * Processors that can be used in a resumable run (see {@link CheckpointJournal}).
+ */
+public interface Checkpointable {
+
+    /**
+     * Called after every row of a unit (a {@link CCIndexRange}) has been processed
+     * and before the unit is recorded in the journal.  When this returns,
+     * everything the processor has collected for the unit must be on disk
+     * so that a restarted run can skip the unit.  Writing the same unit
+     * twice (e.g. after a crash between this call and the journal entry)
+     * must replace the first output, not add to it.
+     *
+     * @param unitId id of the unit, see {@link CCIndexRange#getId()}
+     * @throws IOException
+     */
+    public void checkpoint(String unitId) throws IOException;
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * In-memory copy of a CommonCrawl cluster.idx file.
+ * <p>
+ * Each row in cluster.idx describes one gzip member (block) of a
+ * cdx-NNNNN.gz shard:
+ * <pre>
+ * surt_key timestamp \t cdx-NNNNN.gz \t offset \t length \t block_number
+ * </pre>
+ * Rows are sorted by surt key, and the first key of a block is the
+ * smallest key in that block.
+ */
+public class ClusterIdx {
+
+    public static final String CLUSTER_IDX = "cluster.idx";
+
+    private final List<Block> blocks;
+    private final Map<String, List<Block>> blocksByShard = new HashMap<>();
+
+    private ClusterIdx(List<Block> blocks) {
+        this.blocks = blocks;
+        for (Block b : blocks) {
+            List<Block> shardBlocks = blocksByShard.get(b.getShard());
+            if (shardBlocks == null) {
+                shardBlocks = new ArrayList<>();
+                blocksByShard.put(b.getShard(), shardBlocks);
+            }
+            shardBlocks.add(b);
+        }
+    }
+
+    public static ClusterIdx load(Path clusterIdx) throws IOException {
+        List<Block> blocks = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(clusterIdx, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while (line != null) {
+                String[] cols = line.split("\t");
+                if (cols.length < 4) {
+                    System.err.println("bad row in cluster.idx: " + line);
+                } else {
+                    try {
+                        blocks.add(new Block(cols[0], cols[1],
+                                Long.parseLong(cols[2]), Long.parseLong(cols[3])));
+                    } catch (NumberFormatException e) {
+                        System.err.println("bad row in cluster.idx: " + line);
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        return new ClusterIdx(blocks);
+    }
+
+    /**
+     * @param shardName file name of the shard, e.g. cdx-00123.gz
+     * @return blocks for that shard in file order or an empty list
+     * if this shard isn't in the cluster.idx
+     */
+    public List<Block> getBlocks(String shardName) {
+        List<Block> shardBlocks = blocksByShard.get(shardName);
+        if (shardBlocks == null) {
+            return Collections.emptyList();
+        }
+        return shardBlocks;
+    }
+
+    public List<Block> getBlocks() {
+        return blocks;
+    }
+
+    /**
+     * Finds the blocks that could contain keys that start with one of the
+     * surt prefixes and merges adjacent blocks into ranges.
+     * <p>
+     * A block holds the keys from its first key up to (but not including)
+     * the first key of the next block, so the block before the first block
+     * whose key starts with the prefix is included as well.
+     *
+     * @param indexDir directory containing the cdx-NNNNN.gz shards
+     * @param surtPrefixes surt prefixes, e.g. "com,example)/" or "uk,"
+     * @return ranges to read sorted by shard and offset
+     */
+    public List<CCIndexRange> getRanges(Path indexDir, List<String> surtPrefixes) {
+        TreeSet<Integer> selected = new TreeSet<>();
+        for (String prefix : surtPrefixes) {
+            int i = lowerBound(prefix);
+            if (i > 0) {
+                i--;
+            }
+            selected.add(i);
+            i++;
+            while (i < blocks.size() && blocks.get(i).getKey().startsWith(prefix)) {
+                selected.add(i);
+                i++;
+            }
+        }
+        List<Block> selectedBlocks = new ArrayList<>();
+        for (int i : selected) {
+            if (i < blocks.size()) {
+                selectedBlocks.add(blocks.get(i));
+            }
+        }
+        Collections.sort(selectedBlocks, new Comparator<Block>() {
+            @Override
+            public int compare(Block a, Block b) {
+                int c = a.getShard().compareTo(b.getShard());
+                if (c != 0) {
+                    return c;
+                }
+                return Long.compare(a.getOffset(), b.getOffset());
+            }
+        });
+
+        List<CCIndexRange> ranges = new ArrayList<>();
+        Block first = null;
+        long end = -1;
+        for (Block b : selectedBlocks) {
+            if (first != null && first.getShard().equals(b.getShard()) && end == b.getOffset()) {
+                end = b.getOffset() + b.getLength();
+                continue;
+            }
+            if (first != null) {
+                ranges.add(new CCIndexRange(indexDir.resolve(first.getShard()), first.getOffset(), end));
+            }
+            first = b;
+            end = b.getOffset() + b.getLength();
+        }
+        if (first != null) {
+            ranges.add(new CCIndexRange(indexDir.resolve(first.getShard()), first.getOffset(), end));
+        }
+        return ranges;
+    }
+
+    //index of the first block whose key is >= key
+    private int lowerBound(String key) {
+        int lo = 0;
+        int hi = blocks.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (blocks.get(mid).getKey().compareTo(key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    public static class Block {
+        private final String key;
+        private final String shard;
+        private final long offset;
+        private final long length;
+
+        Block(String key, String shard, long offset, long length) {
+            this.key = key;
+            this.shard = shard;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * @return the first "surt_key timestamp" in this block
+         */
+        public String getKey() {
+            return key;
+        }
+
+        public String getShard() {
+            return shard;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
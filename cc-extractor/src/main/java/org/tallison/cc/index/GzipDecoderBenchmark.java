@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Single-threaded comparison of the ways to get lines out of a cdx shard:
+ * <ol>
+ *     <li>GZIPInputStream + BufferedReader.readLine (the original stack)</li>
+ *     <li>GZIPInputStream + {@link ByteLineReader}</li>
+ *     <li>{@link GzipMemberDecoder} + {@link ByteLineReader}</li>
+ * </ol>
+ * Reports compressed and uncompressed MB/s.  Since this is one thread,
+ * that's MB/s per core.
+ * <p>
+ * Usage: GzipDecoderBenchmark &lt;cdx.gz&gt; [iterations]
+ */
+public class GzipDecoderBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Path p = Paths.get(args[0]);
+        int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        long compressed = Files.size(p);
+        //warm up
+        readerStack(p);
+        byteLineStack(p);
+        decoderStack(p, new GzipMemberDecoder(), new ByteLineReader(null));
+
+        GzipMemberDecoder decoder = new GzipMemberDecoder();
+        ByteLineReader lineReader = new ByteLineReader(null);
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            long bytes = readerStack(p);
+            report("GZIPInputStream+BufferedReader", compressed, bytes, start);
+
+            start = System.nanoTime();
+            bytes = byteLineStack(p);
+            report("GZIPInputStream+ByteLineReader", compressed, bytes, start);
+
+            start = System.nanoTime();
+            bytes = decoderStack(p, decoder, lineReader);
+            report("GzipMemberDecoder+ByteLineReader", compressed, bytes, start);
+        }
+        decoder.close();
+    }
+
+    //these return the uncompressed bytes (not counting \n) so that the work isn't optimized away
+
+    private static long readerStack(Path p) throws IOException {
+        long bytes = 0;
+        try (InputStream is = Files.newInputStream(p);
+             BufferedReader reader = new BufferedReader(
+                     new InputStreamReader(new GZIPInputStream(new BufferedInputStream(is)),
+                             StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                //not exact for non-ascii, but close enough
+                bytes += line.length();
+                line = reader.readLine();
+            }
+        }
+        return bytes;
+    }
+
+    private static long byteLineStack(Path p) throws IOException {
+        long bytes = 0;
+        try (InputStream is = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+            ByteLineReader reader = new ByteLineReader(is);
+            int length = reader.readLine();
+            while (length > -1) {
+                bytes += length;
+                length = reader.readLine();
+            }
+        }
+        return bytes;
+    }
+
+    private static long decoderStack(Path p, GzipMemberDecoder decoder,
+                                     ByteLineReader reader) throws IOException {
+        long bytes = 0;
+        try (FileChannel channel = FileChannel.open(p, StandardOpenOption.READ)) {
+            decoder.reset(channel, 0, channel.size());
+            reader.reset(decoder);
+            int length = reader.readLine();
+            while (length > -1) {
+                bytes += length;
+                length = reader.readLine();
+            }
+        }
+        return bytes;
+    }
+
+    private static void report(String name, long compressed, long uncompressed, long startNanos) {
+        double sec = (System.nanoTime() - startNanos) / 1e9;
+        System.out.println(String.format("%-34s %8.1f MB/s compressed %8.1f MB/s uncompressed",
+                name, compressed / sec / 1e6, uncompressed / sec / 1e6));
+    }
+}
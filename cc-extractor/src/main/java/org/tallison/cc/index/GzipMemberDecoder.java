@@ -0,0 +1,236 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Multi-member gzip decoder for a {@link CCIndexRange} of a cdx shard.
+ * <p>
+ * Unlike {@link java.util.zip.GZIPInputStream}, this reads the compressed
+ * bytes in large chunks straight from a {@link FileChannel}, and the
+ * {@link Inflater}, the crc and the input buffer are reused across ranges
+ * via {@link #reset(FileChannel, long, long)}.  {@link #read(byte[], int, int)}
+ * inflates directly into the caller's buffer, e.g. the {@link ByteLineReader}'s.
+ * <p>
+ * As with GZIPInputStream, bytes after the last member that aren't a gzip
+ * header are ignored.  This is not thread safe; use one per thread and
+ * {@link #close()} it when the thread is done.
+ */
+class GzipMemberDecoder extends InputStream {
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] in;
+    private final byte[] single = new byte[1];
+
+    private FileChannel channel;
+    //next position to read in the channel, and the end of the range
+    private long pos;
+    private long end;
+    //bytes in [inPos, inLimit) haven't been handed to the inflater yet
+    private int inPos;
+    private int inLimit;
+    private boolean eof = true;
+
+    GzipMemberDecoder() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    GzipMemberDecoder(int bufferSize) {
+        in = new byte[bufferSize];
+    }
+
+    /**
+     * Starts decoding [start, end) of the channel.  This does not
+     * close the channel.
+     *
+     * @throws ZipException if the range doesn't start with a gzip header
+     */
+    void reset(FileChannel channel, long start, long end) throws IOException {
+        this.channel = channel;
+        this.pos = start;
+        this.end = end;
+        inPos = 0;
+        inLimit = 0;
+        eof = false;
+        if (! fill()) {
+            eof = true;
+            return;
+        }
+        if (! readHeader()) {
+            throw new ZipException("Not in GZIP format");
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int n = read(single, 0, 1);
+        return (n < 1) ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (eof) {
+            return -1;
+        }
+        if (len == 0) {
+            return 0;
+        }
+        try {
+            while (true) {
+                if (inflater.finished()) {
+                    inPos = inLimit - inflater.getRemaining();
+                    readTrailer();
+                    if (! nextMember()) {
+                        eof = true;
+                        return -1;
+                    }
+                    continue;
+                }
+                if (inflater.needsInput()) {
+                    if (inPos == inLimit && ! fill()) {
+                        throw new EOFException("Unexpected end of gzip member");
+                    }
+                    inflater.setInput(in, inPos, inLimit - inPos);
+                    inPos = inLimit;
+                }
+                int n = inflater.inflate(b, off, len);
+                if (n > 0) {
+                    crc.update(b, off, n);
+                    return n;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new ZipException("gzip member needs a dictionary");
+                }
+            }
+        } catch (DataFormatException e) {
+            String msg = e.getMessage();
+            throw new ZipException((msg == null) ? "Invalid deflate data" : msg);
+        }
+    }
+
+    /**
+     * Releases the inflater.  The decoder can't be used after this.
+     */
+    @Override
+    public void close() {
+        eof = true;
+        inflater.end();
+    }
+
+    //reads the next member's header if there is one
+    private boolean nextMember() throws IOException {
+        if (inPos == inLimit && ! fill()) {
+            return false;
+        }
+        try {
+            return readHeader();
+        } catch (EOFException e) {
+            //trailing garbage
+            return false;
+        }
+    }
+
+    /**
+     * @return false if the bytes at inPos aren't a gzip header
+     */
+    private boolean readHeader() throws IOException {
+        if (readByte() != 0x1f || readByte() != 0x8b || readByte() != 8) {
+            return false;
+        }
+        int flags = readByte();
+        if ((flags & GzipMembers.FRESERVED) != 0) {
+            return false;
+        }
+        //mtime, xfl, os
+        skip(6);
+        if ((flags & GzipMembers.FEXTRA) != 0) {
+            skip(readByte() | (readByte() << 8));
+        }
+        if ((flags & GzipMembers.FNAME) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & GzipMembers.FCOMMENT) != 0) {
+            skipZeroTerminated();
+        }
+        if ((flags & GzipMembers.FHCRC) != 0) {
+            skip(2);
+        }
+        inflater.reset();
+        crc.reset();
+        return true;
+    }
+
+    private void readTrailer() throws IOException {
+        long expectedCrc = readUInt();
+        long expectedSize = readUInt();
+        if (expectedCrc != crc.getValue() ||
+                expectedSize != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    private long readUInt() throws IOException {
+        return ((long) readByte()) | ((long) readByte() << 8) |
+                ((long) readByte() << 16) | ((long) readByte() << 24);
+    }
+
+    private void skipZeroTerminated() throws IOException {
+        while (readByte() != 0) {
+        }
+    }
+
+    private void skip(int n) throws IOException {
+        for (int i = 0; i < n; i++) {
+            readByte();
+        }
+    }
+
+    private int readByte() throws IOException {
+        if (inPos == inLimit && ! fill()) {
+            throw new EOFException("Unexpected end of gzip header or trailer");
+        }
+        return in[inPos++] & 0xff;
+    }
+
+    //refills the input buffer; only call this once the buffer has been used up
+    private boolean fill() throws IOException {
+        if (pos >= end) {
+            return false;
+        }
+        ByteBuffer bb = ByteBuffer.wrap(in, 0, (int) Math.min(in.length, end - pos));
+        int read = channel.read(bb, pos);
+        if (read <= 0) {
+            return false;
+        }
+        pos += read;
+        inPos = 0;
+        inLimit = read;
+        return true;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Utilities for finding gzip member boundaries in the multi-member
+ * cdx-NNNNN.gz shards so that a single shard can be split into
+ * {@link CCIndexRange}s and processed by several threads.
+ * <p>
+ * If a cluster.idx is available, the block offsets from that file are used.
+ * Otherwise, the shard is scanned for the gzip magic bytes, and each
+ * candidate is verified by inflating the member and checking the
+ * crc and size in its trailer.
+ */
+public class GzipMembers {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    static final int FHCRC = 2;
+    static final int FEXTRA = 4;
+    static final int FNAME = 8;
+    static final int FCOMMENT = 16;
+    static final int FRESERVED = 0xe0;
+
+    /**
+     * Splits a shard into at most <code>numRanges</code> ranges of roughly
+     * equal compressed size.  Fewer ranges are returned if there aren't enough
+     * members.
+     *
+     * @param p shard
+     * @param numRanges number of ranges to try to split the shard into
+     * @param clusterIdx can be <code>null</code>; if not null and if it
+     *                   contains this shard, its offsets are used instead of
+     *                   scanning the shard
+     * @return ranges in file order
+     * @throws IOException
+     */
+    public static List<CCIndexRange> split(Path p, int numRanges, ClusterIdx clusterIdx) throws IOException {
+        long size = Files.size(p);
+        TreeSet<Long> starts = new TreeSet<>();
+        if (numRanges > 1) {
+            List<ClusterIdx.Block> blocks = (clusterIdx == null) ? null :
+                    clusterIdx.getBlocks(p.getFileName().toString());
+            if (blocks != null && blocks.size() > 0) {
+                addBlockStarts(blocks, size, numRanges, starts);
+            } else {
+                try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                    for (int i = 1; i < numRanges; i++) {
+                        long start = findMemberStart(ch, size * i / numRanges, size);
+                        if (start > 0) {
+                            starts.add(start);
+                        }
+                    }
+                }
+            }
+        }
+        List<CCIndexRange> ranges = new ArrayList<>();
+        long last = 0;
+        for (long start : starts) {
+            ranges.add(new CCIndexRange(p, last, start));
+            last = start;
+        }
+        ranges.add(new CCIndexRange(p, last, size));
+        return ranges;
+    }
+
+    private static void addBlockStarts(List<ClusterIdx.Block> blocks, long size,
+                                       int numRanges, TreeSet<Long> starts) {
+        int b = 0;
+        for (int i = 1; i < numRanges; i++) {
+            long target = size * i / numRanges;
+            while (b < blocks.size() && blocks.get(b).getOffset() < target) {
+                b++;
+            }
+            if (b == blocks.size()) {
+                return;
+            }
+            long start = blocks.get(b).getOffset();
+            if (start > 0 && start < size) {
+                starts.add(start);
+            }
+        }
+    }
+
+    /**
+     * @param ch channel
+     * @param from offset at which to start looking
+     * @param size size of the channel
+     * @return the offset of the first verified gzip member that starts at or after
+     * <code>from</code> or -1 if none was found
+     * @throws IOException
+     */
+    static long findMemberStart(FileChannel ch, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long pos = from;
+        while (pos < size) {
+            buffer.clear();
+            int read = readFully(ch, buffer, pos);
+            if (read < 3) {
+                return -1;
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read - 2; i++) {
+                if (bytes[i] == (byte) 0x1f && bytes[i + 1] == (byte) 0x8b && bytes[i + 2] == 8) {
+                    if (isMemberStart(ch, pos + i, size)) {
+                        return pos + i;
+                    }
+                }
+            }
+            //back up so that we don't miss magic bytes that straddle reads
+            pos += read - 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Parses the gzip header at the offset, inflates the member and checks
+     * the crc and size in the trailer.
+     */
+    static boolean isMemberStart(FileChannel ch, long offset, long size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(10);
+        if (readFully(ch, header, offset) < 10) {
+            return false;
+        }
+        byte[] h = header.array();
+        if (h[0] != (byte) 0x1f || h[1] != (byte) 0x8b || h[2] != 8) {
+            return false;
+        }
+        int flags = h[3] & 0xff;
+        if ((flags & FRESERVED) != 0) {
+            return false;
+        }
+        long pos = offset + 10;
+        if ((flags & FEXTRA) != 0) {
+            ByteBuffer xlen = ByteBuffer.allocate(2);
+            if (readFully(ch, xlen, pos) < 2) {
+                return false;
+            }
+            pos += 2 + ((xlen.get(0) & 0xff) | ((xlen.get(1) & 0xff) << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            pos = skipZeroTerminated(ch, pos, size);
+        }
+        if (pos > -1 && (flags & FCOMMENT) != 0) {
+            pos = skipZeroTerminated(ch, pos, size);
+        }
+        if ((flags & FHCRC) != 0) {
+            pos += 2;
+        }
+        if (pos < 0 || pos >= size) {
+            return false;
+        }
+
+        Inflater inflater = new Inflater(true);
+        CRC32 crc = new CRC32();
+        byte[] out = new byte[BUFFER_SIZE];
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        long inPos = pos;
+        try {
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    in.clear();
+                    int read = readFully(ch, in, inPos);
+                    if (read <= 0) {
+                        return false;
+                    }
+                    inPos += read;
+                    inflater.setInput(in.array(), 0, read);
+                }
+                int n = inflater.inflate(out);
+                if (n == 0 && inflater.needsDictionary()) {
+                    return false;
+                }
+                crc.update(out, 0, n);
+            }
+            long trailerStart = pos + inflater.getBytesRead();
+            ByteBuffer trailer = ByteBuffer.allocate(8);
+            if (readFully(ch, trailer, trailerStart) < 8) {
+                return false;
+            }
+            byte[] t = trailer.array();
+            return readUInt(t, 0) == crc.getValue() &&
+                    readUInt(t, 4) == (inflater.getBytesWritten() & 0xffffffffL);
+        } catch (DataFormatException e) {
+            return false;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static long skipZeroTerminated(FileChannel ch, long pos, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        while (pos < size) {
+            buffer.clear();
+            int read = readFully(ch, buffer, pos);
+            if (read <= 0) {
+                return -1;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == 0) {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return -1;
+    }
+
+    private static long readUInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xffL)) |
+                ((bytes[offset + 1] & 0xffL) << 8) |
+                ((bytes[offset + 2] & 0xffL) << 16) |
+                ((bytes[offset + 3] & 0xffL) << 24);
+    }
+
+    private static int readFully(FileChannel ch, ByteBuffer buffer, long pos) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = ch.read(buffer, pos + total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
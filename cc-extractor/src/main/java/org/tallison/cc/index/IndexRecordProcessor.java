@@ -19,6 +19,7 @@ package org.tallison.cc.index;
 
 
 import java.io.IOException;
+import java.util.Set;
 
 public interface IndexRecordProcessor {
 
@@ -27,4 +28,21 @@ public interface IndexRecordProcessor {
     public void process(String json) throws IOException;
 
     public void close() throws IOException;
+
+    /**
+     * @return the fields that this processor reads from a {@link CCIndexRecord}.
+     * The parser may leave the other fields <code>null</code>.
+     */
+    default Set<CCIndexField> getFields() {
+        return CCIndexField.ALL;
+    }
+
+    /**
+     * @return the check that {@link CCIndexReader} runs on each raw row before
+     * handing it to this processor; rows that it rejects never get parsed.
+     * The processor must still check the records that it does get.
+     */
+    default RowFilter getRowFilter() {
+        return RowFilter.ACCEPT_ALL;
+    }
 }
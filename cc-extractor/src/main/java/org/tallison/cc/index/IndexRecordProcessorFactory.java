@@ -0,0 +1,76 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+/**
+ * Creates the per-thread processors of one mapper in a run.  The state of
+ * a {@link SharedStateProcessor} is loaded when the first processor is
+ * created and handed to the others; other processors are just created
+ * and initialized with the args.
+ */
+public class IndexRecordProcessorFactory {
+
+    private final Class<? extends IndexRecordProcessor> processorClass;
+    private final String[] args;
+    private boolean loaded = false;
+    private Object state = null;
+
+    public IndexRecordProcessorFactory(Class<? extends IndexRecordProcessor> processorClass,
+                                       String[] args) {
+        this.processorClass = processorClass;
+        this.args = args.clone();
+    }
+
+    /**
+     * @param className fully qualified name of an {@link IndexRecordProcessor}
+     * @throws IllegalArgumentException if the class isn't a processor
+     */
+    public static IndexRecordProcessorFactory forName(String className, String[] args)
+            throws ClassNotFoundException {
+        Class<?> c = Class.forName(className);
+        if (!IndexRecordProcessor.class.isAssignableFrom(c)) {
+            throw new IllegalArgumentException(className + " isn't an IndexRecordProcessor");
+        }
+        return new IndexRecordProcessorFactory(c.asSubclass(IndexRecordProcessor.class), args);
+    }
+
+    public Class<? extends IndexRecordProcessor> getProcessorClass() {
+        return processorClass;
+    }
+
+    /**
+     * @return a new, initialized processor
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized IndexRecordProcessor newProcessor() throws Exception {
+        IndexRecordProcessor p = processorClass.newInstance();
+        if (p instanceof SharedStateProcessor) {
+            SharedStateProcessor<Object> shared = (SharedStateProcessor<Object>) p;
+            if (!loaded) {
+                long start = System.currentTimeMillis();
+                state = shared.loadState(args);
+                loaded = true;
+                System.err.println("loaded the shared state of " + processorClass.getSimpleName() +
+                        " in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            shared.init(args, state);
+        } else {
+            p.init(args);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches {@link CCIndexRecord#normalizeMime(String)}.  There are only a few
+ * thousand distinct raw mime strings in a crawl, so almost every call is
+ * a single map lookup instead of a lower case and two regexes.
+ * <p>
+ * The results are canonical: raw values that normalize to the same
+ * mime get the same String instance, so callers can compare them with ==
+ * and their hash codes are already computed.
+ * <p>
+ * The cache stops growing at its max size; after that, new raw values are
+ * normalized on every call (they still get a canonical result if one is
+ * already cached).  This is thread safe.
+ */
+public class MimeNormalizer {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private static final MimeNormalizer DEFAULT = new MimeNormalizer(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    //raw -> canonical normalized
+    private final ConcurrentHashMap<String, String> cache = new ConcurrentHashMap<>();
+    //normalized -> canonical instance of it
+    private final ConcurrentHashMap<String, String> canonical = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MimeNormalizer(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return the cache behind {@link CCIndexRecord#normalizeMime(String)}
+     */
+    public static MimeNormalizer getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * @param raw mime from a cdx record; may be null
+     * @return the canonical normalized mime or null
+     */
+    public String normalize(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        String normalized = cache.get(raw);
+        if (normalized != null) {
+            hits.increment();
+            return normalized;
+        }
+        misses.increment();
+        normalized = normalizeUncached(raw);
+        if (canonical.size() < maxSize) {
+            String existing = canonical.putIfAbsent(normalized, normalized);
+            normalized = (existing == null) ? normalized : existing;
+        } else {
+            String existing = canonical.get(normalized);
+            normalized = (existing == null) ? normalized : existing;
+        }
+        if (cache.size() < maxSize) {
+            cache.putIfAbsent(raw, normalized);
+        }
+        return normalized;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of raw values in the cache
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    static String normalizeUncached(String s) {
+        s = s.toLowerCase(Locale.ENGLISH);
+        s = s.replaceAll("^\"|\"$", "");
+        s = s.replaceAll("\\s+", " ");
+        return s.trim();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs several processors in one pass over the index.  Each row is parsed
+ * once (with the union of the processors' fields) for the
+ * {@link CCIndexRecordProcessor}s, and each record is handed to all of them
+ * before the next one is parsed into the same (reused) record.
+ * Other processors get the raw row.
+ * <p>
+ * The processors must already be initialized; {@link #init(String[])} does nothing.
+ */
+public class MultiRecordProcessor implements ByteIndexRecordProcessor, Checkpointable {
+
+    private final List<CCIndexRecordProcessor> recordProcessors = new ArrayList<>();
+    private final List<ByteIndexRecordProcessor> rowProcessors = new ArrayList<>();
+    private final List<IndexRecordProcessor> processors;
+    private final Set<CCIndexField> fields;
+    private final RowFilter rowFilter;
+    private final CCIndexRecordParser parser = new CCIndexRecordParser();
+    private final CCIndexRecordHandler fanOut = this::processRecord;
+    //first exception for the current row
+    private IOException rowException = null;
+
+    public MultiRecordProcessor(List<IndexRecordProcessor> processors) {
+        this.processors = processors;
+        EnumSet<CCIndexField> union = EnumSet.noneOf(CCIndexField.class);
+        List<RowFilter> filters = new ArrayList<>();
+        for (IndexRecordProcessor p : processors) {
+            if (p instanceof CCIndexRecordProcessor) {
+                recordProcessors.add((CCIndexRecordProcessor) p);
+            } else {
+                rowProcessors.add(ByteIndexRecordProcessor.wrap(p));
+            }
+            union.addAll(p.getFields());
+            filters.add(p.getRowFilter());
+        }
+        fields = Collections.unmodifiableSet(union);
+        rowFilter = RowFilters.or(filters);
+    }
+
+    @Override
+    public void init(String[] args) throws Exception {
+    }
+
+    /**
+     * Every processor sees every row, even if an earlier one
+     * throws an exception.  The first exception is rethrown.
+     */
+    @Override
+    public void process(byte[] bytes, int offset, int length) throws IOException {
+        rowException = null;
+        if (recordProcessors.size() > 0) {
+            parser.parseRecords(bytes, offset, length, fields, fanOut);
+        }
+        for (ByteIndexRecordProcessor p : rowProcessors) {
+            try {
+                p.process(bytes, offset, length);
+            } catch (IOException e) {
+                rowException = (rowException == null) ? e : rowException;
+            }
+        }
+        if (rowException != null) {
+            throw rowException;
+        }
+    }
+
+    private void processRecord(CCIndexRecord r) {
+        for (CCIndexRecordProcessor p : recordProcessors) {
+            try {
+                p.process(r);
+            } catch (IOException e) {
+                rowException = (rowException == null) ? e : rowException;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException ex = null;
+        for (IndexRecordProcessor p : recordProcessors) {
+            try {
+                p.close();
+            } catch (IOException e) {
+                ex = (ex == null) ? e : ex;
+            }
+        }
+        for (ByteIndexRecordProcessor p : rowProcessors) {
+            try {
+                p.close();
+            } catch (IOException e) {
+                ex = (ex == null) ? e : ex;
+            }
+        }
+        if (ex != null) {
+            throw ex;
+        }
+    }
+
+    /**
+     * Checkpoints each of the processors; they all have to be {@link Checkpointable}.
+     */
+    @Override
+    public void checkpoint(String unitId) throws IOException {
+        for (IndexRecordProcessor p : processors) {
+            if (! (p instanceof Checkpointable)) {
+                throw new IOException(p.getClass().getSimpleName() + " doesn't support checkpoints");
+            }
+            ((Checkpointable) p).checkpoint(unitId);
+        }
+    }
+
+    @Override
+    public Set<CCIndexField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return a filter that keeps the rows that any of the processors wants;
+     * each processor still checks its own records
+     */
+    @Override
+    public RowFilter getRowFilter() {
+        return rowFilter;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+/**
+ * Check on the raw bytes of a cdx row that {@link CCIndexReader} runs
+ * before any json parsing.  Processors declare theirs with
+ * {@link IndexRecordProcessor#getRowFilter()}; see {@link RowFilters}
+ * for the common ones.
+ * <p>
+ * A filter may only reject rows that the processor would certainly
+ * ignore; when in doubt (e.g. escapes in a value), it should accept
+ * the row and let the processor decide after parsing.  Filters must
+ * be thread safe.
+ */
+public interface RowFilter {
+
+    RowFilter ACCEPT_ALL = (bytes, offset, length) -> true;
+
+    /**
+     * @return false if the processor can skip this row
+     */
+    boolean accept(byte[] bytes, int offset, int length);
+}
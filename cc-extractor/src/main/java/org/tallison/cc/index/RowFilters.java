@@ -0,0 +1,298 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.tallison.utils.DigestSet;
+
+/**
+ * Common {@link RowFilter}s.  These look for keys and values in the raw
+ * bytes, so they work on rows with several records (a row is kept if any
+ * of its records might be wanted).
+ */
+public class RowFilters {
+
+    private static final byte[] STATUS_KEY = bytes("\"status\"");
+    private static final byte[] URL_KEY = bytes("\"url\"");
+    private static final byte[] DIGEST_KEY = bytes("\"digest\"");
+    private static final String ROBOTS = "robots.txt";
+
+    private RowFilters() {
+    }
+
+    /**
+     * Keeps rows whose surt key starts with one of the prefixes
+     *
+     * @param surtPrefixes e.g. "com,example)/"
+     * @return the filter
+     */
+    public static RowFilter surtPrefix(Collection<String> surtPrefixes) {
+        if (surtPrefixes.size() == 0) {
+            return RowFilter.ACCEPT_ALL;
+        }
+        final List<byte[]> prefixes = new ArrayList<>();
+        for (String prefix : surtPrefixes) {
+            prefixes.add(bytes(prefix));
+        }
+        return (bytes, offset, length) -> {
+            for (byte[] prefix : prefixes) {
+                if (prefix.length <= length && startsWith(bytes, offset, prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Keeps rows with a record that has this http status, whether the value
+     * is quoted (<code>"status": "200"</code>) or not.  Rows without
+     * a status are dropped.
+     *
+     * @param status http status
+     * @return the filter
+     */
+    public static RowFilter status(int status) {
+        final byte[] value = bytes(Integer.toString(status));
+        return (bytes, offset, length) -> {
+            int end = offset + length;
+            int i = indexOf(bytes, offset, end, STATUS_KEY);
+            while (i > -1) {
+                int v = valueStart(bytes, i + STATUS_KEY.length, end);
+                if (v > -1 && bytes[v] == '"') {
+                    v++;
+                }
+                if (v > -1 && v + value.length <= end && startsWith(bytes, v, value) &&
+                        (v + value.length == end || !isDigit(bytes[v + value.length]))) {
+                    return true;
+                }
+                i = indexOf(bytes, i + STATUS_KEY.length, end, STATUS_KEY);
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Drops rows where every record's url ends with one of the suffixes
+     * (case sensitive, as with {@link String#endsWith(String)}).  Rows whose
+     * urls have escapes are kept.
+     *
+     * @param suffixes e.g. "robots.txt"
+     * @return the filter
+     */
+    public static RowFilter urlNotEndingWith(String... suffixes) {
+        final byte[][] suffixBytes = new byte[suffixes.length][];
+        for (int i = 0; i < suffixes.length; i++) {
+            suffixBytes[i] = bytes(suffixes[i]);
+        }
+        return (bytes, offset, length) -> {
+            int end = offset + length;
+            int i = indexOf(bytes, offset, end, URL_KEY);
+            if (i < 0) {
+                return true;
+            }
+            while (i > -1) {
+                int v = valueStart(bytes, i + URL_KEY.length, end);
+                if (v < 0 || bytes[v] != '"') {
+                    return true;
+                }
+                int close = stringEnd(bytes, v + 1, end);
+                if (close < 0 || !endsWithAny(bytes, v + 1, close, suffixBytes)) {
+                    return true;
+                }
+                i = indexOf(bytes, close, end, URL_KEY);
+            }
+            return false;
+        };
+    }
+
+    /**
+     * Keeps rows with a record that has a 200 status and a url that
+     * doesn't end with robots.txt; the mappers that use this check the
+     * records with {@link #isOk200NotRobots(CCIndexRecord)}
+     *
+     * @return the filter
+     */
+    public static RowFilter ok200NotRobots() {
+        return and(status(200), urlNotEndingWith(ROBOTS));
+    }
+
+    /**
+     * @return whether the record has a 200 status and a url that doesn't
+     * end with robots.txt, the record-level check of {@link #ok200NotRobots()}
+     */
+    public static boolean isOk200NotRobots(CCIndexRecord r) {
+        String url = r.getUrl();
+        return r.getStatus() == 200 && url != null && !url.endsWith(ROBOTS);
+    }
+
+    /**
+     * Keeps rows with a record whose digest is in the set, looking the
+     * digests up in the raw bytes.  Rows whose digests have escapes are kept.
+     *
+     * @param digests digests to keep
+     * @return the filter
+     */
+    public static RowFilter digestIn(DigestSet digests) {
+        return (bytes, offset, length) -> {
+            int end = offset + length;
+            int i = indexOf(bytes, offset, end, DIGEST_KEY);
+            while (i > -1) {
+                int v = valueStart(bytes, i + DIGEST_KEY.length, end);
+                if (v > -1 && bytes[v] == '"') {
+                    int close = stringEnd(bytes, v + 1, end);
+                    if (close < 0 || digests.contains(bytes, v + 1, close - v - 1)) {
+                        return true;
+                    }
+                    i = indexOf(bytes, close, end, DIGEST_KEY);
+                } else {
+                    i = indexOf(bytes, i + DIGEST_KEY.length, end, DIGEST_KEY);
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * @return a filter that keeps the rows that all of the filters keep
+     */
+    public static RowFilter and(RowFilter... filters) {
+        final List<RowFilter> list = withoutAcceptAll(filters);
+        if (list.size() == 0) {
+            return RowFilter.ACCEPT_ALL;
+        } else if (list.size() == 1) {
+            return list.get(0);
+        }
+        return (bytes, offset, length) -> {
+            for (RowFilter f : list) {
+                if (!f.accept(bytes, offset, length)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    /**
+     * @return a filter that keeps the rows that any of the filters keeps
+     */
+    public static RowFilter or(Collection<RowFilter> filters) {
+        final List<RowFilter> list = new ArrayList<>(filters);
+        if (list.size() == 1) {
+            return list.get(0);
+        }
+        for (RowFilter f : list) {
+            if (f == RowFilter.ACCEPT_ALL) {
+                return RowFilter.ACCEPT_ALL;
+            }
+        }
+        return (bytes, offset, length) -> {
+            for (RowFilter f : list) {
+                if (f.accept(bytes, offset, length)) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    private static List<RowFilter> withoutAcceptAll(RowFilter[] filters) {
+        List<RowFilter> list = new ArrayList<>();
+        for (RowFilter f : filters) {
+            if (f != RowFilter.ACCEPT_ALL) {
+                list.add(f);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the offset of the first byte of the value after the key that ends
+     * just before <code>i</code> or -1 if there isn't a ':' and a value
+     */
+    private static int valueStart(byte[] bytes, int i, int end) {
+        i = skipWhitespace(bytes, i, end);
+        if (i >= end || bytes[i] != ':') {
+            return -1;
+        }
+        i = skipWhitespace(bytes, i + 1, end);
+        return (i < end) ? i : -1;
+    }
+
+    /**
+     * @return the offset of the closing quote of a string that starts at
+     * <code>i</code> or -1 if the string has escapes or doesn't end
+     */
+    private static int stringEnd(byte[] bytes, int i, int end) {
+        for (; i < end; i++) {
+            if (bytes[i] == '"') {
+                return i;
+            } else if (bytes[i] == '\\') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean endsWithAny(byte[] bytes, int start, int end, byte[][] suffixes) {
+        for (byte[] suffix : suffixes) {
+            if (end - start >= suffix.length && startsWith(bytes, end - suffix.length, suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int end, byte[] target) {
+        byte first = target[0];
+        int max = end - target.length;
+        for (int i = from; i <= max; i++) {
+            if (bytes[i] == first && startsWith(bytes, i, target)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] bytes, int start, byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[start + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int skipWhitespace(byte[] bytes, int i, int end) {
+        while (i < end && (bytes[i] == ' ' || bytes[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
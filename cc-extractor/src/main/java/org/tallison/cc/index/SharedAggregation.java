@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Shared aggregation mode for the batch reader (-aggregate).  Instead of
+ * writing a file per thread for the reducers, the mappers that count
+ * things keep counting in their own per-thread tables, without any
+ * contention, and merge them into a shared {@link Aggregate} per
+ * output file when they close.  When all the threads are done, the
+ * batch reader calls {@link #writeAll()} to write one sorted file per
+ * aggregate, so there's no second pass with the reducers.
+ */
+public class SharedAggregation {
+
+    /**
+     * Merged results for one output file
+     */
+    public interface Aggregate {
+        /**
+         * Writes the results in the same order as the matching reducer
+         */
+        void write(Writer writer) throws IOException;
+    }
+
+    private static volatile boolean enabled = false;
+
+    private static final Map<Path, Aggregate> AGGREGATES = new LinkedHashMap<>();
+
+    public static void setEnabled(boolean enabled) {
+        SharedAggregation.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Merges a thread's results into the aggregate for <code>file</code>.
+     * The merges are serialized, so the merger doesn't have to be thread safe.
+     *
+     * @param file output file
+     * @param factory creates the aggregate for the first merge
+     * @param merger adds the thread's results to the aggregate
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized <T extends Aggregate> void merge(Path file, Supplier<T> factory,
+                                                               Consumer<T> merger) {
+        T aggregate = (T) AGGREGATES.get(file);
+        if (aggregate == null) {
+            aggregate = factory.get();
+            AGGREGATES.put(file, aggregate);
+        }
+        merger.accept(aggregate);
+    }
+
+    /**
+     * Writes each aggregate to its file and clears them
+     */
+    public static synchronized void writeAll() throws IOException {
+        for (Map.Entry<Path, Aggregate> e : AGGREGATES.entrySet()) {
+            Path file = e.getKey();
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                e.getValue().write(writer);
+            }
+            System.err.println("wrote " + file);
+        }
+        AGGREGATES.clear();
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+/**
+ * An {@link IndexRecordProcessor} whose config and lookup files are loaded
+ * once per run into read-only state that the processors of all of the
+ * threads share, instead of once per thread.  {@link IndexRecordProcessorFactory}
+ * calls {@link #loadState(String[])} on the first processor and then
+ * {@link #init(String[], Object)} on every processor.
+ * <p>
+ * {@link #init(String[])} should still work on its own, with state of its own,
+ * e.g. <code>init(args, loadState(args))</code>.
+ *
+ * @param <S> the shared state; it must be safe to read from any number of threads
+ */
+public interface SharedStateProcessor<S> extends IndexRecordProcessor {
+
+    /**
+     * Parses the args and loads what the processors can share
+     */
+    S loadState(String[] args) throws Exception;
+
+    /**
+     * Initializes this processor; it must not change the state
+     */
+    void init(String[] args, S state) throws Exception;
+}
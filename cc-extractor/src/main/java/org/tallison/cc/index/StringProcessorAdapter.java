@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Lets a String-based {@link IndexRecordProcessor} sit behind the
+ * byte-level read loop in {@link CCIndexReader}.
+ */
+class StringProcessorAdapter implements ByteIndexRecordProcessor {
+
+    private final IndexRecordProcessor processor;
+
+    StringProcessorAdapter(IndexRecordProcessor processor) {
+        this.processor = processor;
+    }
+
+    @Override
+    public void init(String[] args) throws Exception {
+        processor.init(args);
+    }
+
+    @Override
+    public void process(byte[] bytes, int offset, int length) throws IOException {
+        processor.process(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void process(String row) throws IOException {
+        processor.process(row);
+    }
+
+    @Override
+    public void close() throws IOException {
+        processor.close();
+    }
+
+    @Override
+    public Set<CCIndexField> getFields() {
+        return processor.getFields();
+    }
+
+    @Override
+    public RowFilter getRowFilter() {
+        return processor.getRowFilter();
+    }
+}
@@ -1,18 +1,30 @@
 package org.tallison.cc.index.mappers;
 
-import java.util.Locale;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.tallison.cc.index.IndexRecordProcessor;
+import org.tallison.cc.index.ByteIndexRecordProcessor;
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.CCIndexRecordParser;
+import org.tallison.cc.index.CCIndexRecordProcessor;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.utils.URLScanner;
 
 
-abstract class AbstractRecordProcessor implements IndexRecordProcessor {
+abstract class AbstractRecordProcessor implements CCIndexRecordProcessor, ByteIndexRecordProcessor {
 
     protected static AtomicInteger threadCounter = new AtomicInteger(0);
 
     private final int threadNumber;
+    private final CCIndexRecordParser parser = new CCIndexRecordParser();
+    private final URLScanner urlScanner = new URLScanner();
+    private UnitOutput output = null;
+    private Path aggregateFile = null;
 
     public AbstractRecordProcessor() {
         threadNumber = threadCounter.incrementAndGet();
@@ -35,25 +47,162 @@ abstract class AbstractRecordProcessor implements IndexRecordProcessor {
         return threadNumber;
     }
 
-    String getExtension(String u) {
-        if (u == null || u.length() == 0) {
-            return null;
+    /**
+     * Opens &lt;dir&gt;/&lt;prefix&gt;_&lt;thread number&gt;.txt for this thread's output.
+     * In a run with checkpoints, each range's output ends up in
+     * &lt;dir&gt;/&lt;prefix&gt;_&lt;range id&gt;.txt instead.
+     */
+    protected void openOutput(Path dir, String prefix) throws IOException {
+        output = new UnitOutput(dir, prefix, getThreadNumber());
+        aggregateFile = dir.resolve(prefix + ".txt");
+    }
+
+    /**
+     * @return &lt;dir&gt;/&lt;prefix&gt;.txt from {@link #openOutput(Path, String)}, the
+     * output file in a {@link SharedAggregation} run
+     */
+    protected Path getAggregateFile() {
+        return aggregateFile;
+    }
+
+    /**
+     * @return the writer for the output; this changes at every checkpoint,
+     * so don't hold on to it
+     */
+    protected Writer getWriter() {
+        return output.getWriter();
+    }
+
+    /**
+     * Writes what this processor has collected in memory and clears it.
+     * This is called at every checkpoint and on close.  Processors that
+     * write rows as they go don't need to override this.
+     */
+    protected void writeState(Writer writer) throws IOException {
+    }
+
+    /**
+     * In a {@link SharedAggregation} run, this is called on close instead of
+     * {@link #writeState(Writer)}; mappers that count things merge their
+     * counts into the aggregate for {@link #getAggregateFile()}.
+     *
+     * @return false if this processor doesn't aggregate (the default); it then
+     * writes its own file as usual
+     */
+    protected boolean mergeState() {
+        return false;
+    }
+
+    /**
+     * Implements {@link Checkpointable#checkpoint(String)} for the mappers that
+     * write through {@link #openOutput(Path, String)}; those mappers declare
+     * that they implement {@link Checkpointable}.
+     */
+    public void checkpoint(String unitId) throws IOException {
+        if (output == null) {
+            throw new IOException(getClass().getSimpleName() + " doesn't support checkpoints");
         }
-        int i = u.lastIndexOf('.');
-        if (i < 0 || i+6 < u.length()) {
+        writeState(output.getWriter());
+        output.commit(unitId);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (output != null) {
+            if (SharedAggregation.isEnabled() && mergeState()) {
+                output.discard();
+            } else {
+                writeState(output.getWriter());
+                output.close();
+            }
+        }
+    }
+
+    @Override
+    public void process(String row) throws IOException {
+        byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+        process(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses the row into a reused record and calls {@link #process(CCIndexRecord)}
+     * on each of its records
+     */
+    @Override
+    public void process(byte[] bytes, int offset, int length) throws IOException {
+        parser.parseRecords(bytes, offset, length, getFields(), this);
+    }
+
+    /**
+     * Parses the row, only decoding the fields in {@link #getFields()}
+     */
+    protected List<CCIndexRecord> parseRecords(String row) {
+        return CCIndexRecord.parseRecords(row, getFields());
+    }
+
+    /**
+     * @return the extension of the last segment of the url's path in lower case,
+     * or null if there isn't one, if it is longer than 5 characters or if it is a number
+     */
+    String getExtension(String u) {
+        urlScanner.scan(u);
+        String ext = urlScanner.getExtension();
+        if (ext == null) {
             return null;
         }
-        String ext = u.substring(i+1);
         ext = ext.trim();
-        Matcher m = Pattern.compile("^\\d+$").matcher(ext);
-        if (m.find()) {
+        if (ext.length() == 0 || ext.length() > 5 || isDigits(ext)) {
             return null;
         }
-        ext = ext.toLowerCase(Locale.ENGLISH);
-        ext = ext.replaceAll("\\/$", "");
         return ext;
     }
 
+    /**
+     * @return the url's host in lower case or "" if there isn't one
+     */
+    protected String getHost(String u) {
+        urlScanner.scan(u);
+        String host = urlScanner.getHost();
+        return (host == null) ? "" : host;
+    }
+
+    /**
+     * @return the url's path without the query, "/" if it's empty
+     */
+    protected String getPath(String u) {
+        urlScanner.scan(u);
+        String path = urlScanner.getPath();
+        return (path == null || path.length() == 0) ? "/" : path;
+    }
+
+    /**
+     * @return the last label of the url's host in lower case or "" if there isn't one
+     */
+    protected String getTLD(String u) {
+        urlScanner.scan(u);
+        String tld = urlScanner.getTLD();
+        return (tld == null) ? "" : tld;
+    }
+
+    /**
+     * @return the registered domain (eTLD+1) of the url's host in lower case or ""
+     * if there isn't one
+     */
+    protected String getRegisteredDomain(String u) {
+        urlScanner.scan(u);
+        String domain = urlScanner.getRegisteredDomain();
+        return (domain == null) ? "" : domain;
+    }
+
+    private static boolean isDigits(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
     //returns "" if key is null, otherwise, trims and converts remaining \r\n\t to " "
     protected static String clean(String key) {
         if (key == null) {
@@ -17,98 +17,120 @@
 package org.tallison.cc.index.mappers;
 
 import org.apache.commons.lang.StringUtils;
+import org.tallison.cc.index.CCIndexField;
 import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.utils.LongLongCounter;
+import org.tallison.utils.SymbolTable;
 
 import java.io.IOException;
 import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
-public class CountCharsetAndLangByTopLevelDomains extends CountTopLevelDomains {
+public class CountCharsetAndLangByTopLevelDomains extends AbstractRecordProcessor implements Checkpointable {
+
+    private static final Set<CCIndexField> FIELDS = EnumSet.of(
+            CCIndexField.STATUS, CCIndexField.URL, CCIndexField.MIME_DETECTED,
+            CCIndexField.CHARSET, CCIndexField.LANGUAGES);
+
+    private static final RowFilter ROW_FILTER = RowFilters.ok200NotRobots();
+
+    private static final int MAX_LANGUAGES = 100000;
 
     private static Pattern INT_PATTERN = Pattern.compile("^\\d+$");
-    private Map<String, MimeCounts> map = new HashMap<>();
-    private Writer writer;
+    private final PairCounts counts = new PairCounts();
+    //languages -> first language; the languages strings are canonical
+    private final Map<String, String> firstLangs = new HashMap<>();
+    private final SymbolTable charsets = new SymbolTable("charsets", Integer.MAX_VALUE);
+    private final SymbolTable langs = new SymbolTable("langs", Integer.MAX_VALUE);
+    //(charset id, lang id) -> second id in counts
+    private final LongLongCounter charsetLangIds = new LongLongCounter();
     @Override
     public void init(String[] args) throws Exception {
         super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("charset_lang_domain_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
+        openOutput(Paths.get(args[0]), "charset_lang_domain_counts");
 
     }
 
 
+    @Override
+    public Set<CCIndexField> getFields() {
+        return FIELDS;
+    }
+
     @Override
     public void usage() {
         System.out.println("CountTopLevelDomains <output_directory>");
     }
 
     @Override
-    public void process(String row) throws IOException {
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-        for (CCIndexRecord r : records) {
-            if (! r.getStatus().equals("200")) {
-                continue;
-            }
-            String u = r.getUrl();
+    public RowFilter getRowFilter() {
+        return ROW_FILTER;
+    }
 
-            if (u.endsWith("robots.txt")) {
-                continue;
-            }
-            String tld = CCIndexRecord.getTLD(u);
-            String mime = CCIndexRecord.normalizeMime(r.getMimeDetected());
-            mime = (mime == null) ? "NULL" : mime;
-            if (!mime.contains("html") && !mime.contains("text")) {
-                continue;
-            }
-            String charset = r.getCharset();
-            charset = (StringUtils.isEmpty(charset)) ? "UNK" : charset;
-            String lang = getFirstLang(r.getLanguages());
-            String key = charset+"\t"+lang;
-            MimeCounts mimeCounts = map.get(tld);
-            if (mimeCounts == null) {
-                mimeCounts = new MimeCounts();
-            }
-            mimeCounts.increment(key);
-            map.put(tld, mimeCounts);
+    @Override
+    public void process(CCIndexRecord r) throws IOException {
+        if (!RowFilters.isOk200NotRobots(r)) {
+            return;
+        }
+        String u = r.getUrl();
+        String tld = getTLD(u);
+        String mime = CCIndexRecord.normalizeMime(r.getMimeDetected());
+        mime = (mime == null) ? "NULL" : mime;
+        if (!mime.contains("html") && !mime.contains("text")) {
+            return;
+        }
+        String charset = r.getCharset();
+        charset = (StringUtils.isEmpty(charset)) ? "UNK" : charset;
+        String lang = getFirstLang(r.getLanguages());
+        counts.increment(counts.getFirstId(tld), getCharsetLangId(charset, lang));
+    }
+
+    //id of charset\tlang in counts without building the string each time
+    private int getCharsetLangId(String charset, String lang) {
+        long packed = LongLongCounter.pack(charsets.getId(charset), langs.getId(lang));
+        long id = charsetLangIds.get(packed, -1);
+        if (id < 0) {
+            id = counts.getSecondId(charset + "\t" + lang);
+            charsetLangIds.put(packed, id);
         }
+        return (int) id;
     }
 
     private String getFirstLang(String languages) {
         if (StringUtils.isBlank(languages)) {
             return "NULL";
         }
-        String[] langs = languages.split(",");
-        if (langs.length > 0) {
-            return langs[0];
+        String lang = firstLangs.get(languages);
+        if (lang == null) {
+            String[] langs = languages.split(",");
+            lang = (langs.length > 0) ? langs[0] : "NULL";
+            if (firstLangs.size() < MAX_LANGUAGES) {
+                firstLangs.put(languages, lang);
+            }
         }
-        return "NULL";
+        return lang;
     }
 
     @Override
-    public void close() throws IOException {
-        map = MapUtil.sortByValueDesc(map);
-        for (Map.Entry<String, MimeCounts> e : map.entrySet()) {
-
-            MimeCounts mimeCounts = e.getValue();
-            mimeCounts.m = MapUtil.sortByValueDesc(mimeCounts.m);
+    protected void writeState(Writer writer) throws IOException {
+        counts.writeNested(writer);
+        counts.clear();
+    }
 
-            for (Map.Entry<String, Integer> mc : mimeCounts.m.entrySet()) {
-                writer.write(clean(e.getKey()) + "\t" + clean(mc.getKey()) + "\t"+mc.getValue()+"\n");
-            }
-        }
-        writer.flush();
-        writer.close();
+    @Override
+    protected boolean mergeState() {
+        SharedAggregation.merge(getAggregateFile(), PairCounts::new, shared -> shared.addAll(counts));
+        return true;
     }
 
 
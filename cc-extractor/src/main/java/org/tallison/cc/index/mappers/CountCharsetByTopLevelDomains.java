@@ -16,79 +16,19 @@
  */
 package org.tallison.cc.index.mappers;
 
-import org.apache.commons.lang.StringUtils;
-import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
-
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-public class CountCharsetByTopLevelDomains extends AbstractRecordProcessor {
+/**
+ * Counts the charsets of the 200s by top level domain; a preset of {@link GroupBy}.
+ */
+public class CountCharsetByTopLevelDomains extends GroupBy {
 
-    private Map<String, Integer> map = new HashMap<>();
-    private Writer writer;
     @Override
     public void init(String[] args) throws Exception {
-        super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("charset_by_domain_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
-
+        super.init(preset(args, "name=charset_by_domain_counts", "group=tld,charset",
+                OK_NOT_ROBOTS + ",tld!:,charset!:NULL|"));
     }
 
-
     @Override
     public void usage() {
         System.out.println("CountCharsetByTopLevelDomains <output_directory>");
     }
-
-    @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-        for (CCIndexRecord r : records) {
-            String tld = CCIndexRecord.getTLD(r.getUrl());
-            if (! r.getStatus().equals("200")) {
-                continue;
-            }
-            String u = r.getUrl();
-
-            if (u.endsWith("robots.txt")) {
-                continue;
-            }
-            String charset = r.getCharset();
-            if (StringUtils.isBlank(tld) || StringUtils.isBlank(charset)) {
-                continue;
-            }
-            String key = clean(tld)+"\t"+clean(charset);
-            Integer c = map.get(key);
-            if (c == null) {
-                c = new Integer(1);
-            } else {
-                c++;
-            }
-            map.put(key, c);
-
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        map = MapUtil.sortByValueDesc(map);
-        for (Map.Entry<String, Integer> e : map.entrySet()) {
-            writer.write(e.getKey() + "\t" + e.getValue()+"\n");
-        }
-        writer.flush();
-        writer.close();
-    }
-
-
 }
@@ -16,70 +16,25 @@
  */
 package org.tallison.cc.index.mappers;
 
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
-
-public class CountExt extends AbstractRecordProcessor {
-
-    private Map<String, Integer> extensions = new HashMap<>();
-    private Writer writer;
+/**
+ * Counts the extensions of the urls, skipping records without a url;
+ * a preset of {@link GroupBy}.  With
+ * top=k, it only keeps the k most common extensions in constant memory.
+ */
+public class CountExt extends GroupBy {
 
     @Override
     public void init(String[] args) throws Exception {
-        super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("mime_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
-
-    }
-
-
-    @Override
-    public void usage() {
-        System.out.println("CountExt <output_directory>");
-    }
-
-    @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            String u = r.getUrl();
-            if (u == null)
-                continue;
-            String ext = getExtension(u);
-            ext = (ext == null) ? "NULL" : ext;
-            Integer c = extensions.get(ext);
-            if (c == null) {
-                c = new Integer(1);
-            } else {
-                c++;
-            }
-            extensions.put(ext, c);
-
+        if (args.length > 1 && args[1].startsWith("top=")) {
+            super.init(preset(args, "name=ext_counts", "group=ext", "filter=url!:NULL", args[1]));
+        } else {
+            super.init(preset(args, "name=ext_counts", "group=ext", "filter=url!:NULL"));
         }
     }
 
     @Override
-    public void close() throws IOException {
-        extensions = MapUtil.sortByValueDesc(extensions);
-        for (Map.Entry<String, Integer> e : extensions.entrySet()) {
-            writer.write(e.getKey() + "\t" + e.getValue()+"\n");
-        }
-        writer.flush();
-        writer.close();
+    public void usage() {
+        System.out.println("CountExt <output_directory> <optional>top=<k></optional>");
+        System.out.println("top=k only keeps the k most common extensions, see GroupBy");
     }
-
 }
@@ -16,65 +16,18 @@
  */
 package org.tallison.cc.index.mappers;
 
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
-
-public class CountMimes extends AbstractRecordProcessor {
-
-    private Map<String, Integer> mimes = new HashMap<>();
-    private Writer writer;
+/**
+ * Counts the (normalized) header mimes; a preset of {@link GroupBy}.
+ */
+public class CountMimes extends GroupBy {
 
     @Override
     public void init(String[] args) throws Exception {
-        super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("mime_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
-
+        super.init(preset(args, "name=mime_counts", "group=mime"));
     }
 
     @Override
     public void usage() {
         System.out.println("CountMimes <output_directory>");
     }
-
-    @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            String m = CCIndexRecord.normalizeMime(r.getMime());
-            m = (m == null) ? "NULL" : m;
-            Integer c = mimes.get(m);
-            if (c == null) {
-                c = new Integer(1);
-            } else {
-                c++;
-            }
-            mimes.put(m, c);
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        mimes = MapUtil.sortByValueDesc(mimes);
-        for (Map.Entry<String, Integer> e : mimes.entrySet()) {
-            writer.write(e.getKey() + "\t" + e.getValue()+"\n");
-        }
-        writer.flush();
-        writer.close();
-    }
-
 }
@@ -16,76 +16,19 @@
  */
 package org.tallison.cc.index.mappers;
 
-import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
-
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-public class CountMimesByMimesDetected extends AbstractRecordProcessor {
-
-    private Map<String, Integer> mimes = new HashMap<>();
-    private Writer writer;
+/**
+ * Counts the detected mimes of the 200s by header mime; a preset of {@link GroupBy}.
+ */
+public class CountMimesByMimesDetected extends GroupBy {
 
     @Override
     public void init(String[] args) throws Exception {
-        super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("mime_by_mime_detected_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
-
+        super.init(preset(args, "name=mime_by_mime_detected_counts", "group=mime,mime_detected",
+                OK_NOT_ROBOTS));
     }
 
     @Override
     public void usage() {
-        System.out.println("CountMimes <output_directory>");
+        System.out.println("CountMimesByMimesDetected <output_directory>");
     }
-
-    @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            if (! r.getStatus().equals("200")) {
-                continue;
-            }
-            String u = r.getUrl();
-
-            if (u.endsWith("robots.txt")) {
-                continue;
-            }
-            String m = CCIndexRecord.normalizeMime(r.getMime());
-            m = (m == null) ? "NULL" : m;
-            String mD = CCIndexRecord.normalizeMime(r.getMimeDetected());
-            mD = (mD == null) ? "NULL" : mD;
-            String mimeKey = m+"\t"+mD;
-            Integer c = mimes.get(mimeKey);
-            if (c == null) {
-                c = new Integer(1);
-            } else {
-                c++;
-            }
-            mimes.put(mimeKey, c);
-        }
-    }
-
-    @Override
-    public void close() throws IOException {
-        mimes = MapUtil.sortByValueDesc(mimes);
-        for (Map.Entry<String, Integer> e : mimes.entrySet()) {
-            writer.write(e.getKey() + "\t" + e.getValue()+"\n");
-        }
-        writer.flush();
-        writer.close();
-    }
-
 }
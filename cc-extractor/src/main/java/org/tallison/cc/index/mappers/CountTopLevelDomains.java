@@ -16,65 +16,25 @@
  */
 package org.tallison.cc.index.mappers;
 
-import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import org.tallison.cc.index.CCIndexRecord;
-import org.tallison.utils.MapUtil;
-
-public class CountTopLevelDomains extends AbstractRecordProcessor {
+/**
+ * Counts the top level domains or, with "registered_domain", the registered
+ * domains of the urls; a preset of {@link GroupBy}.
+ */
+public class CountTopLevelDomains extends GroupBy {
 
-    private Map<String, Integer> map = new HashMap<>();
-    private Writer writer;
     @Override
     public void init(String[] args) throws Exception {
-        super.init(args);
-        Path targFile = Paths.get(args[0]).resolve("domain_counts_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
-
-    }
-
-
-    @Override
-    public void usage() {
-        System.out.println("CountTopLevelDomains <output_directory>");
-    }
-
-    @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-        for (CCIndexRecord r : records) {
-            String tld = CCIndexRecord.getTLD(r.getUrl());
-            Integer c = map.get(tld);
-            if (c == null) {
-                c = new Integer(1);
-            } else {
-                c++;
-            }
-            map.put(tld, c);
-
+        if (args.length > 1 && args[1].equals("registered_domain")) {
+            super.init(preset(args, "name=registered_domain_counts", "group=registered_domain"));
+        } else {
+            super.init(preset(args, "name=domain_counts", "group=tld"));
         }
     }
 
     @Override
-    public void close() throws IOException {
-        map = MapUtil.sortByValueDesc(map);
-        for (Map.Entry<String, Integer> e : map.entrySet()) {
-            writer.write(e.getKey() + "\t" + e.getValue()+"\n");
-        }
-        writer.flush();
-        writer.close();
+    public void usage() {
+        System.out.println("CountTopLevelDomains <output_directory> <optional>registered_domain</optional>");
+        System.out.println("registered_domain counts the registered domain (e.g. example.co.uk) from the public suffix list");
+        System.out.println("instead of the top level domain");
     }
-
-
 }
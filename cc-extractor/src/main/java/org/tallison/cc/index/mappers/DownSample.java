@@ -21,38 +21,53 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.cc.index.SharedStateProcessor;
+import org.tallison.utils.Hash64;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
-import java.util.Set;
-import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 /**
  * Class loads a tab-delimited file of mime\t<code>float</code>.
- * It selects a record if a random float is at/below that threshold.
+ * It selects a record if a hash of its url and digest, mapped to [0, 1),
+ * is below that threshold, so the same records are selected no matter
+ * how many threads there are or how the ranges are split.
  * <p>
  * This allows the user to set different sampling rates per mime
  * type to generate a new sub-index for downloading, e.g. I only
  * want .001% of "text/html" but I want 50% of "application/pdf"
  * <p>
- * If a mime type does not exist in the sampling weights file, the index
- * record is selected (or threshold value = 1.0f).
+ * A mime wrapped in slashes is a regex; the first one that matches gives
+ * the rate.  Unless detected_only or header_only is set, the rate is the
+ * higher of the header mime's and the detected mime's.  Mimes that aren't
+ * in the sampling weights file get a rate of 0, so those records are dropped.
  * <p>
- * Alternatively, the tab delimited file can contain topleveldomain\tmime\t<code>float</code>
+ * Alternatively, the tab delimited file can contain topleveldomain\tmime\t<code>float</code>.
+ * Tlds that aren't in the file get the rates of the rows without a tld
+ * (ANY_TLD); if there are no such rows, their records get a rate of 0 and
+ * are dropped.
+ * <p>
+ * The rates are worked out once per tld, header mime and detected mime
+ * and cached for all of the threads.
  */
 
-public class DownSample extends AbstractRecordProcessor {
+public class DownSample extends AbstractRecordProcessor
+        implements Checkpointable, SharedStateProcessor<DownSample.SampleRates> {
+
+    private static final RowFilter ROW_FILTER = RowFilters.ok200NotRobots();
+
     private enum WHICH_MIME {
         HEADER_ONLY,
         DETECTED_ONLY,
@@ -64,29 +79,104 @@ public class DownSample extends AbstractRecordProcessor {
             .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_DASHES)
             .create();
 
-    private final Random random = new Random();
-    private Writer writer;
-    private boolean includesTLD = false;
+    private static final int MAX_CACHED_RATES = 100000;
+    //stands in for a null mime in the cache's keys
+    private static final String NULL_MIME = "\u0000";
+
     private long selected = 0;
     private long total = 0;
-    private WHICH_MIME headerOrDetected = WHICH_MIME.HEADER_OR_DETECTED;
 
-    private int i;
-    private final Map<String, MimeMatcher> tldMimes = new HashMap<>();
-    int multiline = 0;
+    private SampleRates sampleRates;
 
     public DownSample() {
     }
 
+    /**
+     * The parsed sample rates file and the cache of the effective rates;
+     * shared by the threads
+     */
+    static class SampleRates {
+        private WHICH_MIME headerOrDetected = WHICH_MIME.HEADER_OR_DETECTED;
+        private boolean includesTLD = false;
+        private final Map<String, MimeRates> tldMimes = new HashMap<>();
+        //tld -> header mime -> detected mime -> rate; the mimes are canonical, so a hit
+        //is three lookups on cached hash codes.  This stops growing at MAX_CACHED_RATES;
+        //after that, misses are worked out on every call
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String,
+                ConcurrentHashMap<String, Float>>> cache = new ConcurrentHashMap<>();
+        private final AtomicInteger cached = new AtomicInteger();
+
+        private MimeRates getOrCreate(String tld) {
+            MimeRates rates = tldMimes.get(tld);
+            if (rates == null) {
+                rates = new MimeRates();
+                tldMimes.put(tld, rates);
+            }
+            return rates;
+        }
+
+        float getRate(String tld, String headerMime, String detectedMime) {
+            String header = (headerMime == null) ? NULL_MIME : headerMime;
+            String detected = (detectedMime == null) ? NULL_MIME : detectedMime;
+            ConcurrentHashMap<String, ConcurrentHashMap<String, Float>> byHeader = cache.get(tld);
+            if (byHeader != null) {
+                ConcurrentHashMap<String, Float> byDetected = byHeader.get(header);
+                if (byDetected != null) {
+                    Float rate = byDetected.get(detected);
+                    if (rate != null) {
+                        return rate;
+                    }
+                }
+            }
+            float rate = computeRate(tld, headerMime, detectedMime);
+            if (cached.get() < MAX_CACHED_RATES) {
+                if (cache.computeIfAbsent(tld, k -> new ConcurrentHashMap<>())
+                        .computeIfAbsent(header, k -> new ConcurrentHashMap<>())
+                        .putIfAbsent(detected, rate) == null) {
+                    cached.incrementAndGet();
+                }
+            }
+            return rate;
+        }
+
+        private float computeRate(String tld, String headerMime, String detectedMime) {
+            //try to find the sampling % for the actual tld,
+            //otherwise apply the any_tld sampling rules
+            MimeRates rates = null;
+            if (!StringUtils.isBlank(tld)) {
+                rates = tldMimes.get(tld);
+            }
+            if (rates == null) {
+                rates = tldMimes.get(ANY_TLD);
+            }
+            if (rates == null) {
+                return 0.0f;
+            }
+            switch (headerOrDetected) {
+                case HEADER_ONLY:
+                    return rates.getRate(headerMime);
+                case DETECTED_ONLY:
+                    return rates.getRate(detectedMime);
+                default:
+                    return Math.max(rates.getRate(headerMime), rates.getRate(detectedMime));
+            }
+        }
+    }
+
     @Override
     public void init(String[] args) throws Exception {
+        init(args, loadState(args));
+    }
+
+    @Override
+    public SampleRates loadState(String[] args) throws Exception {
         super.init(args);
-        tldMimes.clear();
+        SampleRates rates = new SampleRates();
         if (args.length > 2) {
             if (args[2].contains("detected_only")) {
-                headerOrDetected = WHICH_MIME.DETECTED_ONLY;
+                rates.headerOrDetected = WHICH_MIME.DETECTED_ONLY;
             } else if (args[2].contains("header_only")) {
-                headerOrDetected = WHICH_MIME.HEADER_ONLY;
+                rates.headerOrDetected = WHICH_MIME.HEADER_ONLY;
             } else {
                 throw new IllegalArgumentException("Expected 'detected_only' or 'header_only'."+
                         " I regret I don't understand: "+args[2]);
@@ -111,12 +201,7 @@ public class DownSample extends AbstractRecordProcessor {
                     float f = -1.0f;
                     try {
                         f = Float.parseFloat(cols[1]);
-                        MimeMatcher mimeMatcher = tldMimes.get(ANY_TLD);
-                        if (mimeMatcher == null) {
-                            mimeMatcher = new MimeMatcher();
-                            tldMimes.put(ANY_TLD, mimeMatcher);
-                        }
-                        mimeMatcher.addMime(mime, f);
+                        rates.getOrCreate(ANY_TLD).addMime(mime, f);
                     } catch (NumberFormatException e) {
                         System.err.println("couldn't parse " + cols[1] + " for: " + mime);
                     }
@@ -126,7 +211,7 @@ public class DownSample extends AbstractRecordProcessor {
                                 "columns, but this row has 3.  Every row must have the same number of columns");
                     }
                     lastNumCols = 3;
-                    includesTLD = true;
+                    rates.includesTLD = true;
                     String tld = cols[0].trim();
                     String mime = cols[1].trim();
                     if (mime.equalsIgnoreCase(MIME_COL_HEADER)) {
@@ -136,12 +221,7 @@ public class DownSample extends AbstractRecordProcessor {
                     float f = -1.0f;
                     try {
                         f = Float.parseFloat(cols[2]);
-                        MimeMatcher mimeMatcher = tldMimes.get(tld);
-                        if (mimeMatcher == null) {
-                            mimeMatcher = new MimeMatcher();
-                            tldMimes.put(tld, mimeMatcher);
-                        }
-                        mimeMatcher.addMime(mime, f);
+                        rates.getOrCreate(tld).addMime(mime, f);
                     } catch (NumberFormatException e) {
                         System.err.println("couldn't parse " + cols[1] + " for: " + mime);
                     }
@@ -153,12 +233,14 @@ public class DownSample extends AbstractRecordProcessor {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return rates;
+    }
 
+    @Override
+    public void init(String[] args, SampleRates state) throws Exception {
+        sampleRates = state;
         try {
-            Path targFile = Paths.get(args[1]).resolve("downsampled_rows_" + getThreadNumber() + ".txt");
-            Files.createDirectories(targFile.getParent());
-            writer = Files.newBufferedWriter(targFile,
-                    StandardCharsets.UTF_8);
+            openOutput(Paths.get(args[1]), "downsampled_rows");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -173,119 +255,76 @@ public class DownSample extends AbstractRecordProcessor {
     }
 
     @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            if (!r.getStatus().equals("200")) {
-                continue;
-            } else if (r.getUrl().endsWith("robots.txt")) {
-                continue;
-            }
-            String headerMime = CCIndexRecord.normalizeMime(r.getMime());
-            String detectedMime = CCIndexRecord.normalizeMime(r.getMimeDetected());
-            String tld = CCIndexRecord.getTLD(r.getUrl());
-
-            boolean select = shouldSelect(tld, headerMime, detectedMime);
-
-            if (select == true) {
-                selected++;
-                gson.toJson(r, writer);
-                writer.write("\n");
-            } else {
-                //System.out.println("IGNORE: "+m);
-            }
-            total++;
-        }
+    public RowFilter getRowFilter() {
+        return ROW_FILTER;
     }
 
-    private boolean shouldSelect(String tld, String headerMime, String detectedMime) {
-        //try to find the sampling % for the actual tld
-        if (!StringUtils.isBlank(tld) && tldMimes.containsKey(tld)) {
-            MimeMatcher mimeMatcher = tldMimes.get(tld);
-            if (mimeMatcher != null) {
-                return mimeMatcher.matches(headerMime, detectedMime);
-            }
+    @Override
+    public void process(CCIndexRecord r) throws IOException {
+        if (!RowFilters.isOk200NotRobots(r)) {
+            return;
         }
+        String headerMime = CCIndexRecord.normalizeMime(r.getMime());
+        String detectedMime = CCIndexRecord.normalizeMime(r.getMimeDetected());
+        String tld = getTLD(r.getUrl());
+
+        float rate = sampleRates.getRate(tld, headerMime, detectedMime);
+        boolean select = rate >= 1.0f || (rate > 0.0f && sample(r) < rate);
 
-        //if there was no tld, or no specific mime pattern
-        //had a hit, apply the any_tld sampling rules
-        MimeMatcher mimeMatcher = tldMimes.get(ANY_TLD);
-        if (mimeMatcher != null) {
-            return mimeMatcher.matches(headerMime, detectedMime);
+        if (select == true) {
+            selected++;
+            gson.toJson(r, getWriter());
+            getWriter().write("\n");
+        } else {
+            //System.out.println("IGNORE: "+m);
         }
-        return false;
+        total++;
     }
 
+    //the same for every capture of a url with the same payload
+    private static double sample(CCIndexRecord r) {
+        String digest = r.getDigest();
+        return Hash64.toUnit(Hash64.of(r.getUrl(), (digest == null) ? "" : digest));
+    }
 
     @Override
     public void close() throws IOException {
         System.out.println(selected + " out of "+total);
-        writer.flush();
-        writer.close();
+        super.close();
     }
 
-    private class MimeMatcher {
-        private final Random random = new Random();
-        Map<String, Float> exactMatches = new HashMap<>();
-        Map<Matcher, Float> regexMatches = new HashMap<>();
-        Set<String> shouldIgnore = new HashSet<>();
+    /**
+     * Sampling rates by exact mime and by regex; read-only once loaded
+     */
+    private static class MimeRates {
+        private final Map<String, Float> exactMatches = new HashMap<>();
+        private final List<Pattern> patterns = new ArrayList<>();
+        private final List<Float> patternRates = new ArrayList<>();
 
         void addMime(String mime, float samplingRate) {
             if (mime.startsWith("/") && mime.endsWith("/")) {
                 mime = mime.substring(1, mime.length() - 1);
-                Matcher mimeMatcher = Pattern.compile(mime).matcher("");
-                regexMatches.put(mimeMatcher, samplingRate);
-
+                patterns.add(Pattern.compile(mime));
+                patternRates.add(samplingRate);
             } else {
                 exactMatches.put(mime, samplingRate);
             }
         }
 
-        boolean matches(String headerMime, String detectedMime) {
-            switch (headerOrDetected) {
-                case HEADER_ONLY:
-                    return matchesSingle(headerMime);
-                case DETECTED_ONLY:
-                    return matchesSingle(detectedMime);
-                case HEADER_OR_DETECTED:
-                    return matchesSingle(headerMime) || matchesSingle(detectedMime);
+        float getRate(String mime) {
+            if (mime == null) {
+                return 0.0f;
             }
-            return false;
-        }
-
-        private boolean headerOrDetected(String headerMime, String detectedMime) {
-            return matchesSingle(headerMime) || matchesSingle(detectedMime);
-        }
-
-        private boolean matchesSingle(String mime) {
-            if (shouldIgnore.contains(mime)) {
-                return false;
-            }
-            boolean found = false;
-            if (exactMatches.containsKey(mime)) {
-                float p = exactMatches.get(mime);
-                if (p >= 1.0f || random.nextFloat() < p) {
-                    return true;
-                }
-                return false;
+            Float rate = exactMatches.get(mime);
+            if (rate != null) {
+                return rate;
             }
-
-            for (Map.Entry<Matcher, Float> e : regexMatches.entrySet()) {
-                if (e.getKey().reset(mime).find()) {
-                    found = true;
-                    float p = exactMatches.get(mime);
-                    if (p >= 1.0f || random.nextFloat() < p) {
-                        return true;
-                    }
-                    break;
+            for (int i = 0; i < patterns.size(); i++) {
+                if (patterns.get(i).matcher(mime).find()) {
+                    return patternRates.get(i);
                 }
             }
-            if (!found) {
-                shouldIgnore.add(mime);
-            }
-            return false;
+            return 0.0f;
         }
     }
 }
@@ -21,17 +21,18 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.apache.commons.lang.StringUtils;
 import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.cc.index.SharedStateProcessor;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
@@ -52,7 +53,10 @@ import java.util.regex.Pattern;
  * Alternatively, the tab delimited file can contain topleveldomain\tmime\t<code>float</code>
  */
 
-public class DownSampleLangCharset extends AbstractRecordProcessor {
+public class DownSampleLangCharset extends AbstractRecordProcessor
+        implements Checkpointable, SharedStateProcessor<Map<String, Float>> {
+
+    private static final RowFilter ROW_FILTER = RowFilters.ok200NotRobots();
 
     private static final String CHARSET_COL_HEADER = "charset";
     private static Gson gson = new GsonBuilder()
@@ -60,20 +64,25 @@ public class DownSampleLangCharset extends AbstractRecordProcessor {
             .create();
 
     private final Random random = new Random();
-    private Writer writer;
     private long selected = 0;
     private long total = 0;
 
     private int i;
-    private final Map<String, Float> sampleRates = new HashMap<>();
+    //lang\tcharset -> rate; shared by the threads
+    private Map<String, Float> sampleRates;
 
     public DownSampleLangCharset() {
     }
 
     @Override
     public void init(String[] args) throws Exception {
+        init(args, loadState(args));
+    }
+
+    @Override
+    public Map<String, Float> loadState(String[] args) throws Exception {
         super.init(args);
-        sampleRates.clear();
+        Map<String, Float> sampleRates = new HashMap<>();
         try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
             String line = reader.readLine();
             int lastNumCols = -1;
@@ -107,12 +116,14 @@ public class DownSampleLangCharset extends AbstractRecordProcessor {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return Collections.unmodifiableMap(sampleRates);
+    }
 
+    @Override
+    public void init(String[] args, Map<String, Float> state) throws Exception {
+        sampleRates = state;
         try {
-            Path targFile = Paths.get(args[1]).resolve("downsampled_rows_" + getThreadNumber() + ".txt");
-            Files.createDirectories(targFile.getParent());
-            writer = Files.newBufferedWriter(targFile,
-                    StandardCharsets.UTF_8);
+            openOutput(Paths.get(args[1]), "downsampled_rows");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -127,45 +138,41 @@ public class DownSampleLangCharset extends AbstractRecordProcessor {
     }
 
     @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            if (! r.getStatus().equals("200")) {
-                continue;
-            }
-            String u = r.getUrl();
+    public RowFilter getRowFilter() {
+        return ROW_FILTER;
+    }
 
-            if (u.endsWith("robots.txt")) {
-                continue;
-            }
-            String mime = CCIndexRecord.normalizeMime(r.getMimeDetected());
-            mime = (mime == null) ? "NULL" : mime;
-            if (!mime.contains("html") && !mime.contains("text")) {
-                continue;
-            }
-            String charset = r.getCharset();
-            charset = (StringUtils.isEmpty(charset)) ? "UNK" : charset;
-            String lang = getFirstLang(r.getLanguages());
-            String key = lang+"\t"+charset;
-            Float sampleRate = sampleRates.get(key);
-            boolean select = false;
-            if (sampleRate != null) {
-                if (sampleRate > 0.99999 || random.nextFloat() <= sampleRate) {
-                    select = true;
-                }
+    @Override
+    public void process(CCIndexRecord r) throws IOException {
+        if (!RowFilters.isOk200NotRobots(r)) {
+            return;
+        }
+        String u = r.getUrl();
+        String mime = CCIndexRecord.normalizeMime(r.getMimeDetected());
+        mime = (mime == null) ? "NULL" : mime;
+        if (!mime.contains("html") && !mime.contains("text")) {
+            return;
+        }
+        String charset = r.getCharset();
+        charset = (StringUtils.isEmpty(charset)) ? "UNK" : charset;
+        String lang = getFirstLang(r.getLanguages());
+        String key = lang+"\t"+charset;
+        Float sampleRate = sampleRates.get(key);
+        boolean select = false;
+        if (sampleRate != null) {
+            if (sampleRate > 0.99999 || random.nextFloat() <= sampleRate) {
+                select = true;
             }
+        }
 
-            if (select == true) {
-                selected++;
-                gson.toJson(r, writer);
-                writer.write("\n");
-            } else {
-                //System.out.println("IGNORE: "+m);
-            }
-            total++;
+        if (select == true) {
+            selected++;
+            gson.toJson(r, getWriter());
+            getWriter().write("\n");
+        } else {
+            //System.out.println("IGNORE: "+m);
         }
+        total++;
     }
 
     private String getFirstLang(String languages) {
@@ -182,7 +189,6 @@ public class DownSampleLangCharset extends AbstractRecordProcessor {
     @Override
     public void close() throws IOException {
         System.out.println(selected + " out of "+total);
-        writer.flush();
-        writer.close();
+        super.close();
     }
 }
@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.FieldNamingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.tallison.cc.index.CCIndexField;
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.cc.index.SharedStateProcessor;
+import org.tallison.utils.BloomFilter;
+
+/**
+ * Estimates how many records are duplicate payloads (a digest that was
+ * seen before) and repeat captures (a url that was seen before):
+ * <pre>
+ * DuplicateStats &lt;output_directory&gt; expected=&lt;n&gt; [fpp=&lt;p&gt;] [mmap=&lt;dir&gt;] [first_seen=digest|url]
+ * </pre>
+ * The digests and urls go through two {@link BloomFilter}s that all of the
+ * threads share (see {@link SharedStateProcessor}), sized for <code>n</code>
+ * distinct keys each at a false positive rate of <code>p</code> (default 0.01);
+ * a false positive counts a new key as a duplicate, so the counts are a
+ * little high.  With mmap, the filters are mapped to files in that
+ * directory instead of being in direct memory.
+ * <p>
+ * The output rows are tld, detected mime, records, duplicate payloads and
+ * repeat urls, tab delimited.  The threads' files can be merged with
+ * <code>GroupByReducer &lt;dir&gt; &lt;file&gt; group=tld,mime_detected metric=count,count,count</code>.
+ * <p>
+ * With first_seen, the records whose digest (or url) hadn't been seen are
+ * also written to first_seen_rows files, like {@link DownSample}'s.  Which
+ * capture is seen first depends on the order in which the threads get to
+ * them.
+ * <p>
+ * Only records with a 200 status are counted.  The filters can't be
+ * restored from a checkpoint, so this doesn't support checkpoints.
+ */
+public class DuplicateStats extends AbstractRecordProcessor
+        implements SharedStateProcessor<DuplicateStats.Filters> {
+
+    private static final RowFilter ROW_FILTER = RowFilters.status(200);
+
+    private static final Set<CCIndexField> FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            CCIndexField.URL, CCIndexField.STATUS, CCIndexField.DIGEST, CCIndexField.MIME_DETECTED));
+
+    private static final String DIGESTS = "digests";
+    private static final String URLS = "urls";
+
+    private static final List<GroupSpec.Metric> METRICS = Arrays.asList(
+            GroupSpec.Metric.parse("count"), GroupSpec.Metric.parse("count"),
+            GroupSpec.Metric.parse("count"));
+    private static final int RECORDS = 0;
+    private static final int DUPLICATE_PAYLOADS = 1;
+    private static final int REPEAT_URLS = 2;
+
+    private static Gson gson = new GsonBuilder()
+            .setFieldNamingPolicy(FieldNamingPolicy.LOWER_CASE_WITH_DASHES)
+            .create();
+
+    /**
+     * The parsed args and the filters that the threads share
+     */
+    public static class Filters {
+        private final Path dir;
+        private final String firstSeen;
+        private final BloomFilter digests;
+        private final BloomFilter urls;
+        //threads that haven't closed yet; the last one closes the filters
+        private final AtomicInteger users = new AtomicInteger();
+
+        private Filters(Path dir, String firstSeen, BloomFilter digests, BloomFilter urls) {
+            this.dir = dir;
+            this.firstSeen = firstSeen;
+            this.digests = digests;
+            this.urls = urls;
+        }
+    }
+
+    private Filters filters;
+    private BloomFilter digests;
+    private BloomFilter urls;
+    private String firstSeen = null;
+    private UnitOutput firstSeenOutput = null;
+    private final GroupTable table = new GroupTable(2, METRICS, true);
+    private final int[] valueIds = new int[2];
+    private long records = 0;
+    private long duplicatePayloads = 0;
+    private long repeatUrls = 0;
+
+    @Override
+    public void init(String[] args) throws Exception {
+        init(args, loadState(args));
+    }
+
+    @Override
+    public Filters loadState(String[] args) throws Exception {
+        super.init(args);
+        if (args.length < 2) {
+            usage();
+            throw new IllegalArgumentException("Expected an output directory and expected=<n>");
+        }
+        Path dir = Paths.get(args[0]);
+        long expected = -1;
+        double fpp = 0.01;
+        Path mmap = null;
+        String firstSeen = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.startsWith("expected=")) {
+                expected = Long.parseLong(arg.substring("expected=".length()));
+            } else if (arg.startsWith("fpp=")) {
+                fpp = Double.parseDouble(arg.substring("fpp=".length()));
+            } else if (arg.startsWith("mmap=")) {
+                mmap = Paths.get(arg.substring("mmap=".length()));
+            } else if (arg.equals("first_seen=digest") || arg.equals("first_seen=url")) {
+                firstSeen = arg.substring("first_seen=".length());
+            } else {
+                throw new IllegalArgumentException("I regret I don't understand: " + arg);
+            }
+        }
+        if (expected < 1) {
+            throw new IllegalArgumentException("Expected expected=<n> with n > 0");
+        }
+        BloomFilter digests = newFilter(DIGESTS, expected, fpp, mmap);
+        BloomFilter urls = null;
+        try {
+            urls = newFilter(URLS, expected, fpp, mmap);
+        } finally {
+            if (urls == null) {
+                digests.close();
+            }
+        }
+        return new Filters(dir, firstSeen, digests, urls);
+    }
+
+    private static BloomFilter newFilter(String kind, long expected, double fpp, Path mmap) {
+        Path file = (mmap == null) ? null : mmap.resolve(kind + ".bloom");
+        BloomFilter filter = new BloomFilter(expected, fpp, file);
+        System.err.println("DuplicateStats: " + kind + " filter of " +
+                filter.getSizeInBytes() / (1024 * 1024) + " MB" +
+                ((file == null) ? "" : " mapped to " + file));
+        return filter;
+    }
+
+    @Override
+    public void init(String[] args, Filters state) throws Exception {
+        filters = state;
+        filters.users.incrementAndGet();
+        digests = state.digests;
+        urls = state.urls;
+        firstSeen = state.firstSeen;
+        openOutput(state.dir, "duplicate_stats");
+        if (firstSeen != null) {
+            firstSeenOutput = new UnitOutput(state.dir, "first_seen_rows", getThreadNumber());
+        }
+    }
+
+    @Override
+    void usage() {
+        System.out.println("DuplicateStats <output_directory> expected=<n> [fpp=<p>] [mmap=<dir>] [first_seen=digest|url]");
+        System.out.println("expected: distinct digests (and urls) that the filters are sized for");
+        System.out.println("fpp: false positive rate of the filters at that size (default: 0.01)");
+        System.out.println("mmap: map the filters to files in this directory instead of keeping them in memory");
+        System.out.println("first_seen: also write the records whose digest or url is new to first_seen_rows files");
+    }
+
+    @Override
+    public Set<CCIndexField> getFields() {
+        //the first seen rows have all of the fields
+        return (firstSeen == null) ? FIELDS : CCIndexField.ALL;
+    }
+
+    @Override
+    public RowFilter getRowFilter() {
+        return ROW_FILTER;
+    }
+
+    @Override
+    public void process(CCIndexRecord r) throws IOException {
+        if (r.getStatus() != 200) {
+            return;
+        }
+        String digest = r.getDigest();
+        boolean newPayload = digest != null && digests.put(digest);
+        boolean duplicatePayload = digest != null && !newPayload;
+        String url = r.getUrl();
+        boolean newUrl = url != null && urls.put(url);
+        boolean repeatUrl = url != null && !newUrl;
+
+        String mime = CCIndexRecord.normalizeMime(r.getMimeDetected());
+        valueIds[0] = table.getValueId(0, getTLD(url));
+        valueIds[1] = table.getValueId(1, (mime == null) ? GroupSpec.NULL : mime);
+        int group = table.getGroup(valueIds);
+        table.add(group, RECORDS, 1);
+        records++;
+        if (duplicatePayload) {
+            table.add(group, DUPLICATE_PAYLOADS, 1);
+            duplicatePayloads++;
+        }
+        if (repeatUrl) {
+            table.add(group, REPEAT_URLS, 1);
+            repeatUrls++;
+        }
+        if (firstSeenOutput != null &&
+                (firstSeen.equals("digest") ? newPayload : newUrl)) {
+            gson.toJson(r, firstSeenOutput.getWriter());
+            firstSeenOutput.getWriter().write("\n");
+        }
+    }
+
+    @Override
+    protected void writeState(Writer writer) throws IOException {
+        table.write(writer);
+        table.clear();
+    }
+
+    @Override
+    protected boolean mergeState() {
+        SharedAggregation.merge(getAggregateFile(), () -> new GroupTable(2, METRICS, false),
+                shared -> shared.addAll(table));
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        System.out.println("DuplicateStats: " + duplicatePayloads + " duplicate payloads and " +
+                repeatUrls + " repeat urls out of " + records);
+        try {
+            super.close();
+            if (firstSeenOutput != null) {
+                firstSeenOutput.close();
+            }
+        } finally {
+            if (filters.users.decrementAndGet() == 0) {
+                try {
+                    filters.digests.close();
+                } finally {
+                    filters.urls.close();
+                }
+            }
+        }
+    }
+}
@@ -18,83 +18,85 @@ package org.tallison.cc.index.mappers;
 
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Random;
 import java.util.Set;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.SharedStateProcessor;
 
 /**
- * Class loads a tab-delimited file of mime\t<code>float</code>.
- * It selects a record if a random float is at/below that threshold.
- *
- * This allows the user to set different sampling rates per mime
- * type to generate a new sub-index for downloading, e.g. I only
- * want .001% of "text/html" but I want 50% of "application/pdf"
- *
- * If a mime type does not exist in the sampling weights file, the index
- * record is selected (or threshold value = 1.0f).
+ * Class loads a file of mimes and a file of file extensions, one per row
+ * in the first column (a "mime" header row is skipped).
+ * It selects every record whose header mime is in the mimes file or whose
+ * url's extension is in the extensions file, to generate a new sub-index
+ * for downloading.
+ * <p>
+ * Records with a mime and an extension that are in neither file are
+ * dropped, as are records shorter than 10000 bytes.
  */
 
-public class ExtractByMimeExt extends AbstractRecordProcessor {
+public class ExtractByMimeExt extends AbstractRecordProcessor
+        implements Checkpointable, SharedStateProcessor<ExtractByMimeExt.Selection> {
     private static final String MIME_COL_HEADER = "mime";
     private static Gson gson = new GsonBuilder().create();
 
     private final Random random = new Random();
-    private Writer writer;
 
     private int i;
-    private final Set<String> mimes = new HashSet<>();
-    private final Set<String> extensions = new HashSet<>();
+    private Set<String> mimes;
+    private Set<String> extensions;
     int multiline = 0;
 
     public ExtractByMimeExt() {}
 
+    /**
+     * The mimes and extensions to extract; shared by the threads
+     */
+    static class Selection {
+        private final Set<String> mimes;
+        private final Set<String> extensions;
+
+        Selection(Set<String> mimes, Set<String> extensions) {
+            this.mimes = Collections.unmodifiableSet(mimes);
+            this.extensions = Collections.unmodifiableSet(extensions);
+        }
+    }
+
     @Override
     public void init(String[] args) throws Exception {
+        init(args, loadState(args));
+    }
+
+    @Override
+    public Selection loadState(String[] args) throws Exception {
         super.init(args);
-        mimes.clear();
         //args[0] is mimes file
         //args[1] is ext file
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
-            String line = reader.readLine();
-            while (line != null) {
-                String[] cols = line.split("\t");
-                if (cols.length > 0) {
-                    String mime = cols[0].trim();
-                    if (mime.equalsIgnoreCase(MIME_COL_HEADER)) {
-                        line = reader.readLine();
-                        continue;
-                    }
-                    mimes.add(mime);
-                } else {
-                    System.err.println("row too short: "+line);
-                }
-                line = reader.readLine();
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        return new Selection(loadColumn(Paths.get(args[0])), loadColumn(Paths.get(args[1])));
+    }
 
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[1]))) {
+    //the first column of each row but the header
+    private static Set<String> loadColumn(Path p) {
+        Set<String> values = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(p)) {
             String line = reader.readLine();
             while (line != null) {
                 String[] cols = line.split("\t");
                 if (cols.length > 0) {
-                    String ext = cols[0].trim();
-                    if (ext.equalsIgnoreCase(MIME_COL_HEADER)) {
+                    String value = cols[0].trim();
+                    if (value.equalsIgnoreCase(MIME_COL_HEADER)) {
                         line = reader.readLine();
                         continue;
                     }
-                    extensions.add(ext);
+                    values.add(value);
                 } else {
                     System.err.println("row too short: "+line);
                 }
@@ -103,12 +105,15 @@ public class ExtractByMimeExt extends AbstractRecordProcessor {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return values;
+    }
 
+    @Override
+    public void init(String[] args, Selection state) throws Exception {
+        mimes = state.mimes;
+        extensions = state.extensions;
         try {
-            Path targFile = Paths.get(args[2]).resolve("downsampled_rows_"+getThreadNumber()+".txt");
-            Files.createDirectories(targFile.getParent());
-            writer = Files.newBufferedWriter(targFile,
-                    StandardCharsets.UTF_8);
+            openOutput(Paths.get(args[2]), "downsampled_rows");
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -122,33 +127,27 @@ public class ExtractByMimeExt extends AbstractRecordProcessor {
     }
 
     @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            String m = CCIndexRecord.normalizeMime(r.getMime());
-            String ext = getExtension(r.getUrl());
-            if (r.getLength() < 10000) {
-                continue;
-            }
-            boolean select = false;
-            if (mimes.contains(m) || extensions.contains(ext)) {
-                select = true;
-            }
-            if (select == true) {
-                gson.toJson(r, writer);
-                writer.write("\n");
-            } else {
-                //System.out.println("IGNORE: "+m);
-            }
+    public void process(CCIndexRecord r) throws IOException {
+        String m = CCIndexRecord.normalizeMime(r.getMime());
+        String ext = getExtension(r.getUrl());
+        if (r.getLength() < 10000) {
+            return;
+        }
+        boolean select = false;
+        if (mimes.contains(m) || extensions.contains(ext)) {
+            select = true;
+        }
+        if (select == true) {
+            gson.toJson(r, getWriter());
+            getWriter().write("\n");
+        } else {
+            //System.out.println("IGNORE: "+m);
         }
     }
 
 
     @Override
     public void close() throws IOException {
-        writer.flush();
-        writer.close();
+        super.close();
     }
 }
@@ -16,35 +16,56 @@
  */
 package org.tallison.cc.index.mappers;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.tallison.cc.index.CCIndexField;
 import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.cc.index.SharedStateProcessor;
+import org.tallison.utils.DigestSet;
 
 /**
  * If you have a list of cc mimes and you want to look the original urls,
  * use this.
  * <p>
  * This is useful if you have a truncated/corrupt file and you want to repull it.
+ * <p>
+ * The list is loaded once per run into a {@link DigestSet} that all of the
+ * threads share, and rows are looked up by the digests in their raw bytes,
+ * so only the rows with a match are parsed.
  */
-public class FindURLsFromDigests extends AbstractRecordProcessor {
+public class FindURLsFromDigests extends AbstractRecordProcessor
+        implements Checkpointable, SharedStateProcessor<DigestSet> {
+
+    private static final Set<CCIndexField> FIELDS = EnumSet.of(
+            CCIndexField.DIGEST, CCIndexField.URL);
 
-    private final Map digests = new HashMap<>();
-    private Writer writer;
+    private DigestSet digests;
+    private RowFilter rowFilter;
 
     private int i;
     Map<String, Integer> mimes = new HashMap<>();
     int multiline = 0;
 
 
+    @Override
+    public Set<CCIndexField> getFields() {
+        return FIELDS;
+    }
+
+    @Override
+    public RowFilter getRowFilter() {
+        return rowFilter;
+    }
+
     @Override
     public void usage() {
         System.out.println("FindURLsFromDigests <list_of_digests> <output_directory>");
@@ -52,41 +73,38 @@ public class FindURLsFromDigests extends AbstractRecordProcessor {
 
     @Override
     public void init(String[] args) throws Exception {
+        init(args, loadState(args));
+    }
+
+    @Override
+    public DigestSet loadState(String[] args) throws Exception {
         super.init(args);
         if (args.length != 2) {
             throw new IllegalArgumentException("must have 2 arguments: digest file and output file");
         }
-        digests.clear();
-        try (BufferedReader reader = Files.newBufferedReader(Paths.get(args[0]))) {
-            String line = reader.readLine();
-            while (line != null) {
-                digests.put(line.trim(), 1);
-                line = reader.readLine();
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        Path p = Paths.get(args[0]);
+        DigestSet set = DigestSet.load(p);
+        System.err.println("loaded " + set.size() + " digests from " + p);
+        return set;
+    }
+
+    @Override
+    public void init(String[] args, DigestSet state) throws Exception {
+        digests = state;
+        rowFilter = RowFilters.digestIn(digests);
 
-        Path targFile = Paths.get(args[1]).resolve("urls_"+getThreadNumber()+".txt");
-        Files.createDirectories(targFile.getParent());
-        writer = Files.newBufferedWriter(targFile,
-                StandardCharsets.UTF_8);
+        openOutput(Paths.get(args[1]), "urls");
 
     }
 
     @Override
-    public void process(String row) throws IOException {
-
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
-
-        for (CCIndexRecord r : records) {
-            String digest = r.getDigest();
-            if (digests.containsKey(digest)) {
-                digest = digest.replaceAll("[\t\r\n]", " ");
-                writer.write(clean(digest)+"\t"+
-                        clean(r.getUrl())+"\n");
-                writer.flush();
-            }
+    public void process(CCIndexRecord r) throws IOException {
+        String digest = r.getDigest();
+        if (digests.contains(digest)) {
+            digest = digest.replaceAll("[\t\r\n]", " ");
+            getWriter().write(clean(digest)+"\t"+
+                    clean(r.getUrl())+"\n");
+            getWriter().flush();
         }
     }
 
@@ -94,8 +112,7 @@ public class FindURLsFromDigests extends AbstractRecordProcessor {
     @Override
     public void close() throws IOException {
         System.err.println(getThreadNumber() + " is closing");
-        writer.flush();
-        writer.close();
+        super.close();
 
     }
 }
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.tallison.cc.index.CCIndexField;
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.Checkpointable;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.SharedAggregation;
+
+/**
+ * Generic group-by/count mapper:
+ * <pre>
+ * GroupBy &lt;output_directory&gt; group=tld,mime_detected filter=status:200 metric=count,sum(length)
+ * </pre>
+ * See {@link GroupSpec} for the spec.  Each row of the output has the values
+ * of the group's dimensions and then its metrics, tab delimited.
+ * <p>
+ * Subclasses can fix the spec with {@link #preset(String[], String...)}.
+ */
+public class GroupBy extends AbstractRecordProcessor implements Checkpointable {
+
+    //status codes below this are turned into strings once
+    private static final int MAX_CACHED_STATUS = 1000;
+    private static final String[] STATUS_STRINGS = new String[MAX_CACHED_STATUS];
+
+    static {
+        for (int i = 0; i < MAX_CACHED_STATUS; i++) {
+            STATUS_STRINGS[i] = Integer.toString(i);
+        }
+    }
+
+    //languages -> first language; the languages are canonical strings, see CCIndexSymbols
+    private static final int MAX_LANGUAGES = 100000;
+    private final Map<String, String> firstLanguages = new HashMap<>();
+
+    private GroupSpec spec;
+    private GroupSpec.Dimension[] dimensions;
+    private GroupSpec.Filter[] filters;
+    private Set<CCIndexField> fields;
+    private RowFilter rowFilter;
+    private GroupTable table;
+    private int[] valueIds;
+    //instead of the table with top=k
+    private TopKTable topTable;
+    private String[] values;
+
+    @Override
+    public void init(String[] args) throws Exception {
+        super.init(args);
+        if (args.length < 1) {
+            usage();
+            throw new IllegalArgumentException("Expected an output directory");
+        }
+        spec = GroupSpec.parse(Arrays.copyOfRange(args, 1, args.length));
+        List<GroupSpec.Dimension> dims = spec.getDimensions();
+        dimensions = dims.toArray(new GroupSpec.Dimension[dims.size()]);
+        List<GroupSpec.Filter> fs = spec.getFilters();
+        filters = fs.toArray(new GroupSpec.Filter[fs.size()]);
+        fields = spec.getFields();
+        rowFilter = spec.getRowFilter();
+        if (spec.getTop() > 0) {
+            topTable = newTopTable(true);
+            values = new String[dimensions.length];
+        } else {
+            table = newTable(true);
+            valueIds = new int[dimensions.length];
+        }
+        openOutput(Paths.get(args[0]), spec.getName());
+    }
+
+    /**
+     * Filter for the presets that only count 200s and skip robots.txt, as
+     * {@link org.tallison.cc.index.RowFilters#ok200NotRobots()} does for raw rows
+     */
+    protected static final String OK_NOT_ROBOTS = "filter=status:200,url!:*robots.txt";
+
+    /**
+     * @param args the mapper's args; the first is the output directory
+     * @param spec the spec to use instead of the rest of the args
+     * @return the output directory and the spec, or the args if they ask for help
+     */
+    protected static String[] preset(String[] args, String... spec) {
+        if (args.length == 0 || args[0].equals("-h") || args[0].equals("--help")) {
+            return args;
+        }
+        String[] ret = new String[spec.length + 1];
+        ret[0] = args[0];
+        System.arraycopy(spec, 0, ret, 1, spec.length);
+        return ret;
+    }
+
+    private GroupTable newTable(boolean writeSketches) {
+        return new GroupTable(dimensions.length, spec.getMetrics(), writeSketches);
+    }
+
+    private TopKTable newTopTable(boolean writeAll) {
+        return new TopKTable(dimensions.length, spec.getMetrics().get(0), spec.getTop(),
+                spec.getTopCapacity(), writeAll);
+    }
+
+    /**
+     * Merges the files that GroupBy threads wrote with the same spec, see
+     * {@link org.tallison.cc.index.reducers.GroupByReducer}
+     *
+     * @param dir directory of the thread's files; unfinished .tmp files are skipped
+     * @param output file to write
+     * @param args the spec; filters are ignored
+     */
+    public static void reduce(Path dir, Path output, String[] args) throws IOException {
+        GroupSpec spec = GroupSpec.parse(args);
+        int numDimensions = spec.getDimensions().size();
+        GroupTable table = null;
+        TopKTable topTable = null;
+        if (spec.getTop() > 0) {
+            topTable = new TopKTable(numDimensions, spec.getMetrics().get(0), spec.getTop(),
+                    spec.getTopCapacity(), false);
+        } else {
+            table = new GroupTable(numDimensions, spec.getMetrics(), false);
+        }
+        for (File f : dir.toFile().listFiles()) {
+            if (f.getName().endsWith(".tmp")) {
+                continue;
+            }
+            //each file is one sketch, so the top-k rows are merged by file
+            List<String[]> rows = new ArrayList<>();
+            try (BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+                String line = r.readLine();
+                while (line != null) {
+                    String[] cols = line.split("\t", -1);
+                    if (topTable != null) {
+                        rows.add(cols);
+                    } else {
+                        try {
+                            table.addRow(cols);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("skipping bad row in " + f + ": " + e.getMessage());
+                        }
+                    }
+                    line = r.readLine();
+                }
+            }
+            if (topTable != null) {
+                try {
+                    topTable.addRows(rows);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("skipping " + f + ": " + e.getMessage());
+                }
+            }
+        }
+        try (Writer w = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            if (topTable != null) {
+                topTable.write(w);
+            } else {
+                table.write(w);
+            }
+        }
+    }
+
+    @Override
+    public Set<CCIndexField> getFields() {
+        return fields;
+    }
+
+    @Override
+    public RowFilter getRowFilter() {
+        return rowFilter;
+    }
+
+    @Override
+    void usage() {
+        System.out.println("GroupBy <output_directory> group=<dimension>,... [filter=<dimension>[!]:<value>[|<value>...],...]");
+        System.out.println("    [metric=count|sum(x)|min(x)|max(x)|distinct(<dimension>[;precision]),...]");
+        System.out.println("    [top=<k>[;<counters>]] [name=<output_prefix>]");
+        StringBuilder sb = new StringBuilder();
+        for (GroupSpec.Dimension d : GroupSpec.Dimension.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(d.getName());
+        }
+        System.out.println("dimensions: " + sb);
+        System.out.println("x: status, length or offset");
+        System.out.println("distinct metrics are written as sketches; merge the files with the GroupByReducer");
+        System.out.println("top=k keeps the k groups with the highest count or sum in constant memory,");
+        System.out.println("    and each row also has the most that the count or sum can be over the true one");
+        System.out.println("a filter value may start and/or end with * to match the end, start or middle of the value");
+        System.out.println("e.g. GroupBy out group=tld,mime_detected filter=status:200,url!:*robots.txt metric=count,sum(length)");
+    }
+
+    @Override
+    public void process(CCIndexRecord r) throws IOException {
+        for (GroupSpec.Filter f : filters) {
+            if (!f.accept(this, r)) {
+                return;
+            }
+        }
+        if (topTable != null) {
+            for (int d = 0; d < dimensions.length; d++) {
+                String v = dimensions[d].getValue(this, r);
+                values[d] = (v == null) ? GroupSpec.NULL : v;
+            }
+            topTable.update(values, r);
+            return;
+        }
+        for (int d = 0; d < dimensions.length; d++) {
+            String v = dimensions[d].getValue(this, r);
+            valueIds[d] = table.getValueId(d, (v == null) ? GroupSpec.NULL : v);
+        }
+        table.update(table.getGroup(valueIds), this, r);
+    }
+
+    @Override
+    protected void writeState(Writer writer) throws IOException {
+        if (topTable != null) {
+            topTable.write(writer);
+            topTable.clear();
+            return;
+        }
+        table.write(writer);
+        table.clear();
+    }
+
+    @Override
+    protected boolean mergeState() {
+        if (topTable != null) {
+            SharedAggregation.merge(getAggregateFile(), () -> newTopTable(false),
+                    shared -> shared.addAll(topTable));
+            return true;
+        }
+        SharedAggregation.merge(getAggregateFile(), () -> newTable(false), shared -> shared.addAll(table));
+        return true;
+    }
+
+    String getFirstLanguage(String languages) {
+        if (StringUtils.isBlank(languages)) {
+            return null;
+        }
+        String lang = firstLanguages.get(languages);
+        if (lang == null) {
+            int comma = languages.indexOf(',');
+            lang = (comma < 0) ? languages : languages.substring(0, comma);
+            if (firstLanguages.size() < MAX_LANGUAGES) {
+                firstLanguages.put(languages, lang);
+            }
+        }
+        return lang;
+    }
+
+    String getStatus(int status) {
+        if (status == CCIndexRecord.MISSING) {
+            return null;
+        }
+        if (status >= 0 && status < MAX_CACHED_STATUS) {
+            return STATUS_STRINGS[status];
+        }
+        return Integer.toString(status);
+    }
+}
@@ -0,0 +1,561 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import org.tallison.cc.index.CCIndexField;
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.RowFilter;
+import org.tallison.cc.index.RowFilters;
+import org.tallison.utils.HyperLogLog;
+import org.tallison.utils.SpaceSaving;
+
+/**
+ * Parsed spec for {@link GroupBy}, e.g.
+ * <pre>
+ * group=tld,mime_detected filter=status:200,url!:*robots.txt metric=count,sum(length)
+ * </pre>
+ * <ul>
+ *     <li>group: the dimensions to group by; see {@link Dimension}.  With no group,
+ *     there's a single row of totals.</li>
+ *     <li>filter: &lt;dimension&gt;:&lt;value&gt; keeps the records with that value,
+ *     &lt;dimension&gt;!:&lt;value&gt; drops them.  A value may start and/or end with *
+ *     to match the end, start or middle of the value, and it may list alternatives
+ *     separated by |, e.g. mime_detected:*html*|*text*.  Filters are separated by commas
+ *     or repeated, and a record has to pass all of them.  A missing value is "NULL".</li>
+ *     <li>metric: count, sum(x), min(x) and max(x), where x is status, length or offset,
+ *     and distinct(d), the approximate number of distinct values of the dimension d,
+ *     e.g. distinct(host).  distinct(d;p) sets the precision of the {@link HyperLogLog}
+ *     sketches, see there; each group takes 2^p bytes per distinct metric.
+ *     The default is count.  The rows are sorted by the first metric.</li>
+ *     <li>top: top=k only keeps the k groups with the highest counts (or sums), in constant
+ *     memory, with a {@link SpaceSaving} sketch of 10*k counters; top=k;n sets the number of
+ *     counters.  The metric must be count or a sum, and each row also has the most that its
+ *     value can be over the true value.</li>
+ *     <li>name: prefix of the output files; the default is group_by_&lt;dimensions&gt;</li>
+ * </ul>
+ */
+class GroupSpec {
+
+    static final String NULL = "NULL";
+
+    //counters per top group, unless they're set
+    static final int TOP_CAPACITY_FACTOR = 10;
+
+    /**
+     * Values that records can be grouped and filtered by
+     */
+    enum Dimension {
+        URL("url", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getUrl();
+            }
+        },
+        HOST("host", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getHost(r.getUrl());
+            }
+        },
+        PATH("path", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getPath(r.getUrl());
+            }
+        },
+        TLD("tld", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getTLD(r.getUrl());
+            }
+        },
+        REGISTERED_DOMAIN("registered_domain", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getRegisteredDomain(r.getUrl());
+            }
+        },
+        EXT("ext", CCIndexField.URL) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getExtension(r.getUrl());
+            }
+        },
+        MIME("mime", CCIndexField.MIME) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return CCIndexRecord.normalizeMime(r.getMime());
+            }
+        },
+        MIME_DETECTED("mime_detected", CCIndexField.MIME_DETECTED) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return CCIndexRecord.normalizeMime(r.getMimeDetected());
+            }
+        },
+        CHARSET("charset", CCIndexField.CHARSET) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getCharset();
+            }
+        },
+        LANGUAGES("languages", CCIndexField.LANGUAGES) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getLanguages();
+            }
+        },
+        LANG("lang", CCIndexField.LANGUAGES) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getFirstLanguage(r.getLanguages());
+            }
+        },
+        STATUS("status", CCIndexField.STATUS) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return g.getStatus(r.getStatus());
+            }
+        },
+        TRUNCATED("truncated", CCIndexField.TRUNCATED) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getTruncated();
+            }
+        },
+        FILENAME("filename", CCIndexField.FILENAME) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getFilename();
+            }
+        },
+        DIGEST("digest", CCIndexField.DIGEST) {
+            @Override
+            String getValue(GroupBy g, CCIndexRecord r) {
+                return r.getDigest();
+            }
+        };
+
+        private final String name;
+        private final CCIndexField field;
+
+        Dimension(String name, CCIndexField field) {
+            this.name = name;
+            this.field = field;
+        }
+
+        /**
+         * @return the value or null if it's missing
+         */
+        abstract String getValue(GroupBy g, CCIndexRecord r);
+
+        String getName() {
+            return name;
+        }
+
+        CCIndexField getField() {
+            return field;
+        }
+
+        static Dimension parse(String s) {
+            for (Dimension d : values()) {
+                if (d.name.equals(s)) {
+                    return d;
+                }
+            }
+            throw new IllegalArgumentException("I regret I don't know the dimension '" + s + "'");
+        }
+    }
+
+    /**
+     * A dimension's value has to (or must not) match one of the patterns
+     */
+    static class Filter {
+        private static final int EQUALS = 0;
+        private static final int STARTS_WITH = 1;
+        private static final int ENDS_WITH = 2;
+        private static final int CONTAINS = 3;
+
+        private final Dimension dimension;
+        private final boolean negated;
+        private final String[] patterns;
+        //patterns without the *s
+        private final String[] cores;
+        private final int[] modes;
+
+        Filter(Dimension dimension, boolean negated, String[] patterns) {
+            this.dimension = dimension;
+            this.negated = negated;
+            this.patterns = patterns;
+            this.cores = new String[patterns.length];
+            this.modes = new int[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                String p = patterns[i];
+                boolean start = p.length() > 0 && p.charAt(0) == '*';
+                boolean end = p.length() > 1 && p.charAt(p.length() - 1) == '*';
+                if (start && end) {
+                    modes[i] = CONTAINS;
+                    cores[i] = p.substring(1, p.length() - 1);
+                } else if (start) {
+                    modes[i] = ENDS_WITH;
+                    cores[i] = p.substring(1);
+                } else if (end) {
+                    modes[i] = STARTS_WITH;
+                    cores[i] = p.substring(0, p.length() - 1);
+                } else {
+                    modes[i] = EQUALS;
+                    cores[i] = p;
+                }
+            }
+        }
+
+        boolean accept(GroupBy g, CCIndexRecord r) {
+            String value = dimension.getValue(g, r);
+            if (value == null) {
+                value = NULL;
+            }
+            for (int i = 0; i < cores.length; i++) {
+                if (matches(i, value)) {
+                    return !negated;
+                }
+            }
+            return negated;
+        }
+
+        private boolean matches(int i, String value) {
+            switch (modes[i]) {
+                case STARTS_WITH:
+                    return value.startsWith(cores[i]);
+                case ENDS_WITH:
+                    return value.endsWith(cores[i]);
+                case CONTAINS:
+                    return value.contains(cores[i]);
+            }
+            return value.equals(cores[i]);
+        }
+
+        /**
+         * @return a conservative filter on the raw rows for the filters that
+         * have one, or {@link RowFilter#ACCEPT_ALL}
+         */
+        RowFilter getRowFilter() {
+            if (dimension == Dimension.STATUS && !negated && patterns.length == 1) {
+                try {
+                    return RowFilters.status(Integer.parseInt(patterns[0]));
+                } catch (NumberFormatException e) {
+                    return RowFilter.ACCEPT_ALL;
+                }
+            }
+            if (dimension == Dimension.URL && negated) {
+                for (int mode : modes) {
+                    if (mode != ENDS_WITH) {
+                        return RowFilter.ACCEPT_ALL;
+                    }
+                }
+                return RowFilters.urlNotEndingWith(cores);
+            }
+            return RowFilter.ACCEPT_ALL;
+        }
+
+        Dimension getDimension() {
+            return dimension;
+        }
+    }
+
+    /**
+     * count, sum/min/max of a numeric field, or the approximate number
+     * of distinct values of a dimension
+     */
+    static class Metric {
+        enum Type {
+            COUNT, SUM, MIN, MAX, DISTINCT
+        }
+
+        private final Type type;
+        //null for count
+        private final CCIndexField field;
+        //only for distinct
+        private final Dimension dimension;
+        private final int precision;
+
+        Metric(Type type, CCIndexField field) {
+            this(type, field, null, 0);
+        }
+
+        private Metric(Type type, CCIndexField field, Dimension dimension, int precision) {
+            this.type = type;
+            this.field = field;
+            this.dimension = dimension;
+            this.precision = precision;
+        }
+
+        Type getType() {
+            return type;
+        }
+
+        CCIndexField getField() {
+            return field;
+        }
+
+        /**
+         * @return the dimension whose values are counted by a distinct metric
+         */
+        Dimension getDimension() {
+            return dimension;
+        }
+
+        /**
+         * @return the precision of a distinct metric's {@link HyperLogLog}s
+         */
+        int getPrecision() {
+            return precision;
+        }
+
+        /**
+         * @return the value of the field or {@link CCIndexRecord#MISSING}
+         */
+        long getValue(CCIndexRecord r) {
+            switch (field) {
+                case STATUS:
+                    return r.getStatus();
+                case LENGTH:
+                    return r.getLength();
+                case OFFSET:
+                    return r.getOffset();
+            }
+            throw new IllegalStateException("not numeric: " + field);
+        }
+
+        String getName() {
+            if (type == Type.DISTINCT) {
+                return "distinct(" + dimension.getName() +
+                        (precision == HyperLogLog.DEFAULT_PRECISION ? "" : ";" + precision) + ")";
+            }
+            return (field == null) ? "count" :
+                    type.name().toLowerCase(Locale.ROOT) + "(" + field.getKey() + ")";
+        }
+
+        static Metric parse(String s) {
+            if (s.equals("count")) {
+                return new Metric(Type.COUNT, null);
+            }
+            int open = s.indexOf('(');
+            if (open < 0 || !s.endsWith(")")) {
+                throw new IllegalArgumentException("I regret I don't understand the metric '" + s + "'");
+            }
+            Type type;
+            try {
+                type = Type.valueOf(s.substring(0, open).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("I regret I don't know the metric '" + s + "'");
+            }
+            String f = s.substring(open + 1, s.length() - 1);
+            if (type == Type.DISTINCT) {
+                return parseDistinct(f);
+            }
+            for (CCIndexField field : new CCIndexField[]{CCIndexField.STATUS,
+                    CCIndexField.LENGTH, CCIndexField.OFFSET}) {
+                if (field.getKey().equals(f)) {
+                    return new Metric(type, field);
+                }
+            }
+            throw new IllegalArgumentException("Can only " + type.name().toLowerCase(Locale.ROOT) +
+                    " status, length or offset, not '" + f + "'");
+        }
+
+        //dimension or dimension;precision
+        private static Metric parseDistinct(String s) {
+            int precision = HyperLogLog.DEFAULT_PRECISION;
+            int sep = s.indexOf(';');
+            if (sep > -1) {
+                try {
+                    precision = Integer.parseInt(s.substring(sep + 1).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected distinct(dimension;precision), not '" +
+                            s + "'");
+                }
+                if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+                    throw new IllegalArgumentException("The precision must be between " +
+                            HyperLogLog.MIN_PRECISION + " and " + HyperLogLog.MAX_PRECISION);
+                }
+                s = s.substring(0, sep).trim();
+            }
+            Dimension d = Dimension.parse(s);
+            return new Metric(Type.DISTINCT, d.getField(), d, precision);
+        }
+    }
+
+    private final List<Dimension> dimensions = new ArrayList<>();
+    private final List<Filter> filters = new ArrayList<>();
+    private final List<Metric> metrics = new ArrayList<>();
+    private String name = null;
+    private int top = 0;
+    private int topCapacity = 0;
+
+    /**
+     * @param args key=value pairs
+     */
+    static GroupSpec parse(String[] args) {
+        GroupSpec spec = new GroupSpec();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                throw new IllegalArgumentException("Expected key=value, not: " + arg);
+            }
+            String key = arg.substring(0, eq);
+            String value = arg.substring(eq + 1);
+            if (key.equals("group")) {
+                for (String d : split(value)) {
+                    spec.dimensions.add(Dimension.parse(d));
+                }
+            } else if (key.equals("filter")) {
+                for (String f : split(value)) {
+                    spec.filters.add(parseFilter(f));
+                }
+            } else if (key.equals("metric")) {
+                for (String m : split(value)) {
+                    spec.metrics.add(Metric.parse(m));
+                }
+            } else if (key.equals("name")) {
+                spec.name = value;
+            } else if (key.equals("top")) {
+                spec.parseTop(value);
+            } else {
+                throw new IllegalArgumentException("I regret I don't understand: " + arg);
+            }
+        }
+        if (spec.metrics.size() == 0) {
+            spec.metrics.add(Metric.parse("count"));
+        }
+        if (spec.top > 0 && (spec.metrics.size() != 1 ||
+                (spec.metrics.get(0).getType() != Metric.Type.COUNT &&
+                        spec.metrics.get(0).getType() != Metric.Type.SUM))) {
+            throw new IllegalArgumentException("With top, the only metric must be count or a sum");
+        }
+        if (spec.name == null) {
+            StringBuilder sb = new StringBuilder("group_by");
+            for (Dimension d : spec.dimensions) {
+                sb.append('_').append(d.getName());
+            }
+            spec.name = sb.toString();
+        }
+        return spec;
+    }
+
+    //k or k;counters
+    private void parseTop(String s) {
+        int sep = s.indexOf(';');
+        try {
+            top = Integer.parseInt((sep < 0 ? s : s.substring(0, sep)).trim());
+            topCapacity = (sep < 0) ? (int) Math.min(Integer.MAX_VALUE, (long) top * TOP_CAPACITY_FACTOR) :
+                    Integer.parseInt(s.substring(sep + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected top=k or top=k;counters, not top=" + s);
+        }
+        if (top < 1 || topCapacity < top) {
+            throw new IllegalArgumentException("top must be > 0 and there must be at least as many counters");
+        }
+    }
+
+    private static Filter parseFilter(String s) {
+        int colon = s.indexOf(':');
+        if (colon < 1) {
+            throw new IllegalArgumentException("Expected dimension:value or dimension!:value, not: " + s);
+        }
+        boolean negated = s.charAt(colon - 1) == '!';
+        Dimension d = Dimension.parse(s.substring(0, negated ? colon - 1 : colon));
+        return new Filter(d, negated, s.substring(colon + 1).split("\\|", -1));
+    }
+
+    private static List<String> split(String s) {
+        List<String> list = new ArrayList<>();
+        for (String part : s.split(",")) {
+            part = part.trim();
+            if (part.length() > 0) {
+                list.add(part);
+            }
+        }
+        return list;
+    }
+
+    List<Dimension> getDimensions() {
+        return Collections.unmodifiableList(dimensions);
+    }
+
+    List<Filter> getFilters() {
+        return Collections.unmodifiableList(filters);
+    }
+
+    List<Metric> getMetrics() {
+        return Collections.unmodifiableList(metrics);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of groups to keep or 0 to keep all of them
+     */
+    int getTop() {
+        return top;
+    }
+
+    /**
+     * @return the number of counters of the top-k sketch
+     */
+    int getTopCapacity() {
+        return topCapacity;
+    }
+
+    /**
+     * @return the fields that the dimensions, filters and metrics need
+     */
+    Set<CCIndexField> getFields() {
+        Set<CCIndexField> fields = EnumSet.noneOf(CCIndexField.class);
+        for (Dimension d : dimensions) {
+            fields.add(d.getField());
+        }
+        for (Filter f : filters) {
+            fields.add(f.getDimension().getField());
+        }
+        for (Metric m : metrics) {
+            if (m.getField() != null) {
+                fields.add(m.getField());
+            }
+        }
+        return Collections.unmodifiableSet(fields);
+    }
+
+    /**
+     * @return the raw row filters for the filters that have one
+     */
+    RowFilter getRowFilter() {
+        RowFilter[] rowFilters = new RowFilter[filters.size()];
+        for (int i = 0; i < filters.size(); i++) {
+            rowFilters[i] = filters.get(i).getRowFilter();
+        }
+        return RowFilters.and(rowFilters);
+    }
+}
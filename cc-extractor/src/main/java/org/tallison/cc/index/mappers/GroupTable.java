@@ -0,0 +1,391 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.utils.HyperLogLog;
+import org.tallison.utils.LongLongCounter;
+import org.tallison.utils.ObjectLongCounter;
+
+/**
+ * Groups and metrics for {@link GroupBy}.
+ * <p>
+ * Each dimension's values are mapped to ids, and a group's key is built
+ * up one dimension at a time: the ids of the first two dimensions are
+ * packed into a long and mapped to a dense id, which is packed with the
+ * id of the next dimension, and so on.  So a record of a group that's been
+ * seen costs a few primitive map lookups, and no key strings are built.
+ * The metrics are kept in arrays by group id.
+ * <p>
+ * The rows are written as the dimensions' values and then the metrics,
+ * tab delimited, sorted by all but the last dimension, then by the first
+ * metric, highest first, and then by the last dimension.  With one or two
+ * dimensions and a count, that's the same as the output of the
+ * {@link org.tallison.cc.index.reducers.SingleKeyReducer} and the
+ * {@link org.tallison.cc.index.reducers.DoubleKeyReducer}.
+ * <p>
+ * Distinct metrics keep a {@link HyperLogLog} per group.  Tables that write
+ * files for the {@link org.tallison.cc.index.reducers.GroupByReducer} write
+ * the serialized sketches so that the reducer can merge them; the others
+ * write the estimates.
+ * <p>
+ * The value ids are the table's own, in an unsynchronized map per
+ * dimension, and {@link #clear()} drops them with the groups, so a
+ * per-thread table of a high-cardinality dimension only holds the values
+ * that it's seen since it was last written.  This is not thread safe.
+ */
+class GroupTable implements SharedAggregation.Aggregate {
+
+    private final int numDimensions;
+    private final List<GroupSpec.Metric> metrics;
+    private final Dimension[] values;
+    //levels[k] maps (id of the first k dimensions, id of dimension k) to the id of the first k+1
+    private final LongLongCounter[] levels;
+    //last level: key -> group id
+    private final LongLongCounter groups = new LongLongCounter();
+    //value ids of each group, numDimensions per group
+    private int[] tuples;
+    //by metric, by group
+    private long[][] metricValues;
+    //by metric, by group; null for the metrics that aren't distinct
+    private HyperLogLog[][] sketches;
+    private final boolean writeSketches;
+    private int numGroups = 0;
+
+    /**
+     * @param writeSketches whether to write the sketches of the distinct
+     *                      metrics instead of their estimates
+     */
+    GroupTable(int numDimensions, List<GroupSpec.Metric> metrics, boolean writeSketches) {
+        this.numDimensions = numDimensions;
+        this.metrics = metrics;
+        this.writeSketches = writeSketches;
+        values = new Dimension[numDimensions];
+        levels = new LongLongCounter[numDimensions];
+        for (int i = 0; i < numDimensions; i++) {
+            values[i] = new Dimension();
+            levels[i] = new LongLongCounter();
+        }
+        allocate(64);
+    }
+
+    /**
+     * @param valueIds value ids from {@link #getValueId(int, String)}, one per dimension
+     * @return the group id
+     */
+    int getGroup(int[] valueIds) {
+        long key;
+        if (numDimensions == 0) {
+            key = 0;
+        } else if (numDimensions == 1) {
+            key = valueIds[0];
+        } else {
+            int prefix = valueIds[0];
+            for (int i = 1; i < numDimensions - 1; i++) {
+                long packed = LongLongCounter.pack(prefix, valueIds[i]);
+                long id = levels[i].get(packed, -1);
+                if (id < 0) {
+                    id = levels[i].size();
+                    levels[i].put(packed, id);
+                }
+                prefix = (int) id;
+            }
+            key = LongLongCounter.pack(prefix, valueIds[numDimensions - 1]);
+        }
+        long group = groups.get(key, -1);
+        if (group < 0) {
+            group = newGroup(valueIds);
+            groups.put(key, group);
+        }
+        return (int) group;
+    }
+
+    int getValueId(int dimension, String value) {
+        return values[dimension].getId(value);
+    }
+
+    /**
+     * Adds the record to the group's metrics
+     */
+    void update(int group, GroupBy g, CCIndexRecord r) {
+        for (int m = 0; m < metrics.size(); m++) {
+            GroupSpec.Metric metric = metrics.get(m);
+            if (metric.getType() == GroupSpec.Metric.Type.COUNT) {
+                metricValues[m][group]++;
+            } else if (metric.getType() == GroupSpec.Metric.Type.DISTINCT) {
+                String v = metric.getDimension().getValue(g, r);
+                if (v != null) {
+                    sketches[m][group].add(v);
+                }
+            } else {
+                long v = metric.getValue(r);
+                if (v != CCIndexRecord.MISSING) {
+                    combine(m, group, v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds v to a count or sum metric of the group, for mappers that
+     * compute their own values
+     */
+    void add(int group, int metric, long v) {
+        metricValues[metric][group] += v;
+    }
+
+    private void combine(int m, int group, long v) {
+        long[] a = metricValues[m];
+        switch (metrics.get(m).getType()) {
+            case COUNT:
+            case SUM:
+                a[group] += v;
+                break;
+            case MIN:
+                a[group] = Math.min(a[group], v);
+                break;
+            case MAX:
+                a[group] = Math.max(a[group], v);
+                break;
+            case DISTINCT:
+                throw new IllegalStateException("distinct metrics are merged as sketches");
+        }
+    }
+
+    private int newGroup(int[] valueIds) {
+        if (numGroups == metricValues[0].length) {
+            allocate(numGroups * 2);
+        }
+        int group = numGroups++;
+        System.arraycopy(valueIds, 0, tuples, group * numDimensions, numDimensions);
+        for (int m = 0; m < metrics.size(); m++) {
+            metricValues[m][group] = initialValue(metrics.get(m));
+            if (sketches[m] != null) {
+                sketches[m][group] = new HyperLogLog(metrics.get(m).getPrecision());
+            }
+        }
+        return group;
+    }
+
+    private static long initialValue(GroupSpec.Metric metric) {
+        switch (metric.getType()) {
+            case MIN:
+                return Long.MAX_VALUE;
+            case MAX:
+                return Long.MIN_VALUE;
+        }
+        return 0;
+    }
+
+    private void allocate(int capacity) {
+        tuples = (tuples == null) ? new int[capacity * numDimensions] :
+                Arrays.copyOf(tuples, capacity * numDimensions);
+        if (metricValues == null) {
+            metricValues = new long[Math.max(1, metrics.size())][];
+        }
+        if (sketches == null) {
+            sketches = new HyperLogLog[metrics.size()][];
+        }
+        for (int m = 0; m < metricValues.length; m++) {
+            metricValues[m] = (metricValues[m] == null) ? new long[capacity] :
+                    Arrays.copyOf(metricValues[m], capacity);
+        }
+        for (int m = 0; m < sketches.length; m++) {
+            if (metrics.get(m).getType() == GroupSpec.Metric.Type.DISTINCT) {
+                sketches[m] = (sketches[m] == null) ? new HyperLogLog[capacity] :
+                        Arrays.copyOf(sketches[m], capacity);
+            }
+        }
+    }
+
+    int size() {
+        return numGroups;
+    }
+
+    void clear() {
+        for (Dimension dimension : values) {
+            dimension.clear();
+        }
+        for (LongLongCounter level : levels) {
+            level.clear();
+        }
+        groups.clear();
+        tuples = null;
+        metricValues = null;
+        sketches = null;
+        numGroups = 0;
+        allocate(64);
+    }
+
+    /**
+     * Adds the groups and metrics from the other; the ids of the two are unrelated
+     */
+    void addAll(GroupTable other) {
+        int[] valueIds = new int[numDimensions];
+        for (int g = 0; g < other.numGroups; g++) {
+            for (int d = 0; d < numDimensions; d++) {
+                valueIds[d] = getValueId(d,
+                        other.values[d].getSymbol(other.tuples[g * numDimensions + d]));
+            }
+            int group = getGroup(valueIds);
+            for (int m = 0; m < metrics.size(); m++) {
+                if (sketches[m] != null) {
+                    sketches[m][group].merge(other.sketches[m][g]);
+                    continue;
+                }
+                long v = other.metricValues[m][g];
+                if (v != initialValue(metrics.get(m))) {
+                    combine(m, group, v);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a row written by {@link #write(Writer)}
+     *
+     * @throws IllegalArgumentException if the row doesn't match the spec
+     */
+    void addRow(String[] cols) {
+        if (cols.length != numDimensions + metrics.size()) {
+            throw new IllegalArgumentException("Expected " + numDimensions + " dimensions and " +
+                    metrics.size() + " metrics, but the row has " + cols.length + " columns");
+        }
+        int[] valueIds = new int[numDimensions];
+        for (int d = 0; d < numDimensions; d++) {
+            valueIds[d] = getValueId(d, cols[d]);
+        }
+        int group = getGroup(valueIds);
+        for (int m = 0; m < metrics.size(); m++) {
+            String col = cols[numDimensions + m];
+            if (sketches[m] != null) {
+                sketches[m][group].merge(HyperLogLog.deserialize(col));
+            } else if (!col.equals(GroupSpec.NULL)) {
+                try {
+                    combine(m, group, Long.parseLong(col));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Expected a number, not: " + col);
+                }
+            }
+        }
+    }
+
+    String getValue(int group, int dimension) {
+        return values[dimension].getSymbol(tuples[group * numDimensions + dimension]);
+    }
+
+    /**
+     * @return the value of the metric; the estimate for distinct metrics
+     */
+    long getMetric(int group, int metric) {
+        if (sketches[metric] != null) {
+            return sketches[metric][group].estimate();
+        }
+        return metricValues[metric][group];
+    }
+
+    //min and max of a group that never had a value are "NULL"
+    private String format(int m, int group) {
+        if (sketches[m] != null && writeSketches) {
+            return sketches[m][group].serialize();
+        }
+        long v = getMetric(group, m);
+        GroupSpec.Metric.Type type = metrics.get(m).getType();
+        if ((type == GroupSpec.Metric.Type.MIN || type == GroupSpec.Metric.Type.MAX) &&
+                v == initialValue(metrics.get(m))) {
+            return GroupSpec.NULL;
+        }
+        return Long.toString(v);
+    }
+
+    @Override
+    public void write(Writer writer) throws IOException {
+        Integer[] sorted = new Integer[numGroups];
+        for (int g = 0; g < numGroups; g++) {
+            sorted[g] = g;
+        }
+        Comparator<Integer> comparator = (a, b) -> 0;
+        for (int d = 0; d < numDimensions - 1; d++) {
+            final int dim = d;
+            comparator = comparator.thenComparing(g -> getValue(g, dim));
+        }
+        if (metrics.size() > 0) {
+            //estimating is too slow to do per comparison
+            long[] first = new long[numGroups];
+            for (int g = 0; g < numGroups; g++) {
+                first[g] = getMetric(g, 0);
+            }
+            comparator = comparator.thenComparing((a, b) -> Long.compare(first[b], first[a]));
+        }
+        if (numDimensions > 0) {
+            comparator = comparator.thenComparing(g -> getValue(g, numDimensions - 1));
+        }
+        Arrays.sort(sorted, comparator);
+        StringBuilder sb = new StringBuilder();
+        for (int g : sorted) {
+            sb.setLength(0);
+            for (int d = 0; d < numDimensions; d++) {
+                sb.append(AbstractRecordProcessor.clean(getValue(g, d))).append('\t');
+            }
+            for (int m = 0; m < metrics.size(); m++) {
+                if (m > 0) {
+                    sb.append('\t');
+                }
+                sb.append(format(m, g));
+            }
+            sb.append('\n');
+            writer.write(sb.toString());
+        }
+    }
+
+    //a dimension's values and their ids
+    private static class Dimension {
+        private final ObjectLongCounter<String> ids = new ObjectLongCounter<>();
+        private String[] symbols = new String[64];
+        private int size = 0;
+
+        int getId(String value) {
+            long id = ids.get(value, -1);
+            if (id < 0) {
+                if (size == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, size * 2);
+                }
+                symbols[size] = value;
+                id = size++;
+                ids.put(value, id);
+            }
+            return (int) id;
+        }
+
+        String getSymbol(int id) {
+            return symbols[id];
+        }
+
+        void clear() {
+            ids.clear();
+            symbols = new String[64];
+            size = 0;
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 import org.apache.tika.io.IOExceptionWithCause;
 import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.utils.SymbolTable;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -28,13 +29,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Locale;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static org.apache.commons.lang3.StringUtils.truncate;
 
@@ -139,62 +136,59 @@ public class PGIndexer extends AbstractRecordProcessor {
     }
 
     @Override
-    public void process(String json) throws IOException {
-        List<CCIndexRecord> records = CCIndexRecord.parseRecords(json);
-        for (CCIndexRecord r : records) {
-            String mime = CCIndexRecord.normalizeMime(r.getMime());
-            String mimeDetected = CCIndexRecord.normalizeMime(r.getMimeDetected());
-            CONSIDERED.incrementAndGet();
-            String url = r.getUrl();
-            String u = (url == null) ? "" : url.toLowerCase(Locale.US);
+    public void process(CCIndexRecord r) throws IOException {
+        String mime = CCIndexRecord.normalizeMime(r.getMime());
+        String mimeDetected = CCIndexRecord.normalizeMime(r.getMimeDetected());
+        CONSIDERED.incrementAndGet();
+        String url = r.getUrl();
+        String u = (url == null) ? "" : url.toLowerCase(Locale.US);
 
-            /*if (mimeDetected != null &&
-                    (mimeDetected.equals("text/html") || mimeDetected.equals("application/xhtml+xml"))) {
-                return;
-            }*/
-            //if (mime.contains("onenote") || mimeDetected.contains("onenote")) {
-                try {
-                    long total= ADDED.getAndIncrement();
-                    if (++added % 100000 == 0) {
-                        insert.executeBatch();
-                        connection.commit();
-                        long elapsed = System.currentTimeMillis()-STARTED;
-                        double elapsedSec = (double)elapsed/(double)1000;
-                        double per = (double)total/elapsedSec;
-                        System.out.println("considered: "+CONSIDERED.get());
-                        System.out.println("committing "+added+ " ("+
-                                        total+") in "+elapsed +
-                                " ms " + per + " recs/per second");
-                    }
-                    int i = 0;
-                    insert.setString(++i, truncate(r.getUrl(), MAX_URL_LENGTH));
-                    insert.setString(++i, r.getDigest());
-                    insert.setInt(++i, MIME_CACHE.getInt(mime));
-                    insert.setInt(++i, DETECTED_MIME_CACHE.getInt(mimeDetected));
-                    if (StringUtils.isEmpty(r.getCharset())) {
-                        insert.setString(++i, "");
-                    } else {
-                        insert.setString(++i, truncate(r.getCharset(), 64));
-                    }
-                    insert.setInt(++i, LANGUAGE_CACHE.getInt(getPrimaryLanguage(r.getLanguages())));
-                    insert.setInt(++i, r.getStatus());
-//                    insert.setInt(++i, r.getLength());
-                    insert.setInt(++i, TRUNCATED_CACHE.getInt(r.getTruncated()));
-                    insert.setInt(++i, WARC_FILENAME_CACHE.getInt(r.getFilename()));
-                    insert.setInt(++i, r.getOffset());
-                    insert.setInt(++i, r.getLength());
-                    insert.addBatch();
-                    LOGGER.debug(
-                            StringUtils.joinWith("\t",
-                                    r.getUrl(),
-                                    r.getDigest(),
-                                    mime, mimeDetected)
-                    );
-                } catch (SQLException e) {
-                    e.printStackTrace();
+        /*if (mimeDetected != null &&
+                (mimeDetected.equals("text/html") || mimeDetected.equals("application/xhtml+xml"))) {
+            return;
+        }*/
+        //if (mime.contains("onenote") || mimeDetected.contains("onenote")) {
+            try {
+                long total= ADDED.getAndIncrement();
+                if (++added % 100000 == 0) {
+                    insert.executeBatch();
+                    connection.commit();
+                    long elapsed = System.currentTimeMillis()-STARTED;
+                    double elapsedSec = (double)elapsed/(double)1000;
+                    double per = (double)total/elapsedSec;
+                    System.out.println("considered: "+CONSIDERED.get());
+                    System.out.println("committing "+added+ " ("+
+                                    total+") in "+elapsed +
+                            " ms " + per + " recs/per second");
+                }
+                int i = 0;
+                insert.setString(++i, truncate(r.getUrl(), MAX_URL_LENGTH));
+                insert.setString(++i, r.getDigest());
+                insert.setInt(++i, MIME_CACHE.getInt(mime));
+                insert.setInt(++i, DETECTED_MIME_CACHE.getInt(mimeDetected));
+                if (StringUtils.isEmpty(r.getCharset())) {
+                    insert.setString(++i, "");
+                } else {
+                    insert.setString(++i, truncate(r.getCharset(), 64));
                 }
+                insert.setInt(++i, LANGUAGE_CACHE.getInt(getPrimaryLanguage(r.getLanguages())));
+                insert.setInt(++i, r.getStatus());
+//                    insert.setInt(++i, r.getLength());
+                insert.setInt(++i, TRUNCATED_CACHE.getInt(r.getTruncated()));
+                insert.setInt(++i, WARC_FILENAME_CACHE.getInt(r.getFilename()));
+                insert.setLong(++i, r.getOffset());
+                insert.setLong(++i, r.getLength());
+                insert.addBatch();
+                LOGGER.debug(
+                        StringUtils.joinWith("\t",
+                                r.getUrl(),
+                                r.getDigest(),
+                                mime, mimeDetected)
+                );
+            } catch (SQLException e) {
+                e.printStackTrace();
             }
-        //}
+    //}
     }
 
     private String getPrimaryLanguage(String languages) {
@@ -227,10 +221,16 @@ public class PGIndexer extends AbstractRecordProcessor {
         }
     }
 
+    /**
+     * {@link SymbolTable} whose ids are written to a lookup table in the db.
+     * Lookups of known strings don't lock; new ids are inserted in order
+     * under this cache's lock.
+     */
     private static class StringCache {
 
-        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-        private final Map<String, Integer> map = new HashMap<>();
+        private final SymbolTable symbols;
+        //ids below this are in the db table
+        private volatile int inserted = 0;
 
         private PreparedStatement insert;
         private final String tableName;
@@ -239,7 +239,7 @@ public class PGIndexer extends AbstractRecordProcessor {
         StringCache(String tableName, int maxLength) {
             this.tableName = tableName;
             this.maxLength = maxLength;
-
+            this.symbols = new SymbolTable(tableName, Integer.MAX_VALUE - 10);
         }
         private void prepareStatement(Connection connection) throws SQLException {
             insert = connection.prepareStatement("insert into "+tableName+" (id, name) values (?,?)");
@@ -247,7 +247,6 @@ public class PGIndexer extends AbstractRecordProcessor {
 
 
         int getInt(String s) throws SQLException {
-            lock.readLock().lock();
             String key = s;
             if (key == null) {
                 key = "";
@@ -255,33 +254,24 @@ public class PGIndexer extends AbstractRecordProcessor {
             if (key.length() > maxLength) {
                 key = key.substring(0, maxLength);
             }
-            try {
-                if (map.containsKey(key)) {
-                    return map.get(key);
-                }
-            } finally {
-                lock.readLock().unlock();
+            int index = symbols.getId(key);
+            if (index == SymbolTable.NO_ID) {
+                throw new RuntimeException("TOO MANY IN CACHE!");
             }
-            try {
-                lock.writeLock().lock();
-                //need to recheck state
-                if (map.containsKey(key)) {
-                    return map.get(key);
-                } else {
-                    int index = map.size();
-                    if (index > Integer.MAX_VALUE - 10) {
-                        throw new RuntimeException("TOO MANY IN CACHE!");
-                    }
-                    map.put(key, index);
-                    insert.clearParameters();
-                    insert.setInt(1, index);
-                    insert.setString(2, key);
-                    insert.execute();
-                }
-            } finally {
-                lock.writeLock().unlock();
+            if (index >= inserted) {
+                insertThrough(index);
+            }
+            return index;
+        }
+
+        private synchronized void insertThrough(int index) throws SQLException {
+            while (inserted <= index) {
+                insert.clearParameters();
+                insert.setInt(1, inserted);
+                insert.setString(2, symbols.getSymbol(inserted));
+                insert.execute();
+                inserted++;
             }
-            return map.get(key);
         }
 
         public String getTableName() {
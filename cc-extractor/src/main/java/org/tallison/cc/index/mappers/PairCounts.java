@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.utils.LongLongCounter;
+import org.tallison.utils.SymbolTable;
+
+/**
+ * Counts of (first, second) pairs, e.g. (tld, mime).  The strings are mapped
+ * to ids, and the counts are kept in a {@link LongLongCounter} under the
+ * two ids packed into a long, so an increment of a pair that's been seen
+ * doesn't allocate.
+ * <p>
+ * The ids outlive {@link #clear()}, so callers can hold on to them.
+ * This is not thread safe.
+ * <p>
+ * As a {@link SharedAggregation.Aggregate}, this writes in the same order as
+ * the {@link org.tallison.cc.index.reducers.DoubleKeyReducer}.
+ */
+class PairCounts implements SharedAggregation.Aggregate {
+
+    private final SymbolTable firsts = new SymbolTable("first", Integer.MAX_VALUE);
+    private final SymbolTable seconds = new SymbolTable("second", Integer.MAX_VALUE);
+    private final LongLongCounter pairs = new LongLongCounter();
+    //by first id
+    private final LongLongCounter totals = new LongLongCounter();
+
+    void increment(String first, String second) {
+        increment(getFirstId(first), getSecondId(second));
+    }
+
+    void increment(int firstId, int secondId) {
+        pairs.increment(LongLongCounter.pack(firstId, secondId));
+        totals.increment(firstId);
+    }
+
+    int getFirstId(String first) {
+        return firsts.getId(first);
+    }
+
+    int getSecondId(String second) {
+        return seconds.getId(second);
+    }
+
+    long get(String first, String second) {
+        int f = firsts.lookup(first);
+        int s = seconds.lookup(second);
+        if (f == SymbolTable.NO_ID || s == SymbolTable.NO_ID) {
+            return 0;
+        }
+        return pairs.get(LongLongCounter.pack(f, s));
+    }
+
+    /**
+     * Adds the counts from the other; the ids of the two are unrelated
+     */
+    void addAll(PairCounts other) {
+        for (long k : other.pairs.keys()) {
+            int f = getFirstId(other.firsts.getSymbol(LongLongCounter.high(k)));
+            int s = getSecondId(other.seconds.getSymbol(LongLongCounter.low(k)));
+            long count = other.pairs.get(k);
+            pairs.add(LongLongCounter.pack(f, s), count);
+            totals.add(f, count);
+        }
+    }
+
+    int size() {
+        return pairs.size();
+    }
+
+    void clear() {
+        pairs.clear();
+        totals.clear();
+    }
+
+    /**
+     * Writes first\tsecond\tcount grouped by first.  The groups are sorted by their
+     * totals and the pairs within a group by their counts, highest first; ties
+     * are sorted by the strings.
+     */
+    void writeNested(Writer writer) throws IOException {
+        Long[] sorted = boxedKeys();
+        Arrays.sort(sorted, Comparator
+                .comparingLong((Long k) -> -totals.get(LongLongCounter.high(k)))
+                .thenComparing(k -> firsts.getSymbol(LongLongCounter.high(k)))
+                .thenComparingLong(k -> -pairs.get(k))
+                .thenComparing(k -> seconds.getSymbol(LongLongCounter.low(k))));
+        write(writer, sorted);
+    }
+
+    /**
+     * Writes first\tsecond\tcount sorted by count, highest first; ties are sorted
+     * by the strings.
+     */
+    void writeFlat(Writer writer) throws IOException {
+        Long[] sorted = boxedKeys();
+        Arrays.sort(sorted, Comparator
+                .comparingLong((Long k) -> -pairs.get(k))
+                .thenComparing(k -> firsts.getSymbol(LongLongCounter.high(k)))
+                .thenComparing(k -> seconds.getSymbol(LongLongCounter.low(k))));
+        write(writer, sorted);
+    }
+
+    /**
+     * Writes first\tsecond\tcount sorted by first and then by count, highest
+     * first, within each first, like the
+     * {@link org.tallison.cc.index.reducers.DoubleKeyReducer}
+     */
+    @Override
+    public void write(Writer writer) throws IOException {
+        Long[] sorted = boxedKeys();
+        Arrays.sort(sorted, Comparator
+                .comparing((Long k) -> firsts.getSymbol(LongLongCounter.high(k)))
+                .thenComparingLong(k -> -pairs.get(k))
+                .thenComparing(k -> seconds.getSymbol(LongLongCounter.low(k))));
+        write(writer, sorted);
+    }
+
+    private Long[] boxedKeys() {
+        long[] keys = pairs.keys();
+        Long[] boxed = new Long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            boxed[i] = keys[i];
+        }
+        return boxed;
+    }
+
+    private void write(Writer writer, Long[] sorted) throws IOException {
+        for (long k : sorted) {
+            writer.write(AbstractRecordProcessor.clean(firsts.getSymbol(LongLongCounter.high(k))) +
+                    "\t" + AbstractRecordProcessor.clean(seconds.getSymbol(LongLongCounter.low(k))) +
+                    "\t" + pairs.get(k) + "\n");
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.tallison.cc.index.CCIndexRecord;
+import org.tallison.cc.index.SharedAggregation;
+import org.tallison.utils.SpaceSaving;
+
+/**
+ * Top-k groups for {@link GroupBy} with top=k.  Unlike {@link GroupTable},
+ * this only holds the keys of the groups that it counts, so the memory
+ * doesn't grow with the number of distinct values, e.g. of garbage
+ * extensions or url paths.
+ * <p>
+ * The rows are the dimensions' values, the count (or sum) and the most
+ * that it can be over the true value, tab delimited, highest first.
+ * Tables that write files for the {@link org.tallison.cc.index.reducers.GroupByReducer}
+ * write all of their counters so that the reducer can merge them; the
+ * others write the top k.
+ * <p>
+ * This is not thread safe.
+ */
+class TopKTable implements SharedAggregation.Aggregate {
+
+    private final int numDimensions;
+    private final GroupSpec.Metric metric;
+    private final int top;
+    private final boolean writeAll;
+    //keys are the value for a single dimension, otherwise a GroupKey
+    private final SpaceSaving<Object> sketch;
+    //reused to look up groups with more than one dimension
+    private final GroupKey probe = new GroupKey(new String[0]);
+
+    TopKTable(int numDimensions, GroupSpec.Metric metric, int top, int capacity, boolean writeAll) {
+        this.numDimensions = numDimensions;
+        this.metric = metric;
+        this.top = top;
+        this.writeAll = writeAll;
+        this.sketch = new SpaceSaving<>(capacity);
+    }
+
+    /**
+     * @param values the dimensions' values; the table keeps a copy if it needs one
+     */
+    void update(String[] values, CCIndexRecord r) {
+        long weight = 1;
+        if (metric.getType() == GroupSpec.Metric.Type.SUM) {
+            weight = metric.getValue(r);
+            if (weight == CCIndexRecord.MISSING) {
+                return;
+            }
+        }
+        if (numDimensions == 1) {
+            sketch.offer(values[0], weight);
+        } else if (!sketch.addIfCounted(probe.set(values), weight)) {
+            //only copy the values when the sketch keeps the key
+            sketch.offer(new GroupKey(values.clone()), weight);
+        }
+    }
+
+    void addAll(TopKTable other) {
+        sketch.merge(other.sketch);
+    }
+
+    /**
+     * Adds the rows of one file written by {@link #write(Writer)}
+     *
+     * @throws IllegalArgumentException if the rows don't match the spec
+     */
+    void addRows(List<String[]> rows) {
+        SpaceSaving<Object> file = new SpaceSaving<>(sketch.getCapacity());
+        for (String[] cols : rows) {
+            if (cols.length != numDimensions + 2) {
+                throw new IllegalArgumentException("Expected " + numDimensions +
+                        " dimensions, a count and an error, but the row has " + cols.length + " columns");
+            }
+            Object key = (numDimensions == 1) ? cols[0] :
+                    new GroupKey(Arrays.copyOf(cols, numDimensions));
+            try {
+                file.putCounter(key, Long.parseLong(cols[numDimensions]),
+                        Long.parseLong(cols[numDimensions + 1]));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Expected numbers, not: " + Arrays.toString(cols));
+            } catch (IllegalStateException e) {
+                throw new IllegalArgumentException("More rows than top's counters or a repeated group: " +
+                        Arrays.toString(cols));
+            }
+        }
+        sketch.merge(file);
+    }
+
+    void clear() {
+        sketch.clear();
+    }
+
+    @Override
+    public void write(Writer writer) throws IOException {
+        List<SpaceSaving.Counter<Object>> counters =
+                new ArrayList<>(sketch.getTop(writeAll ? sketch.size() : top));
+        //ties in the order of the keys so that the output doesn't depend on the order of the records
+        counters.sort(Comparator.comparingLong((SpaceSaving.Counter<Object> c) -> -c.getCount())
+                .thenComparing(c -> values(c.getKey()).toString()));
+        StringBuilder sb = new StringBuilder();
+        for (SpaceSaving.Counter<Object> c : counters) {
+            sb.setLength(0);
+            for (String v : values(c.getKey())) {
+                sb.append(AbstractRecordProcessor.clean(v)).append('\t');
+            }
+            sb.append(c.getCount()).append('\t').append(c.getError()).append('\n');
+            writer.write(sb.toString());
+        }
+    }
+
+    private List<String> values(Object key) {
+        return (numDimensions == 1) ? Collections.singletonList((String) key) :
+                Arrays.asList(((GroupKey) key).values);
+    }
+
+    //the values of a group with more than one dimension
+    private static final class GroupKey {
+        private String[] values;
+        private int hash;
+
+        GroupKey(String[] values) {
+            set(values);
+        }
+
+        GroupKey set(String[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof GroupKey && Arrays.equals(values, ((GroupKey) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
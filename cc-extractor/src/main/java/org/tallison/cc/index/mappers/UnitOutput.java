@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.mappers;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Output file of a mapper thread.  The mapper writes to
+ * &lt;prefix&gt;_&lt;thread&gt;.txt.tmp.  On {@link #commit(String)}, the file is
+ * renamed to &lt;prefix&gt;_&lt;unit id&gt;.txt, and a new temp file is started;
+ * on {@link #close()}, it is renamed to &lt;prefix&gt;_&lt;thread&gt;.txt (or
+ * deleted if it is empty after a commit).
+ * <p>
+ * The reducers skip .tmp files, so output from a run that died is only
+ * picked up for the units it committed.
+ */
+class UnitOutput {
+
+    static final String TMP_SUFFIX = ".tmp";
+
+    private final Path dir;
+    private final String prefix;
+    private final int threadNumber;
+    private final Path tmp;
+    private Writer writer;
+    private int commits = 0;
+
+    UnitOutput(Path dir, String prefix, int threadNumber) throws IOException {
+        this.dir = dir;
+        this.prefix = prefix;
+        this.threadNumber = threadNumber;
+        Files.createDirectories(dir);
+        tmp = dir.resolve(prefix + "_" + threadNumber + ".txt" + TMP_SUFFIX);
+        writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+    }
+
+    Writer getWriter() {
+        return writer;
+    }
+
+    void commit(String unitId) throws IOException {
+        writer.flush();
+        writer.close();
+        Files.move(tmp, dir.resolve(prefix + "_" + unitId + ".txt"),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        commits++;
+        writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes and deletes the temp file without committing anything
+     */
+    void discard() throws IOException {
+        writer.close();
+        Files.deleteIfExists(tmp);
+    }
+
+    void close() throws IOException {
+        writer.flush();
+        writer.close();
+        if (commits > 0 && Files.size(tmp) == 0) {
+            Files.delete(tmp);
+        } else {
+            Files.move(tmp, dir.resolve(prefix + "_" + threadNumber + ".txt"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -32,6 +32,10 @@ public class ConcatReducer {
         Writer w = Files.newBufferedWriter(Paths.get(args[1]), StandardCharsets.UTF_8);
 
         for (File f :dir.toFile().listFiles()) {
+            if (f.getName().endsWith(".tmp")) {
+                //unfinished output from a mapper thread that died
+                continue;
+            }
             BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8);
             String line = r.readLine();
             while (line != null) {
@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index.reducers;
+
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.tallison.cc.index.mappers.GroupBy;
+
+/**
+ * Merges the files of the {@link GroupBy} mapper threads:
+ * <pre>
+ * GroupByReducer &lt;input_dir&gt; &lt;output_file&gt; group=... metric=...
+ * </pre>
+ * The spec must have the same groups and metrics as the mapper's.  Counts
+ * and sums are added, mins and maxes are combined and the sketches of
+ * distinct metrics are merged and written as estimates.
+ */
+public class GroupByReducer {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("GroupByReducer <input_dir> <output_file> group=<dimension>,... " +
+                    "[metric=<metric>,...]");
+            return;
+        }
+        GroupBy.reduce(Paths.get(args[0]), Paths.get(args[1]),
+                Arrays.copyOfRange(args, 2, args.length));
+    }
+}
@@ -39,6 +39,10 @@ public class SingleKeyReducer {
         Map<String, Integer> m = new HashMap<>();
 
         for (File f :dir.toFile().listFiles()) {
+            if (f.getName().endsWith(".tmp")) {
+                //unfinished output from a mapper thread that died
+                continue;
+            }
             BufferedReader r = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8);
             String line = r.readLine();
             while (line != null) {
@@ -18,14 +18,9 @@ package org.tallison.cc.warc;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
-import java.net.URL;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import org.apache.commons.codec.binary.Base32;
 import org.apache.commons.codec.digest.DigestUtils;
@@ -42,15 +37,14 @@ import org.archive.io.ArchiveReader;
 import org.archive.io.ArchiveRecord;
 import org.archive.io.ArchiveRecordHeader;
 import org.archive.io.warc.WARCReaderFactory;
+import org.tallison.utils.URLScanner;
 
 public abstract class AbstractExtractor {
 
     public final static String UNKNOWN_EXTENSION = ".unk";
 
-    private final static Pattern URL_EXTENSION_PATTERN =
-            Pattern.compile("(?i)\\.([a-z0-9]{1,8})(?:\\Z|[ \\?])");
-
     private final Base32 base32 = new Base32();
+    private final URLScanner urlScanner = new URLScanner();
     final Detector detector;
     private final TikaConfig tikaConfig;
     final ExtractorStats extractorStats;
@@ -164,30 +158,9 @@ public abstract class AbstractExtractor {
         return httpMediaType;
     }
 
-    static String getExtension(final String fullUrl) {
-
-        String urlString = fullUrl;
-        //try to get the file
-        URL url = null;
-        try {
-            url = new URL(fullUrl);
-        } catch (MalformedURLException e) {
-        }
-        if (url != null) {
-            urlString = url.getFile();
-        }
-
-        //stop looking after the first ?
-        int q = urlString.indexOf("?");
-        if (q > -1) {
-            urlString = urlString.substring(0, q);
-        }
-
-        Matcher m = URL_EXTENSION_PATTERN.matcher(urlString);
-        String ext = "";
-        while (m.find()) {
-            ext = m.group(1).toLowerCase(Locale.ENGLISH);
-        }
+    String getExtension(final String fullUrl) {
+        urlScanner.scan(fullUrl);
+        String ext = urlScanner.getExtension();
         if ("htm".equals(ext)) {
             return ".html";
         }
@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bloom filter for sets that don't fit in the heap, e.g. the digests of
+ * a whole crawl.  The bits are off-heap, in direct buffers or in a
+ * memory-mapped file, so the filter can be bigger than the heap (and,
+ * if it's mapped, than the memory).
+ * <p>
+ * The filter is blocked: all of a key's bits are in one 64 byte block,
+ * so a lookup touches one cache line (or page).  That makes the false
+ * positive rate a bit higher than that of a standard filter with the same
+ * number of bits, so the filter is sized with some slack.
+ * <p>
+ * {@link #put(CharSequence)} is thread safe: the blocks are guarded by
+ * striped locks, so two threads can't both see the same new key as new.
+ */
+public class BloomFilter implements Closeable {
+
+    private static final int BLOCK_BITS = 512;
+    private static final int LONGS_PER_BLOCK = BLOCK_BITS / 64;
+    private static final int BLOCK_BYTES = BLOCK_BITS / 8;
+    //blocks per buffer; a buffer can't be bigger than 2GB
+    private static final int BLOCKS_PER_SEGMENT = 1 << 24;
+    private static final int MAX_HASHES = 16;
+    //more bits than a standard filter would need to make up for the blocking
+    private static final double BLOCK_SLACK = 1.2;
+    private static final int NUM_LOCKS = 1024;
+
+    private final long numBlocks;
+    private final int numHashes;
+    private final LongBuffer[] segments;
+    private final MappedByteBuffer[] mapped;
+    private final Object[] locks = new Object[NUM_LOCKS];
+
+    /**
+     * Filter in direct buffers
+     *
+     * @param expectedInsertions number of distinct keys that the filter is sized for
+     * @param fpp false positive rate at that number of keys, e.g. 0.01
+     */
+    public BloomFilter(long expectedInsertions, double fpp) {
+        this(expectedInsertions, fpp, null);
+    }
+
+    /**
+     * @param file if not null, the filter is mapped to this file, which
+     *             must not exist yet
+     * @throws IllegalArgumentException if the file exists
+     */
+    public BloomFilter(long expectedInsertions, double fpp, Path file) {
+        if (expectedInsertions < 1 || fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("expected insertions must be > 0 and 0 < fpp < 1");
+        }
+        double bitsPerKey = -Math.log(fpp) / (Math.log(2) * Math.log(2));
+        numHashes = (int) Math.max(1, Math.min(MAX_HASHES, Math.round(bitsPerKey * Math.log(2))));
+        long bits = (long) Math.ceil(expectedInsertions * bitsPerKey * BLOCK_SLACK);
+        numBlocks = Math.max(1, (bits + BLOCK_BITS - 1) / BLOCK_BITS);
+        if (numBlocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("That's too big a filter: " + bits + " bits");
+        }
+        int numSegments = (int) ((numBlocks + BLOCKS_PER_SEGMENT - 1) / BLOCKS_PER_SEGMENT);
+        segments = new LongBuffer[numSegments];
+        mapped = (file == null) ? null : new MappedByteBuffer[numSegments];
+        try {
+            allocate(file);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't map the filter to " + file, e);
+        }
+        for (int i = 0; i < NUM_LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    private void allocate(Path file) throws IOException {
+        if (file == null) {
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = ByteBuffer.allocateDirect(getSegmentBytes(i))
+                        .order(ByteOrder.nativeOrder()).asLongBuffer();
+            }
+            return;
+        }
+        if (Files.exists(file)) {
+            throw new IllegalArgumentException("The filter's file already exists: " + file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (int i = 0; i < segments.length; i++) {
+                int size = getSegmentBytes(i);
+                //the mapping stays valid after the channel is closed
+                mapped[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+                segments[i] = mapped[i].order(ByteOrder.nativeOrder()).asLongBuffer();
+                position += size;
+            }
+        }
+    }
+
+    private int getSegmentBytes(int segment) {
+        long blocks = Math.min(BLOCKS_PER_SEGMENT, numBlocks - (long) segment * BLOCKS_PER_SEGMENT);
+        return (int) blocks * BLOCK_BYTES;
+    }
+
+    /**
+     * Adds the key
+     *
+     * @return true if the key was new, false if it may have been added before
+     */
+    public boolean put(CharSequence key) {
+        long h = Hash64.of(key);
+        int block = getBlock(h);
+        LongBuffer segment = segments[block / BLOCKS_PER_SEGMENT];
+        int base = (block % BLOCKS_PER_SEGMENT) * LONGS_PER_BLOCK;
+        boolean added = false;
+        synchronized (locks[block & (NUM_LOCKS - 1)]) {
+            int g = (int) h;
+            int step = (int) Hash64.mix(h) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                int bit = (g + i * step) & (BLOCK_BITS - 1);
+                int index = base + (bit >>> 6);
+                long word = segment.get(index);
+                long mask = 1L << bit;
+                if ((word & mask) == 0) {
+                    segment.put(index, word | mask);
+                    added = true;
+                }
+            }
+        }
+        return added;
+    }
+
+    /**
+     * @return false if the key was definitely not added; this doesn't lock,
+     * so it may miss a key that's being added at the same time
+     */
+    public boolean mightContain(CharSequence key) {
+        long h = Hash64.of(key);
+        int block = getBlock(h);
+        LongBuffer segment = segments[block / BLOCKS_PER_SEGMENT];
+        int base = (block % BLOCKS_PER_SEGMENT) * LONGS_PER_BLOCK;
+        int g = (int) h;
+        int step = (int) Hash64.mix(h) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = (g + i * step) & (BLOCK_BITS - 1);
+            if ((segment.get(base + (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    //the high 32 bits scaled to the number of blocks
+    private int getBlock(long h) {
+        return (int) (((h >>> 32) * numBlocks) >>> 32);
+    }
+
+    /**
+     * @return the size of the filter in bytes
+     */
+    public long getSizeInBytes() {
+        return numBlocks * BLOCK_BYTES;
+    }
+
+    public int getNumHashes() {
+        return numHashes;
+    }
+
+    /**
+     * Flushes a mapped filter to its file
+     */
+    @Override
+    public void close() throws IOException {
+        if (mapped != null) {
+            for (MappedByteBuffer buffer : mapped) {
+                buffer.force();
+            }
+        }
+    }
+}
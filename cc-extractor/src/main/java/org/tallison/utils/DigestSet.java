@@ -0,0 +1,368 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable set of the base32 sha1 digests that common crawl uses,
+ * e.g. from a list of tens of millions of digests, that any number of
+ * threads can share.
+ * <p>
+ * The digests are decoded to their 20 bytes and kept sorted off-heap, so
+ * the set takes about 20 bytes a digest and nothing on the heap per digest.
+ * A lookup goes through an index of the first 16 bits and then a binary
+ * search, and {@link #contains(byte[], int, int)} works on the ascii
+ * bytes of a raw cdx row without building a String.
+ * <p>
+ * Lines that aren't base32 sha1s (with or without "sha1:") are kept as
+ * strings in a plain set.
+ */
+public class DigestSet {
+
+    public static final int DIGEST_BYTES = 20;
+    public static final int BASE32_LENGTH = 32;
+    private static final String SHA1_PREFIX = "sha1:";
+    private static final int PREFIX_BITS = 16;
+    //digests per buffer; a buffer can't be bigger than 2GB
+    private static final int DIGESTS_PER_SEGMENT = 1 << 26;
+    private static final byte[] BASE32_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE32_VALUES, (byte) -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE32_VALUES[alphabet.charAt(i)] = (byte) i;
+            BASE32_VALUES[Character.toLowerCase(alphabet.charAt(i))] = (byte) i;
+        }
+    }
+
+    private final ByteBuffer[] segments;
+    //only changes while the set is built
+    private int size;
+    //prefixStarts[p] is the index of the first digest whose first 16 bits are >= p
+    private final int[] prefixStarts = new int[(1 << PREFIX_BITS) + 1];
+    private final Set<String> others;
+
+    private DigestSet(ByteBuffer[] segments, int size, Set<String> others) {
+        this.segments = segments;
+        this.size = size;
+        this.others = others;
+    }
+
+    /**
+     * Loads a file with a digest per line; blank lines are skipped
+     */
+    public static DigestSet load(Path file) throws IOException {
+        long lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            while (reader.readLine() != null) {
+                lines++;
+            }
+        }
+        if (lines > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many digests: " + lines);
+        }
+        ByteBuffer[] segments = allocate((int) lines);
+        Set<String> others = new HashSet<>();
+        byte[] digest = new byte[DIGEST_BYTES];
+        int n = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            //the file could have grown since it was counted
+            while (line != null && n < lines) {
+                line = line.trim();
+                if (decode(line, digest)) {
+                    put(segments, n++, digest);
+                } else if (line.length() > 0) {
+                    others.add(line);
+                }
+                line = reader.readLine();
+            }
+        }
+        DigestSet set = new DigestSet(segments, n, others);
+        set.sortAndIndex();
+        return set;
+    }
+
+    public boolean contains(String digest) {
+        if (digest == null) {
+            return false;
+        }
+        byte[] decoded = new byte[DIGEST_BYTES];
+        if (decode(digest, decoded)) {
+            return find(decoded);
+        }
+        return others.contains(digest);
+    }
+
+    /**
+     * @param bytes ascii bytes of a base32 digest, e.g. in a raw cdx row
+     * @return whether the digest is in the set
+     */
+    public boolean contains(byte[] bytes, int offset, int length) {
+        if (length == BASE32_LENGTH + SHA1_PREFIX.length() && startsWithSha1(bytes, offset)) {
+            offset += SHA1_PREFIX.length();
+            length -= SHA1_PREFIX.length();
+        }
+        byte[] decoded = new byte[DIGEST_BYTES];
+        if (length == BASE32_LENGTH && decode(bytes, offset, decoded)) {
+            return find(decoded);
+        }
+        return others.size() > 0 &&
+                others.contains(new String(bytes, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return the number of distinct digests
+     */
+    public int size() {
+        return size + others.size();
+    }
+
+    private boolean find(byte[] digest) {
+        int prefix = ((digest[0] & 0xff) << 8) | (digest[1] & 0xff);
+        int lo = prefixStarts[prefix];
+        int hi = prefixStarts[prefix + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = compare(mid, digest);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean decode(String s, byte[] digest) {
+        if (s.length() == BASE32_LENGTH + SHA1_PREFIX.length() && s.startsWith(SHA1_PREFIX)) {
+            s = s.substring(SHA1_PREFIX.length());
+        }
+        if (s.length() != BASE32_LENGTH) {
+            return false;
+        }
+        long bits = 0;
+        int numBits = 0;
+        int j = 0;
+        for (int i = 0; i < BASE32_LENGTH; i++) {
+            char c = s.charAt(i);
+            int v = (c < 128) ? BASE32_VALUES[c] : -1;
+            if (v < 0) {
+                return false;
+            }
+            bits = (bits << 5) | v;
+            numBits += 5;
+            if (numBits >= 8) {
+                numBits -= 8;
+                digest[j++] = (byte) (bits >>> numBits);
+            }
+        }
+        return true;
+    }
+
+    private static boolean decode(byte[] bytes, int offset, byte[] digest) {
+        long bits = 0;
+        int numBits = 0;
+        int j = 0;
+        for (int i = offset; i < offset + BASE32_LENGTH; i++) {
+            int v = (bytes[i] >= 0) ? BASE32_VALUES[bytes[i]] : -1;
+            if (v < 0) {
+                return false;
+            }
+            bits = (bits << 5) | v;
+            numBits += 5;
+            if (numBits >= 8) {
+                numBits -= 8;
+                digest[j++] = (byte) (bits >>> numBits);
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWithSha1(byte[] bytes, int offset) {
+        for (int i = 0; i < SHA1_PREFIX.length(); i++) {
+            if (bytes[offset + i] != SHA1_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer[] allocate(int n) {
+        int numSegments = Math.max(1, (int) (((long) n + DIGESTS_PER_SEGMENT - 1) / DIGESTS_PER_SEGMENT));
+        ByteBuffer[] segments = new ByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            int digests = Math.min(DIGESTS_PER_SEGMENT, n - i * DIGESTS_PER_SEGMENT);
+            segments[i] = ByteBuffer.allocateDirect(Math.max(0, digests) * DIGEST_BYTES);
+        }
+        return segments;
+    }
+
+    private static void put(ByteBuffer[] segments, int i, byte[] digest) {
+        ByteBuffer b = segments[i / DIGESTS_PER_SEGMENT];
+        int p = (i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES;
+        for (int k = 0; k < DIGEST_BYTES; k++) {
+            b.put(p + k, digest[k]);
+        }
+    }
+
+    /*
+     * The sort works on the digests in place as two unsigned longs and an
+     * unsigned int, big endian, which compare like the bytes
+     */
+
+    private long high(int i) {
+        return segments[i / DIGESTS_PER_SEGMENT].getLong((i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES);
+    }
+
+    private long middle(int i) {
+        return segments[i / DIGESTS_PER_SEGMENT].getLong((i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES + 8);
+    }
+
+    private int low(int i) {
+        return segments[i / DIGESTS_PER_SEGMENT].getInt((i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES + 16);
+    }
+
+    private void set(int i, long high, long middle, int low) {
+        ByteBuffer b = segments[i / DIGESTS_PER_SEGMENT];
+        int p = (i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES;
+        b.putLong(p, high);
+        b.putLong(p + 8, middle);
+        b.putInt(p + 16, low);
+    }
+
+    private int compare(int i, int j) {
+        int c = Long.compareUnsigned(high(i), high(j));
+        if (c == 0) {
+            c = Long.compareUnsigned(middle(i), middle(j));
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(low(i), low(j));
+        }
+        return c;
+    }
+
+    private int compare(int i, byte[] digest) {
+        ByteBuffer b = segments[i / DIGESTS_PER_SEGMENT];
+        int p = (i % DIGESTS_PER_SEGMENT) * DIGEST_BYTES;
+        for (int k = 0; k < DIGEST_BYTES; k++) {
+            int c = (b.get(p + k) & 0xff) - (digest[k] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private void swap(int i, int j) {
+        long h = high(i);
+        long m = middle(i);
+        int l = low(i);
+        set(i, high(j), middle(j), low(j));
+        set(j, h, m, l);
+    }
+
+    private void sortAndIndex() {
+        sort(0, size - 1);
+        //drop the duplicates
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || compare(i, n - 1) != 0) {
+                if (i != n) {
+                    set(n, high(i), middle(i), low(i));
+                }
+                n++;
+            }
+        }
+        size = n;
+        int i = 0;
+        for (int prefix = 0; prefix <= (1 << PREFIX_BITS); prefix++) {
+            while (i < n && (int) (high(i) >>> (64 - PREFIX_BITS)) < prefix) {
+                i++;
+            }
+            prefixStarts[prefix] = i;
+        }
+    }
+
+    private void sort(int lo, int hi) {
+        while (hi - lo > 16) {
+            int mid = (lo + hi) >>> 1;
+            //median of three in lo, mid, hi
+            if (compare(mid, lo) < 0) {
+                swap(mid, lo);
+            }
+            if (compare(hi, lo) < 0) {
+                swap(hi, lo);
+            }
+            if (compare(hi, mid) < 0) {
+                swap(hi, mid);
+            }
+            long ph = high(mid);
+            long pm = middle(mid);
+            int pl = low(mid);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (compareTo(i, ph, pm, pl) < 0) {
+                    i++;
+                }
+                while (compareTo(j, ph, pm, pl) > 0) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            //recurse into the smaller side
+            if (j - lo < hi - i) {
+                sort(lo, j);
+                lo = i;
+            } else {
+                sort(i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            for (int j = i; j > lo && compare(j, j - 1) < 0; j--) {
+                swap(j, j - 1);
+            }
+        }
+    }
+
+    private int compareTo(int i, long h, long m, int l) {
+        int c = Long.compareUnsigned(high(i), h);
+        if (c == 0) {
+            c = Long.compareUnsigned(middle(i), m);
+        }
+        if (c == 0) {
+            c = Integer.compareUnsigned(low(i), l);
+        }
+        return c;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+/**
+ * Fast 64 bit hashes for sketches and filters; not cryptographic.
+ */
+public class Hash64 {
+
+    private Hash64() {
+    }
+
+    /**
+     * @return FNV-1a of the chars, then {@link #mix(long)}
+     */
+    public static long of(CharSequence s) {
+        return mix(fnv(0xcbf29ce484222325L, s));
+    }
+
+    /**
+     * @return the hash of a and b, as if they were joined with a '\0'
+     */
+    public static long of(CharSequence a, CharSequence b) {
+        long h = fnv(0xcbf29ce484222325L, a);
+        h *= 0x100000001b3L;
+        return mix(fnv(h, b));
+    }
+
+    /**
+     * @return h mapped to a double in [0, 1)
+     */
+    public static double toUnit(long h) {
+        return (h >>> 11) * 0x1.0p-53;
+    }
+
+    private static long fnv(long h, CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * @return murmur3's 64 bit finalizer of h
+     */
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+/**
+ * Open-addressing map from primitive long keys to primitive long counts.
+ * Composite keys can be packed into the long with {@link #pack(int, int)}.
+ * <p>
+ * This is not thread safe.
+ */
+public class LongLongCounter {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys;
+    private long[] counts;
+    private boolean[] used;
+    private int mask;
+    private int size = 0;
+
+    public LongLongCounter() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return <code>high</code> in the upper 32 bits and <code>low</code>
+     * in the lower 32 bits
+     */
+    public static long pack(int high, int low) {
+        return ((long) high << 32) | (low & 0xffffffffL);
+    }
+
+    public static int high(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    public static int low(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * @return the new count
+     */
+    public long increment(long key) {
+        return add(key, 1);
+    }
+
+    /**
+     * @return the new count
+     */
+    public long add(long key, long delta) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            insert(slot, key, delta);
+            return delta;
+        }
+        counts[slot] += delta;
+        return counts[slot];
+    }
+
+    /**
+     * Sets the value for the key; this lets the counter double as a
+     * primitive long to long map
+     */
+    public void put(long key, long value) {
+        int slot = slot(key);
+        if (!used[slot]) {
+            insert(slot, key, value);
+        } else {
+            counts[slot] = value;
+        }
+    }
+
+    /**
+     * @return the count or 0 if the key isn't in the map
+     */
+    public long get(long key) {
+        return get(key, 0);
+    }
+
+    /**
+     * @return the count or <code>missing</code> if the key isn't in the map
+     */
+    public long get(long key, long missing) {
+        int slot = slot(key);
+        return used[slot] ? counts[slot] : missing;
+    }
+
+    public boolean containsKey(long key) {
+        return used[slot(key)];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * @return the keys in no particular order
+     */
+    public long[] keys() {
+        long[] ret = new long[size];
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                ret[j++] = keys[i];
+            }
+        }
+        return ret;
+    }
+
+    private void insert(int slot, long key, long value) {
+        keys[slot] = key;
+        counts[slot] = value;
+        used[slot] = true;
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private int slot(long key) {
+        int slot = hash(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int hash(long key) {
+        //murmur3 finalizer
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        counts = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldCounts = counts;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+                used[slot] = true;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LongLongCounter{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
@@ -16,10 +16,10 @@
  */
 package org.tallison.utils;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 
@@ -37,7 +37,7 @@ public class MapUtil
     sortByValueAsc( Map<K, V> map )
     {
         List<Map.Entry<K, V>> list =
-                new LinkedList<Map.Entry<K, V>>( map.entrySet() );
+                new ArrayList<Map.Entry<K, V>>( map.entrySet() );
         Collections.sort( list, new Comparator<Map.Entry<K, V>>()
         {
             public int compare( Map.Entry<K, V> o1, Map.Entry<K, V> o2 )
@@ -58,7 +58,7 @@ public class MapUtil
     sortByValueDesc( Map<K, V> map )
     {
         List<Map.Entry<K, V>> list =
-                new LinkedList<Map.Entry<K, V>>( map.entrySet() );
+                new ArrayList<Map.Entry<K, V>>( map.entrySet() );
         Collections.sort( list, new Comparator<Map.Entry<K, V>>()
         {
             public int compare( Map.Entry<K, V> o1, Map.Entry<K, V> o2 )
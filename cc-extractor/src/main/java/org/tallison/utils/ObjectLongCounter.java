@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Open-addressing map from keys to primitive long counts.  Incrementing
+ * a key that's already in the map doesn't allocate, and there's no
+ * entry object or boxed count per key.
+ * <p>
+ * Keys may not be null.  This is not thread safe.
+ */
+public class ObjectLongCounter<K> {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private Object[] keys;
+    private long[] counts;
+    private int mask;
+    private int size = 0;
+
+    public ObjectLongCounter() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return the new count
+     */
+    public long increment(K key) {
+        return add(key, 1);
+    }
+
+    /**
+     * @return the new count
+     */
+    public long add(K key, long delta) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            counts[slot] = delta;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return delta;
+        }
+        counts[slot] += delta;
+        return counts[slot];
+    }
+
+    /**
+     * Sets the value for the key; this lets the counter double as a
+     * primitive object to long map
+     */
+    public void put(K key, long value) {
+        int slot = slot(key);
+        if (keys[slot] == null) {
+            keys[slot] = key;
+            counts[slot] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+        } else {
+            counts[slot] = value;
+        }
+    }
+
+    /**
+     * @return the count or 0 if the key isn't in the map
+     */
+    public long get(K key) {
+        return get(key, 0);
+    }
+
+    /**
+     * @return the count or <code>missing</code> if the key isn't in the map
+     */
+    public long get(K key, long missing) {
+        int slot = slot(key);
+        return (keys[slot] == null) ? missing : counts[slot];
+    }
+
+    public boolean containsKey(K key) {
+        return keys[slot(key)] != null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        allocate(INITIAL_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * @return the keys in no particular order
+     */
+    @SuppressWarnings("unchecked")
+    public List<K> keys() {
+        List<K> list = new ArrayList<>(size);
+        for (Object k : keys) {
+            if (k != null) {
+                list.add((K) k);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @param tieBreak order of keys with the same count
+     * @return the keys sorted by count, highest first
+     */
+    public List<K> keysByCountDesc(Comparator<? super K> tieBreak) {
+        List<K> list = keys();
+        list.sort((a, b) -> {
+            int c = Long.compare(get(b), get(a));
+            return (c != 0) ? c : tieBreak.compare(a, b);
+        });
+        return list;
+    }
+
+    private int slot(Object key) {
+        int h = key.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (keys[slot] != null && !keys[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        counts = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    private void grow() {
+        Object[] oldKeys = keys;
+        long[] oldCounts = counts;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = slot(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectLongCounter{size=" + size + ", capacity=" + keys.length + "}";
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Finds the registered domain (eTLD+1) of a host with the rules from
+ * the <a href="https://publicsuffix.org/">Public Suffix List</a>.  The
+ * list is bundled as public_suffix_list.dat next to this class (MPL 2.0);
+ * update it by copying in a new one.
+ * <p>
+ * Lookups are case insensitive and work on a range of a string, so
+ * they don't allocate anything but the result.  Unicode rules are also
+ * added in their punycode (xn--) form.  This is immutable and thread safe.
+ */
+public class PublicSuffixList {
+
+    private static final String RESOURCE = "public_suffix_list.dat";
+
+    private static final byte RULE = 1;
+    //"*.ck": every label under ck is a public suffix
+    private static final byte WILDCARD = 2;
+    //"!www.ck": ...except for this one
+    private static final byte EXCEPTION = 4;
+
+    private final String[] keys;
+    private final byte[] flags;
+    private final int mask;
+
+    private static class DefaultHolder {
+        private static final PublicSuffixList DEFAULT = loadDefault();
+    }
+
+    /**
+     * @return the list bundled with this class; it is loaded on first use
+     */
+    public static PublicSuffixList getDefault() {
+        return DefaultHolder.DEFAULT;
+    }
+
+    private static PublicSuffixList loadDefault() {
+        try (InputStream is = PublicSuffixList.class.getResourceAsStream(RESOURCE)) {
+            if (is == null) {
+                throw new IllegalStateException("couldn't find " + RESOURCE + " on the classpath");
+            }
+            return load(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a list in the public_suffix_list.dat format.  This does not close the stream.
+     */
+    public static PublicSuffixList load(InputStream is) throws IOException {
+        Map<String, Byte> rules = new LinkedHashMap<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        String line = reader.readLine();
+        while (line != null) {
+            line = line.trim();
+            if (line.length() > 0 && !line.startsWith("//")) {
+                //the rule is everything up to the first whitespace
+                String rule = line.split("\\s", 2)[0];
+                byte flag = RULE;
+                if (rule.startsWith("!")) {
+                    flag = EXCEPTION;
+                    rule = rule.substring(1);
+                } else if (rule.startsWith("*.")) {
+                    flag = WILDCARD;
+                    rule = rule.substring(2);
+                }
+                add(rules, rule, flag);
+            }
+            line = reader.readLine();
+        }
+        return new PublicSuffixList(rules);
+    }
+
+    private static void add(Map<String, Byte> rules, String rule, byte flag) {
+        addKey(rules, rule, flag);
+        for (int i = 0; i < rule.length(); i++) {
+            if (rule.charAt(i) > 127) {
+                try {
+                    addKey(rules, IDN.toASCII(rule, IDN.ALLOW_UNASSIGNED), flag);
+                } catch (IllegalArgumentException e) {
+                    //leave it as unicode only
+                }
+                return;
+            }
+        }
+    }
+
+    private static void addKey(Map<String, Byte> rules, String key, byte flag) {
+        key = key.toLowerCase(Locale.ROOT);
+        Byte old = rules.get(key);
+        rules.put(key, (byte) (flag | (old == null ? 0 : old)));
+    }
+
+    private PublicSuffixList(Map<String, Byte> rules) {
+        int capacity = Integer.highestOneBit(Math.max(16, rules.size() * 2)) * 2;
+        keys = new String[capacity];
+        flags = new byte[capacity];
+        mask = capacity - 1;
+        for (Map.Entry<String, Byte> e : rules.entrySet()) {
+            String key = e.getKey();
+            int slot = hash(key, 0, key.length()) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            flags[slot] = e.getValue();
+        }
+    }
+
+    /**
+     * @param host e.g. www.example.co.uk
+     * @return the registered domain, e.g. example.co.uk, in lower case, or null
+     * if the host is itself a public suffix
+     */
+    public String getRegisteredDomain(String host) {
+        return getRegisteredDomain(host, 0, host.length());
+    }
+
+    /**
+     * Same as {@link #getRegisteredDomain(String)} for the host in [start, end) of s
+     */
+    public String getRegisteredDomain(String s, int start, int end) {
+        int i = getRegisteredDomainStart(s, start, end);
+        return (i < 0) ? null : s.substring(i, end).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return the offset in <code>s</code> where the registered domain of the host
+     * in [start, end) starts, or -1 if the host is itself a public suffix
+     */
+    public int getRegisteredDomainStart(String s, int start, int end) {
+        //the label before the candidate suffix
+        int previous = -1;
+        int candidate = start;
+        //longest suffix first, so the first match is the prevailing rule
+        while (candidate < end) {
+            int dot = s.indexOf('.', candidate);
+            int parent = (dot < 0 || dot >= end) ? -1 : dot + 1;
+            byte f = get(s, candidate, end);
+            if ((f & EXCEPTION) != 0) {
+                //the candidate is not a public suffix, but its parent is
+                return candidate;
+            }
+            if ((f & RULE) != 0 || parent < 0 ||
+                    (get(s, parent, end) & WILDCARD) != 0) {
+                //the last label is always a public suffix
+                return previous;
+            }
+            previous = candidate;
+            candidate = parent;
+        }
+        return -1;
+    }
+
+    private byte get(String s, int start, int end) {
+        int length = end - start;
+        int slot = hash(s, start, end) & mask;
+        String key = keys[slot];
+        while (key != null) {
+            if (key.length() == length && s.regionMatches(true, start, key, 0, length)) {
+                return flags[slot];
+            }
+            slot = (slot + 1) & mask;
+            key = keys[slot];
+        }
+        return 0;
+    }
+
+    private static int hash(String s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + Character.toLowerCase(s.charAt(i));
+        }
+        //spread the bits so that linear probing behaves
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SpaceSaving top-k sketch: it keeps at most <code>capacity</code>
+ * counters, whatever the number of distinct keys.  When a key that isn't
+ * counted comes in and the sketch is full, it takes over the counter with
+ * the lowest count, and that count becomes the new key's error.
+ * <p>
+ * A counter's count is never lower than the true count of its key, and
+ * it's at most its error higher.  Any key with a true count above
+ * {@link #getMin()} has a counter, and the error is at most
+ * {@link #getTotal()}/capacity.
+ * <p>
+ * Sketches can be merged; the bounds still hold for the merged sketch.
+ * <p>
+ * This is not thread safe.
+ */
+public class SpaceSaving<K> {
+
+    /**
+     * A key's count and the most that the count can be over the true count
+     */
+    public static class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        private Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + count + "(+/-" + error + ")";
+        }
+    }
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    //min heap by count
+    private final Counter<K>[] heap;
+    private int size = 0;
+    private long total = 0;
+
+    @SuppressWarnings("unchecked")
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.capacity = capacity;
+        this.counters = new HashMap<>(Math.min(capacity, 1 << 20) * 2);
+        this.heap = (Counter<K>[]) new Counter<?>[capacity];
+    }
+
+    public void offer(K key) {
+        offer(key, 1);
+    }
+
+    /**
+     * @param weight must not be negative
+     */
+    public void offer(K key, long weight) {
+        total += weight;
+        Counter<K> c = counters.get(key);
+        if (c != null) {
+            c.count += weight;
+            siftDown(c.heapIndex);
+        } else if (size < capacity) {
+            c = new Counter<>(key, weight, 0);
+            counters.put(key, c);
+            c.heapIndex = size;
+            heap[size++] = c;
+            siftUp(c.heapIndex);
+        } else {
+            c = heap[0];
+            counters.remove(c.key);
+            c.key = key;
+            c.error = c.count;
+            c.count += weight;
+            counters.put(key, c);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Same as {@link #offer(Object, long)} if the key is already counted;
+     * otherwise, this doesn't change the sketch.  This lets callers look
+     * up with a reused key and only make one to keep when it's new.
+     *
+     * @param weight must not be negative
+     * @return whether the key was counted
+     */
+    public boolean addIfCounted(K key, long weight) {
+        Counter<K> c = counters.get(key);
+        if (c == null) {
+            return false;
+        }
+        total += weight;
+        c.count += weight;
+        siftDown(c.heapIndex);
+        return true;
+    }
+
+    /**
+     * Restores a counter, e.g. from a file written by another sketch
+     *
+     * @throws IllegalStateException if the sketch is full or already counts the key
+     */
+    public void putCounter(K key, long count, long error) {
+        if (size == capacity || counters.containsKey(key)) {
+            throw new IllegalStateException("Can't put " + key + ": the sketch is full or counts it");
+        }
+        Counter<K> c = new Counter<>(key, count, error);
+        counters.put(key, c);
+        c.heapIndex = size;
+        heap[size++] = c;
+        siftUp(c.heapIndex);
+        //every offer goes to exactly one counter, so the counts add up to the total
+        total += count;
+    }
+
+    /**
+     * Merges the other sketch into this one.  A key that only one of the
+     * sketches counts may have had up to the other's {@link #getMin()} in
+     * the other, so that's added to its count and error.
+     */
+    public void merge(SpaceSaving<K> other) {
+        long min = getMin();
+        long otherMin = other.getMin();
+        Map<K, Counter<K>> merged = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            Counter<K> c = heap[i];
+            Counter<K> o = other.counters.get(c.key);
+            if (o == null) {
+                merged.put(c.key, new Counter<>(c.key, c.count + otherMin, c.error + otherMin));
+            } else {
+                merged.put(c.key, new Counter<>(c.key, c.count + o.count, c.error + o.error));
+            }
+        }
+        for (int i = 0; i < other.size; i++) {
+            Counter<K> o = other.heap[i];
+            if (!merged.containsKey(o.key)) {
+                merged.put(o.key, new Counter<>(o.key, o.count + min, o.error + min));
+            }
+        }
+        List<Counter<K>> sorted = new ArrayList<>(merged.values());
+        sorted.sort(Comparator.comparingLong((Counter<K> c) -> c.count).reversed());
+        long newTotal = total + other.total;
+        clear();
+        for (int i = 0; i < sorted.size() && i < capacity; i++) {
+            Counter<K> c = sorted.get(i);
+            counters.put(c.key, c);
+            c.heapIndex = size;
+            heap[size++] = c;
+            siftUp(c.heapIndex);
+        }
+        total = newTotal;
+    }
+
+    /**
+     * @return the lowest count if the sketch is full, 0 otherwise.  Keys
+     * without a counter have a true count of at most this.
+     */
+    public long getMin() {
+        return (size < capacity) ? 0 : heap[0].count;
+    }
+
+    /**
+     * @return the sum of the weights offered
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the key's counter or null
+     */
+    public Counter<K> get(K key) {
+        return counters.get(key);
+    }
+
+    /**
+     * @return the counters with the highest counts, highest first
+     */
+    public List<Counter<K>> getTop(int k) {
+        List<Counter<K>> list = new ArrayList<>(Arrays.asList(heap).subList(0, size));
+        list.sort(Comparator.comparingLong((Counter<K> c) -> c.count).reversed());
+        return (k < list.size()) ? list.subList(0, k) : list;
+    }
+
+    public void clear() {
+        counters.clear();
+        Arrays.fill(heap, 0, size, null);
+        size = 0;
+        total = 0;
+    }
+
+    private void siftUp(int i) {
+        Counter<K> c = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (heap[parent].count <= c.count) {
+                break;
+            }
+            place(heap[parent], i);
+            i = parent;
+        }
+        place(c, i);
+    }
+
+    private void siftDown(int i) {
+        Counter<K> c = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && heap[right].count < heap[child].count) {
+                child = right;
+            }
+            if (c.count <= heap[child].count) {
+                break;
+            }
+            place(heap[child], i);
+            i = child;
+        }
+        place(c, i);
+    }
+
+    private void place(Counter<K> c, int i) {
+        heap[i] = c;
+        c.heapIndex = i;
+    }
+}
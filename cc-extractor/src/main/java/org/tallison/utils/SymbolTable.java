@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Concurrent dictionary that maps low-cardinality strings to dense
+ * int ids (0, 1, 2, ...) in the order that they're first seen, and
+ * back again.
+ * <p>
+ * Lookups of strings that are already in the table don't lock; only
+ * adding a new string does.  Every string in the table is held once,
+ * so {@link #getSymbol(int)} returns the same instance for an id.
+ * <p>
+ * The table stops growing at its max size; after that, {@link #getId(String)}
+ * returns {@link #NO_ID} for new strings.
+ * <p>
+ * Use a {@link ByteCache} per thread to look up values that are still
+ * in utf-8 bytes without decoding them.
+ */
+public class SymbolTable {
+
+    public static final int NO_ID = -1;
+
+    private final String name;
+    private final int maxSize;
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    //only grows; written under the lock, and the id is published
+    //through the map after its symbol is in the array
+    private volatile String[] symbols = new String[64];
+    private int size = 0;
+
+    public SymbolTable(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param s string to look up; may not be null
+     * @return the id for <code>s</code>, which is added to the table if it
+     * isn't there yet, or {@link #NO_ID} if the table is full
+     */
+    public int getId(String s) {
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id;
+        }
+        return add(s);
+    }
+
+    /**
+     * @param s string to look up; may not be null
+     * @return the id for <code>s</code> or {@link #NO_ID} if it isn't in the table;
+     * this never adds
+     */
+    public int lookup(String s) {
+        Integer id = ids.get(s);
+        return (id == null) ? NO_ID : id;
+    }
+
+    private synchronized int add(String s) {
+        //recheck under the lock
+        Integer id = ids.get(s);
+        if (id != null) {
+            return id;
+        }
+        if (size >= maxSize) {
+            return NO_ID;
+        }
+        String[] current = symbols;
+        if (size == current.length) {
+            current = Arrays.copyOf(current, Math.min(maxSize, current.length * 2));
+        }
+        current[size] = s;
+        symbols = current;
+        ids.put(s, size);
+        return size++;
+    }
+
+    /**
+     * @param id id from {@link #getId(String)}
+     * @return the string for the id
+     * @throws ArrayIndexOutOfBoundsException if the id isn't in the table
+     */
+    public String getSymbol(int id) {
+        return symbols[id];
+    }
+
+    /**
+     * @return number of strings in the table; ids are 0 to size-1
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param maxEntries the cache stops adding entries after this many
+     * @return a new cache in front of this table
+     */
+    public ByteCache newByteCache(int maxEntries) {
+        return new ByteCache(this, maxEntries);
+    }
+
+    @Override
+    public String toString() {
+        return "SymbolTable{" +
+                "name='" + name + '\'' +
+                ", size=" + size() +
+                '}';
+    }
+
+    /**
+     * Cache of utf-8 bytes to ids in front of a {@link SymbolTable}.
+     * A hit costs a hash and a compare of the bytes; a miss decodes
+     * the bytes once and goes to the table.
+     * <p>
+     * This is not thread safe; use one per thread.
+     */
+    public static class ByteCache {
+
+        private final SymbolTable table;
+        private final int maxEntries;
+        private byte[][] keys;
+        private int[] values;
+        private int mask;
+        private int entries = 0;
+
+        private ByteCache(SymbolTable table, int maxEntries) {
+            this.table = table;
+            this.maxEntries = maxEntries;
+            keys = new byte[64][];
+            values = new int[64];
+            mask = 63;
+        }
+
+        /**
+         * @param bytes utf-8 bytes
+         * @param offset offset of the value
+         * @param length length of the value
+         * @return the id of the value, which is added to the table if it isn't
+         * there yet, or {@link #NO_ID} if the table is full
+         */
+        public int getId(byte[] bytes, int offset, int length) {
+            int h = hash(bytes, offset, length);
+            int slot = h & mask;
+            while (keys[slot] != null) {
+                if (matches(keys[slot], bytes, offset, length)) {
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int id = table.getId(new String(bytes, offset, length, StandardCharsets.UTF_8));
+            if (id != NO_ID && entries < maxEntries) {
+                keys[slot] = Arrays.copyOfRange(bytes, offset, offset + length);
+                values[slot] = id;
+                if (++entries * 2 > keys.length) {
+                    grow();
+                }
+            }
+            return id;
+        }
+
+        public SymbolTable getTable() {
+            return table;
+        }
+
+        private void grow() {
+            byte[][] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new byte[oldKeys.length * 2][];
+            values = new int[oldKeys.length * 2];
+            mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == null) {
+                    continue;
+                }
+                int slot = hash(oldKeys[i], 0, oldKeys[i].length) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        private static int hash(byte[] bytes, int offset, int length) {
+            int h = 0;
+            for (int i = offset; i < offset + length; i++) {
+                h = 31 * h + bytes[i];
+            }
+            //spread the bits for the mask
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean matches(byte[] key, byte[] bytes, int offset, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != bytes[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
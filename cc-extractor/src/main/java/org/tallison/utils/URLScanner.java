@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import java.util.Locale;
+
+/**
+ * Lenient, single pass url splitter for the hot path.  Unlike
+ * {@link java.net.URI} and {@link java.net.URL}, this doesn't validate
+ * or build anything; {@link #scan(String)} records the offsets of the
+ * parts of the url, and the getters only allocate if they're asked for
+ * a String.
+ * <pre>
+ * scheme://user@host:port/path/file.ext?query#fragment
+ * </pre>
+ * Urls without "//" (mailto:, relative urls) have no host.
+ * <p>
+ * This is not thread safe; use one per thread and call {@link #scan(String)}
+ * for each url.
+ */
+public class URLScanner {
+
+    private String url;
+    private int hostStart;
+    private int hostEnd;
+    private int pathStart;
+    private int pathEnd;
+    private int queryStart;
+    private int queryEnd;
+    private int tldStart;
+    private int extensionStart;
+
+    /**
+     * @param url url to scan; may be null
+     * @return whether the url has a host
+     */
+    public boolean scan(String url) {
+        this.url = url;
+        hostStart = hostEnd = -1;
+        pathStart = pathEnd = -1;
+        queryStart = queryEnd = -1;
+        tldStart = extensionStart = -1;
+        if (url == null) {
+            return false;
+        }
+        int length = url.length();
+        int authorityStart = getAuthorityStart(url);
+        int i;
+        if (authorityStart > -1) {
+            int authorityEnd = authorityStart;
+            int at = -1;
+            while (authorityEnd < length) {
+                char c = url.charAt(authorityEnd);
+                if (c == '/' || c == '?' || c == '#') {
+                    break;
+                } else if (c == '@') {
+                    at = authorityEnd;
+                }
+                authorityEnd++;
+            }
+            scanHost((at > -1) ? at + 1 : authorityStart, authorityEnd);
+            i = authorityEnd;
+        } else {
+            int colon = getSchemeEnd(url);
+            i = (colon > -1) ? colon + 1 : 0;
+        }
+        pathStart = i;
+        while (i < length && url.charAt(i) != '?' && url.charAt(i) != '#') {
+            i++;
+        }
+        pathEnd = i;
+        if (i < length && url.charAt(i) == '?') {
+            queryStart = ++i;
+            while (i < length && url.charAt(i) != '#') {
+                i++;
+            }
+            queryEnd = i;
+        }
+        scanExtension();
+        return hostStart > -1;
+    }
+
+    private void scanHost(int start, int authorityEnd) {
+        int end;
+        if (start < authorityEnd && url.charAt(start) == '[') {
+            //ipv6
+            end = url.indexOf(']', start);
+            end = (end < 0 || end >= authorityEnd) ? authorityEnd : end + 1;
+        } else {
+            end = start;
+            while (end < authorityEnd && url.charAt(end) != ':') {
+                end++;
+            }
+            //www.example.com. is www.example.com
+            while (end > start && url.charAt(end - 1) == '.') {
+                end--;
+            }
+        }
+        if (end == start) {
+            return;
+        }
+        hostStart = start;
+        hostEnd = end;
+        if (url.charAt(start) == '[') {
+            return;
+        }
+        int dot = url.lastIndexOf('.', end - 1);
+        if (dot < start || dot + 1 >= end) {
+            return;
+        }
+        //no tld for ipv4 addresses
+        for (int i = dot + 1; i < end; i++) {
+            char c = url.charAt(i);
+            if (c < '0' || c > '9') {
+                tldStart = dot + 1;
+                return;
+            }
+        }
+    }
+
+    private void scanExtension() {
+        int segmentStart = pathStart;
+        int dot = -1;
+        for (int i = pathStart; i < pathEnd; i++) {
+            char c = url.charAt(i);
+            if (c == '/') {
+                segmentStart = i + 1;
+                dot = -1;
+            } else if (c == '.') {
+                dot = i;
+            }
+        }
+        if (dot >= segmentStart && dot + 1 < pathEnd) {
+            extensionStart = dot + 1;
+        }
+    }
+
+    //offset after "scheme://" or "//", or -1
+    private static int getAuthorityStart(String url) {
+        int colon = getSchemeEnd(url);
+        int i = (colon > -1) ? colon + 1 : 0;
+        if (url.startsWith("//", i)) {
+            return i + 2;
+        }
+        return -1;
+    }
+
+    //offset of the colon after the scheme, or -1
+    private static int getSchemeEnd(String url) {
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == ':') {
+                return (i > 0) ? i : -1;
+            }
+            boolean alpha = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (! alpha && (i == 0 || !((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.'))) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    public int getHostStart() {
+        return hostStart;
+    }
+
+    public int getHostEnd() {
+        return hostEnd;
+    }
+
+    public int getPathStart() {
+        return pathStart;
+    }
+
+    public int getPathEnd() {
+        return pathEnd;
+    }
+
+    /**
+     * @return the offset just after the '?' or -1 if there is no query
+     */
+    public int getQueryStart() {
+        return queryStart;
+    }
+
+    public int getQueryEnd() {
+        return queryEnd;
+    }
+
+    /**
+     * @return offset of the last label of the host or -1 if there isn't
+     * one (no dot, ip address)
+     */
+    public int getTLDStart() {
+        return tldStart;
+    }
+
+    /**
+     * @return offset just after the last '.' in the last segment of the path or
+     * -1 if there is no extension; the extension ends at {@link #getPathEnd()}
+     */
+    public int getExtensionStart() {
+        return extensionStart;
+    }
+
+    /**
+     * @return the host in lower case or null
+     */
+    public String getHost() {
+        return (hostStart < 0) ? null : lowerCase(hostStart, hostEnd);
+    }
+
+    /**
+     * @return the last label of the host in lower case or null
+     */
+    public String getTLD() {
+        return (tldStart < 0) ? null : lowerCase(tldStart, hostEnd);
+    }
+
+    /**
+     * @return the registered domain (eTLD+1, e.g. example.co.uk) from
+     * {@link PublicSuffixList#getDefault()} in lower case or null
+     * if the host is an ip address or a public suffix
+     */
+    public String getRegisteredDomain() {
+        if (tldStart < 0) {
+            return null;
+        }
+        return PublicSuffixList.getDefault().getRegisteredDomain(url, hostStart, hostEnd);
+    }
+
+    /**
+     * @return the path extension (without the dot) in lower case or null; this
+     * is not checked in any way, e.g. it may be "123" or "php%20"
+     */
+    public String getExtension() {
+        return (extensionStart < 0) ? null : lowerCase(extensionStart, pathEnd);
+    }
+
+    /**
+     * @return the path, which may be empty, or null if the url is null
+     */
+    public String getPath() {
+        return (pathStart < 0) ? null : url.substring(pathStart, pathEnd);
+    }
+
+    /**
+     * @return the query without the '?' or null
+     */
+    public String getQuery() {
+        return (queryStart < 0) ? null : url.substring(queryStart, queryEnd);
+    }
+
+    private String lowerCase(int start, int end) {
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+}
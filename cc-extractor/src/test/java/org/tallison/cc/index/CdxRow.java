@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Builds cdx rows for the tests.  Fields that aren't set, or are set to
+ * null, are left out of the json; values aren't escaped.
+ */
+class CdxRow {
+
+    private static final String KEY = "com,a)/ 20200101000000 ";
+
+    private final Map<String, String> fields = new LinkedHashMap<>();
+
+    static CdxRow of(String url) {
+        return new CdxRow().field("url", url);
+    }
+
+    CdxRow mime(String mime) {
+        return field("mime", mime);
+    }
+
+    /**
+     * Sets the header mime and the detected mime
+     */
+    CdxRow mimes(String mime) {
+        return field("mime", mime).field("mime-detected", mime);
+    }
+
+    CdxRow status(int status) {
+        return field("status", Integer.toString(status));
+    }
+
+    CdxRow length(long length) {
+        return field("length", Long.toString(length));
+    }
+
+    CdxRow languages(String languages) {
+        return field("languages", languages);
+    }
+
+    CdxRow digest(String digest) {
+        return field("digest", digest);
+    }
+
+    CdxRow field(String name, String value) {
+        if (value == null) {
+            fields.remove(name);
+        } else {
+            fields.put(name, value);
+        }
+        return this;
+    }
+
+    String build() {
+        StringBuilder sb = new StringBuilder(KEY).append('{');
+        for (Map.Entry<String, String> e : fields.entrySet()) {
+            if (sb.length() > KEY.length() + 1) {
+                sb.append(", ");
+            }
+            sb.append('"').append(e.getKey()).append("\": \"").append(e.getValue()).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    @Override
+    public String toString() {
+        return build();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Test;
+
+public class TestByteLineReader {
+
+    @Test
+    public void testLines() throws Exception {
+        String longLine = StringUtils.repeat("abcdefghij", 10);
+        String s = "a\r\nb\n\n" + longLine + "\ncéd\ne";
+        //tiny buffer so that lines span reads and the buffer has to grow
+        assertEquals(Arrays.asList("a", "b", "", longLine, "céd", "e"), readLines(s, 8));
+        assertEquals(Arrays.asList("a", "b", "", longLine, "céd", "e"), readLines(s, 1024));
+        assertEquals(Arrays.asList("a"), readLines("a\n", 8));
+        assertEquals(0, readLines("", 8).size());
+    }
+
+    private static List<String> readLines(String s, int bufferSize) throws Exception {
+        ByteLineReader reader = new ByteLineReader(
+                new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8)), bufferSize);
+        List<String> lines = new ArrayList<>();
+        int length = reader.readLine();
+        while (length > -1) {
+            lines.add(new String(reader.getBuffer(), reader.getStart(), length, StandardCharsets.UTF_8));
+            length = reader.readLine();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Checks the byte-level parser against Gson on the rows in cdx-sample.txt
+ */
+public class TestCCIndexRecordParser {
+
+    private static List<String> ROWS = new ArrayList<>();
+
+    @BeforeClass
+    public static void loadRows() throws Exception {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TestCCIndexRecordParser.class.getResourceAsStream("cdx-sample.txt"),
+                StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                ROWS.add(line);
+                line = reader.readLine();
+            }
+        }
+    }
+
+    @Test
+    public void testAgainstGson() throws Exception {
+        CCIndexRecordParser parser = new CCIndexRecordParser();
+        CCIndexRecord record = new CCIndexRecord();
+        int parsed = 0;
+        for (String row : ROWS) {
+            CCIndexRecord expected = parseWithGson(row);
+            byte[] bytes = row.getBytes(StandardCharsets.UTF_8);
+            int end = parser.parse(bytes, 0, bytes.length, record);
+            if (end < 0) {
+                continue;
+            }
+            parsed++;
+            assertNotNull(row, expected);
+            assertSameRecord(row, expected, record);
+        }
+        //everything but the rows that have to fall back to gson
+        //(12.0, nested object, array)
+        assertEquals(ROWS.size() - 3, parsed);
+    }
+
+    @Test
+    public void testParseRecords() throws Exception {
+        for (String row : ROWS) {
+            CCIndexRecord expected = parseWithGson(row);
+            if (expected == null) {
+                continue;
+            }
+            List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
+            assertEquals(row, 1, records.size());
+            assertSameRecord(row, expected, records.get(0));
+        }
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        CCIndexRecordParser parser = new CCIndexRecordParser();
+        CCIndexRecord record = new CCIndexRecord();
+        byte[] full = ROWS.get(1).getBytes(StandardCharsets.UTF_8);
+        byte[] minimal = "com,a)/ 20200101000000 {\"url\": \"http://a.com/\"}".getBytes(StandardCharsets.UTF_8);
+        assertTrue(parser.parse(full, 0, full.length, record) > 0);
+        assertEquals("length", record.getTruncated());
+        assertTrue(parser.parse(minimal, 0, minimal.length, record) > 0);
+        assertEquals("http://a.com/", record.getUrl());
+        assertNull(record.getTruncated());
+        assertEquals(CCIndexRecord.MISSING, record.getStatus());
+    }
+
+    @Test
+    public void testOffsetAndLength() throws Exception {
+        CCIndexRecordParser parser = new CCIndexRecordParser();
+        CCIndexRecord record = new CCIndexRecord();
+        byte[] row = ROWS.get(2).getBytes(StandardCharsets.UTF_8);
+        byte[] padded = new byte[row.length + 20];
+        System.arraycopy(row, 0, padded, 10, row.length);
+        assertEquals(10 + row.length, parser.parse(padded, 10, row.length, record));
+        assertEquals("http://example.com/", record.getUrl());
+        assertEquals(301, record.getStatus());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        CCIndexRecordParser parser = new CCIndexRecordParser();
+        CCIndexRecord record = new CCIndexRecord();
+        byte[] row = ROWS.get(1).getBytes(StandardCharsets.UTF_8);
+        CCIndexRecord expected = parseWithGson(ROWS.get(1));
+        assertEquals(row.length, parser.parse(row, 0, row.length, record,
+                EnumSet.of(CCIndexField.URL, CCIndexField.STATUS)));
+        assertEquals(expected.getUrl(), record.getUrl());
+        assertEquals(expected.getStatus(), record.getStatus());
+        assertNull(record.getMime());
+        assertNull(record.getDigest());
+        assertEquals(CCIndexRecord.MISSING, record.getLength());
+        assertNull(record.getTruncated());
+
+        List<CCIndexRecord> records = CCIndexRecord.parseRecords(ROWS.get(1),
+                EnumSet.of(CCIndexField.DIGEST));
+        assertEquals(1, records.size());
+        assertEquals(expected.getDigest(), records.get(0).getDigest());
+        assertNull(records.get(0).getUrl());
+    }
+
+    @Test
+    public void testMultipleRecordsPerRow() throws Exception {
+        String row = "com,a)/ 20200101000000 {\"url\": \"http://a.com/\", \"status\": \"200\"}" +
+                "com,b)/ 20200101000000 {\"url\": \"http://b.com/}\", \"status\": \"404\"}" +
+                " {\"url\": \"http://c.com/\", \"status\": \"301\"}";
+        List<CCIndexRecord> records = CCIndexRecord.parseRecords(row);
+        assertEquals(3, records.size());
+        assertEquals("http://a.com/", records.get(0).getUrl());
+        //brace inside of a value
+        assertEquals("http://b.com/}", records.get(1).getUrl());
+        assertEquals(404, records.get(1).getStatus());
+        assertEquals("http://c.com/", records.get(2).getUrl());
+    }
+
+    @Test
+    public void testQuarantine() throws Exception {
+        long noJson = CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.NO_JSON);
+        long unterminated = CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.UNTERMINATED);
+        long badJson = CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.BAD_JSON);
+
+        assertEquals(0, CCIndexRecord.parseRecords("com,a)/ 20200101000000").size());
+        assertEquals(noJson + 1, CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.NO_JSON));
+
+        //the good record is kept
+        List<CCIndexRecord> records = CCIndexRecord.parseRecords(
+                "com,a)/ 20200101000000 {\"url\": \"http://a.com/\"} com,b)/ 20200101000000 {\"url\": \"http");
+        assertEquals(1, records.size());
+        assertEquals(unterminated + 1, CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.UNTERMINATED));
+
+        assertEquals(0, CCIndexRecord.parseRecords("com,a)/ 20200101000000 {\"url\" \"http://a.com/\"}").size());
+        assertEquals(badJson + 1, CCIndexQuarantine.getCount(CCIndexQuarantine.Reason.BAD_JSON));
+    }
+
+    @Test
+    public void testHandler() throws Exception {
+        CCIndexRecordParser parser = new CCIndexRecordParser();
+        byte[] row = ("com,a)/ 20200101000000 {\"url\": \"http://a.com/\", \"offset\": \"4294967296\"}" +
+                " {\"url\": \"http://b.com/\", \"extra\": [1]}").getBytes(StandardCharsets.UTF_8);
+        List<CCIndexRecord> seen = new ArrayList<>();
+        List<CCIndexRecord> copies = new ArrayList<>();
+        assertEquals(2, parser.parseRecords(row, 0, row.length, CCIndexField.ALL, r -> {
+            seen.add(r);
+            copies.add(r.copy());
+        }));
+        //the same record is reused, even for the one that went through gson
+        assertTrue(seen.get(0) == seen.get(1));
+        assertEquals("http://a.com/", copies.get(0).getUrl());
+        assertEquals(4294967296L, copies.get(0).getOffset());
+        assertEquals("http://b.com/", copies.get(1).getUrl());
+        assertEquals(CCIndexRecord.MISSING, copies.get(1).getOffset());
+    }
+
+    @Test
+    public void testSymbols() throws Exception {
+        CCIndexRecord a = new CCIndexRecord();
+        CCIndexRecord b = new CCIndexRecord();
+        byte[] row0 = ROWS.get(0).getBytes(StandardCharsets.UTF_8);
+        byte[] row2 = ROWS.get(2).getBytes(StandardCharsets.UTF_8);
+        assertTrue(new CCIndexRecordParser().parse(row0, 0, row0.length, a) > 0);
+        assertTrue(new CCIndexRecordParser().parse(row2, 0, row2.length, b) > 0);
+        assertEquals("text/html", b.getMime());
+        assertTrue(a.getMime() == b.getMime());
+        assertTrue(a.getId(CCIndexField.MIME) > CCIndexRecord.MISSING);
+        assertEquals(a.getId(CCIndexField.MIME), b.getId(CCIndexField.MIME));
+        assertTrue(a.getId(CCIndexField.FILENAME) != b.getId(CCIndexField.FILENAME));
+        assertEquals(b.getFilename(),
+                CCIndexSymbols.get(CCIndexField.FILENAME).getSymbol(b.getId(CCIndexField.FILENAME)));
+        //no charset in row 2
+        assertEquals(CCIndexRecord.MISSING, b.getId(CCIndexField.CHARSET));
+        assertNull(CCIndexSymbols.get(CCIndexField.URL));
+
+        //gson gets the same ids
+        CCIndexRecord gson = parseWithGson(ROWS.get(2));
+        assertEquals(b.getId(CCIndexField.MIME), gson.getId(CCIndexField.MIME));
+        assertEquals(b.getId(CCIndexField.FILENAME), gson.getId(CCIndexField.FILENAME));
+        assertEquals(b.getId(CCIndexField.FILENAME), b.copy().getId(CCIndexField.FILENAME));
+    }
+
+    private static CCIndexRecord parseWithGson(String row) {
+        String json = row;
+        if (!row.startsWith("{")) {
+            int dateI = row.indexOf(' ', row.indexOf(' ') + 1);
+            json = row.substring(dateI);
+        }
+        try {
+            return CCIndexRecord.fromJson(json);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static void assertSameRecord(String row, CCIndexRecord expected, CCIndexRecord actual) {
+        assertEquals(row, expected.getUrl(), actual.getUrl());
+        assertEquals(row, expected.getMime(), actual.getMime());
+        assertEquals(row, expected.getMimeDetected(), actual.getMimeDetected());
+        assertEquals(row, expected.getStatus(), actual.getStatus());
+        assertEquals(row, expected.getDigest(), actual.getDigest());
+        assertEquals(row, expected.getLength(), actual.getLength());
+        assertEquals(row, expected.getOffset(), actual.getOffset());
+        assertEquals(row, expected.getFilename(), actual.getFilename());
+        assertEquals(row, expected.getCharset(), actual.getCharset());
+        assertEquals(row, expected.getLanguages(), actual.getLanguages());
+        assertEquals(row, expected.getTruncated(), actual.getTruncated());
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCheckpointJournal {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("cc-checkpoint");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+    @Test
+    public void testReopen() throws Exception {
+        Path p = dir.resolve("sub/journal.txt");
+        try (CheckpointJournal journal = CheckpointJournal.open(p)) {
+            assertEquals(0, journal.size());
+            journal.complete("cdx-00000.gz_0-100");
+            journal.complete("cdx-00000.gz_100-200");
+            assertTrue(journal.isCompleted("cdx-00000.gz_0-100"));
+        }
+        try (CheckpointJournal journal = CheckpointJournal.open(p)) {
+            assertEquals(2, journal.size());
+            assertTrue(journal.isCompleted("cdx-00000.gz_100-200"));
+            assertFalse(journal.isCompleted("cdx-00001.gz_0-100"));
+        }
+    }
+
+    @Test
+    public void testPartialLastLine() throws Exception {
+        Path p = dir.resolve("journal.txt");
+        Files.write(p, "cdx-00000.gz_0-100\ncdx-00000.gz_100-2".getBytes(StandardCharsets.UTF_8));
+        try (CheckpointJournal journal = CheckpointJournal.open(p)) {
+            assertEquals(1, journal.size());
+            assertFalse(journal.isCompleted("cdx-00000.gz_100-2"));
+            journal.complete("cdx-00000.gz_100-200");
+        }
+        try (CheckpointJournal journal = CheckpointJournal.open(p)) {
+            assertEquals(2, journal.size());
+            assertTrue(journal.isCompleted("cdx-00000.gz_100-200"));
+            assertFalse(journal.isCompleted("cdx-00000.gz_100-2"));
+        }
+        assertEquals("cdx-00000.gz_0-100\ncdx-00000.gz_100-200\n",
+                new String(Files.readAllBytes(p), StandardCharsets.UTF_8));
+    }
+}
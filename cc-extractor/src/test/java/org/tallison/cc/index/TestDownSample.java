@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tallison.cc.index.mappers.DownSample;
+
+public class TestDownSample {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+    private Path rates;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+        rates = dir.resolve("rates.txt");
+        Files.write(rates, Arrays.asList("mime\trate", "text/html\t0.5", "/pdf/\t1.0"),
+                StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSameSampleAcrossThreads() throws Exception {
+        List<String> rows = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rows.add(CdxRow.of("http://a.com/" + i).mimes("text/html").status(200)
+                    .digest("D" + i).build());
+        }
+        rows.add(CdxRow.of("http://a.com/x.pdf").mimes("application/pdf").status(200).digest("P").build());
+        rows.add(CdxRow.of("http://a.com/x.txt").mimes("text/plain").status(200).digest("T").build());
+
+        Path one = Files.createDirectories(dir.resolve("one"));
+        DownSample single = new DownSample();
+        single.init(new String[]{rates.toString(), one.toString()});
+        for (String row : rows) {
+            single.process(row);
+        }
+        single.close();
+        Set<String> selected = readSelected(one);
+
+        //two threads that get the rows in a different order
+        Path two = Files.createDirectories(dir.resolve("two"));
+        IndexRecordProcessorFactory factory = new IndexRecordProcessorFactory(DownSample.class,
+                new String[]{rates.toString(), two.toString()});
+        IndexRecordProcessor a = factory.newProcessor();
+        IndexRecordProcessor b = factory.newProcessor();
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            ((i % 2 == 0) ? a : b).process(rows.get(i));
+        }
+        a.close();
+        b.close();
+        assertEquals(selected, readSelected(two));
+
+        int html = 0;
+        boolean pdf = false;
+        for (String json : selected) {
+            assertTrue(json, !json.contains("text/plain"));
+            pdf |= json.contains("application/pdf");
+            html += json.contains("text/html") ? 1 : 0;
+        }
+        assertTrue(pdf);
+        assertTrue(Integer.toString(html), html > 400 && html < 600);
+    }
+
+    private static Set<String> readSelected(Path dir) throws Exception {
+        Set<String> selected = new HashSet<>();
+        for (String f : dir.toFile().list()) {
+            if (f.startsWith("downsampled_rows")) {
+                selected.addAll(Files.readAllLines(dir.resolve(f), StandardCharsets.UTF_8));
+            }
+        }
+        return selected;
+    }
+}
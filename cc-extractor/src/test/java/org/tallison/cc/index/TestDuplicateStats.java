@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tallison.cc.index.mappers.DuplicateStats;
+import org.tallison.cc.index.mappers.GroupBy;
+
+public class TestDuplicateStats {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        Path mmap = Files.createDirectories(dir.resolve("filters"));
+        //two threads share the filters
+        IndexRecordProcessorFactory factory = new IndexRecordProcessorFactory(DuplicateStats.class,
+                new String[]{dir.toString(), "expected=1000", "mmap=" + mmap, "first_seen=digest"});
+        IndexRecordProcessor a = factory.newProcessor();
+        IndexRecordProcessor b = factory.newProcessor();
+        a.process(CdxRow.of("http://a.com/1").mimes("text/html").status(200).digest("D1").build());
+        b.process(CdxRow.of("http://a.com/2").mimes("text/html").status(200).digest("D1").build());
+        a.process(CdxRow.of("http://a.com/1").mimes("text/html").status(200).digest("D2").build());
+        b.process(CdxRow.of("http://b.org/x.pdf").mimes("application/pdf").status(200).digest("D3").build());
+        a.process(CdxRow.of("http://b.org/x.pdf").mimes("application/pdf").status(200).digest("D3").build());
+        b.process(CdxRow.of("http://b.org/y.pdf").mimes("application/pdf").status(404).digest("D3").build());
+        a.close();
+        b.close();
+
+        assertTrue(Files.size(mmap.resolve("digests.bloom")) > 0);
+        Path reduced = dir.resolve("reduced.txt");
+        Path stats = Files.createDirectories(dir.resolve("stats"));
+        for (String f : dir.toFile().list()) {
+            if (f.startsWith("duplicate_stats")) {
+                Files.move(dir.resolve(f), stats.resolve(f));
+            }
+        }
+        GroupBy.reduce(stats, reduced,
+                new String[]{"group=tld,mime_detected", "metric=count,count,count"});
+        assertEquals("com\ttext/html\t3\t1\t1\n" +
+                        "org\tapplication/pdf\t2\t1\t1\n",
+                new String(Files.readAllBytes(reduced), StandardCharsets.UTF_8));
+
+        int firstSeen = 0;
+        for (String f : dir.toFile().list()) {
+            if (f.startsWith("first_seen_rows")) {
+                List<String> lines = Files.readAllLines(dir.resolve(f), StandardCharsets.UTF_8);
+                firstSeen += lines.size();
+            }
+        }
+        assertEquals(3, firstSeen);
+    }
+
+    @Test
+    public void testNoUrl() throws Exception {
+        DuplicateStats stats = new DuplicateStats();
+        stats.init(new String[]{dir.toString(), "expected=100"});
+        String noUrl = new CdxRow().mimes("text/html").status(200).digest("D1").build();
+        stats.process(noUrl);
+        stats.process(noUrl);
+        stats.close();
+        GroupBy.reduce(dir, dir.resolve("reduced.txt"),
+                new String[]{"group=tld,mime_detected", "metric=count,count,count"});
+        //counted, with a duplicate payload, but never a repeat url
+        assertEquals("\ttext/html\t2\t1\t0\n",
+                new String(Files.readAllBytes(dir.resolve("reduced.txt")), StandardCharsets.UTF_8));
+    }
+}
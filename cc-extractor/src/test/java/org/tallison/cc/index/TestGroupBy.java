@@ -0,0 +1,179 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tallison.cc.index.mappers.CountExt;
+import org.tallison.cc.index.mappers.CountExtByMime;
+import org.tallison.cc.index.mappers.CountMimeByExt;
+import org.tallison.cc.index.mappers.GroupBy;
+
+public class TestGroupBy {
+
+    private static final String[] ROWS = {
+            CdxRow.of("http://a.com/x.pdf").mimes("application/pdf").status(200)
+                    .length(100).languages("eng,fra").build(),
+            CdxRow.of("http://b.com/y.PDF").mimes("application/pdf").status(200)
+                    .length(300).languages("eng").build(),
+            CdxRow.of("http://c.org/").mimes("text/html").status(200).length(10).build(),
+            CdxRow.of("http://d.com/robots.txt").mimes("text/plain").status(200).length(5).build(),
+            CdxRow.of("http://e.com/").mimes("text/html").status(404).length(7).languages("deu").build(),
+            CdxRow.of("http://f.co.uk/").mimes("text/html").status(200).languages("deu,eng").build(),
+    };
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+    }
+
+    @Test
+    public void testGroupAndMetrics() throws Exception {
+        String out = run("group=tld,mime", "filter=status:200,url!:*robots.txt",
+                "metric=count,sum(length),max(length)", "name=test");
+        assertEquals("com\tapplication/pdf\t2\t400\t300\n" +
+                "org\ttext/html\t1\t10\t10\n" +
+                "uk\ttext/html\t1\t0\tNULL\n", out);
+    }
+
+    @Test
+    public void testFilters() throws Exception {
+        assertEquals("application/pdf\t2\n",
+                run("group=mime_detected", "filter=ext:pdf", "name=test"));
+        assertEquals("eng\t2\ndeu\t1\n",
+                run("group=lang", "filter=lang!:NULL,status:200", "name=test"));
+        assertEquals("text/html\t3\ntext/plain\t1\n",
+                run("group=mime_detected", "filter=mime_detected:text/*", "name=test"));
+        assertEquals("f.co.uk\t1\n",
+                run("group=registered_domain", "filter=registered_domain:*.co.uk"));
+    }
+
+    @Test
+    public void testNoGroup() throws Exception {
+        assertEquals("6\t422\n", run("metric=count,sum(length)", "name=test"));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        //per thread files have the sketches; the reducer merges them
+        Path threads = Files.createDirectories(dir.resolve("threads"));
+        for (int i = 0; i < 2; i++) {
+            GroupBy groupBy = new GroupBy();
+            groupBy.init(new String[]{threads.toString(), "group=mime", "metric=count,distinct(tld)"});
+            for (int j = i; j < ROWS.length; j += 2) {
+                groupBy.process(ROWS[j]);
+            }
+            groupBy.close();
+        }
+        Path reduced = dir.resolve("reduced.txt");
+        GroupBy.reduce(threads, reduced, new String[]{"group=mime", "metric=count,distinct(tld)"});
+        assertEquals("text/html\t3\t3\napplication/pdf\t2\t1\ntext/plain\t1\t1\n",
+                new String(Files.readAllBytes(reduced), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testTop() throws Exception {
+        //the threads' files have all of the counters for the reducer
+        assertEquals("text/html\t3\t0\napplication/pdf\t2\t0\ntext/plain\t1\t0\n",
+                run("group=mime_detected", "top=2;3"));
+        //3 counters for 4 mimes: the last one takes over the counter with the lowest count
+        assertEquals("com\t4\t0\nuk\t2\t1\n",
+                run("group=tld", "top=2;2"));
+
+        Path threads = Files.createDirectories(dir.resolve("threads"));
+        for (int i = 0; i < 2; i++) {
+            GroupBy groupBy = new GroupBy();
+            groupBy.init(new String[]{threads.toString(), "group=tld,mime", "top=1;10"});
+            for (int j = i; j < ROWS.length; j += 2) {
+                groupBy.process(ROWS[j]);
+            }
+            groupBy.close();
+        }
+        Path reduced = dir.resolve("reduced.txt");
+        GroupBy.reduce(threads, reduced, new String[]{"group=tld,mime", "top=1;10"});
+        assertEquals("com\tapplication/pdf\t2\t0\n",
+                new String(Files.readAllBytes(reduced), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSpec() throws Exception {
+        GroupBy groupBy = new GroupBy();
+        groupBy.init(new String[]{dir.toString(), "group=tld,status", "filter=status:200"});
+        assertEquals(EnumSet.of(CCIndexField.URL, CCIndexField.STATUS), groupBy.getFields());
+        byte[] notOk = CdxRow.of("http://a.com/").mimes("text/html").status(404).build()
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] ok = CdxRow.of("http://a.com/").mimes("text/html").status(200).build()
+                .getBytes(StandardCharsets.UTF_8);
+        assertTrue(groupBy.getRowFilter().accept(ok, 0, ok.length));
+        assertFalse(groupBy.getRowFilter().accept(notOk, 0, notOk.length));
+        groupBy.close();
+        assertTrue(dir.toFile().list()[0].startsWith("group_by_tld_status"));
+    }
+
+    @Test
+    public void testPresetsSkipRowsWithoutUrl() throws Exception {
+        String[] rows = {
+                new CdxRow().mime("text/html").status(200).build(),
+                CdxRow.of("http://a.com/x.pdf").mime("application/pdf").status(200).build(),
+        };
+        assertEquals("pdf\t1\n", run(new CountExt(), rows));
+        assertEquals("pdf\tapplication/pdf\t1\n", run(new CountExtByMime(), rows));
+        assertEquals("application/pdf\tpdf\t1\n", run(new CountMimeByExt(), rows));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadDimension() throws Exception {
+        new GroupBy().init(new String[]{dir.toString(), "group=tld,nope"});
+    }
+
+    private String run(String... spec) throws Exception {
+        return run(new GroupBy(), ROWS, spec);
+    }
+
+    private String run(GroupBy groupBy, String[] rows, String... spec) throws Exception {
+        String[] args = new String[spec.length + 1];
+        args[0] = dir.toString();
+        System.arraycopy(spec, 0, args, 1, spec.length);
+        groupBy.init(args);
+        for (String row : rows) {
+            groupBy.process(row);
+        }
+        groupBy.close();
+        String[] files = dir.toFile().list();
+        assertEquals(1, files.length);
+        Path p = dir.resolve(files[0]);
+        String s = new String(Files.readAllBytes(p), StandardCharsets.UTF_8);
+        Files.delete(p);
+        return s;
+    }
+}
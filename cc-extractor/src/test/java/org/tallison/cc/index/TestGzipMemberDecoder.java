@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestGzipMemberDecoder {
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("cc-decoder", ".gz");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.delete(file);
+    }
+
+    @Test
+    public void testMembers() throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(gzip("first\n"));
+        bos.write(memberWithNameAndExtra("second\n"));
+        bos.write(gzip(""));
+        bos.write(gzip("third\n"));
+        int end = bos.size();
+        //trailing zeros, as some writers pad files
+        bos.write(new byte[10]);
+        Files.write(file, bos.toByteArray());
+
+        //tiny buffer so that headers and trailers straddle reads
+        GzipMemberDecoder decoder = new GzipMemberDecoder(7);
+        assertEquals("first\nsecond\nthird\n", decode(decoder, 0, Files.size(file)));
+        //reuse
+        assertEquals("first\nsecond\nthird\n", decode(decoder, 0, end));
+        assertEquals("", decode(decoder, 0, 0));
+        decoder.close();
+    }
+
+    @Test
+    public void testCorruptTrailer() throws Exception {
+        byte[] member = gzip("some text\n");
+        member[member.length - 8] ^= 0xff;
+        Files.write(file, member);
+        GzipMemberDecoder decoder = new GzipMemberDecoder();
+        try {
+            decode(decoder, 0, member.length);
+            fail("should have noticed the bad crc");
+        } catch (ZipException e) {
+            //good
+        }
+    }
+
+    @Test
+    public void testNotGzip() throws Exception {
+        Files.write(file, "not gzip".getBytes(StandardCharsets.UTF_8));
+        GzipMemberDecoder decoder = new GzipMemberDecoder();
+        try {
+            decode(decoder, 0, Files.size(file));
+            fail("should have complained about the header");
+        } catch (ZipException e) {
+            //good
+        }
+    }
+
+    private String decode(GzipMemberDecoder decoder, long start, long end) throws Exception {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            decoder.reset(channel, start, end);
+            return new String(IOUtils.toByteArray(decoder), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static byte[] gzip(String s) throws Exception {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+            gz.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bos.toByteArray();
+    }
+
+    //GZIPOutputStream doesn't write optional header fields
+    private static byte[] memberWithNameAndExtra(String s) throws Exception {
+        byte[] data = s.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        bos.write(new byte[]{0x1f, (byte) 0x8b, 8, (byte) (GzipMembers.FEXTRA | GzipMembers.FNAME),
+                0, 0, 0, 0, 0, (byte) 0xff});
+        bos.write(new byte[]{3, 0, 'a', 'b', 'c'});
+        bos.write("name.txt\0".getBytes(StandardCharsets.US_ASCII));
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            int n = deflater.deflate(buffer);
+            bos.write(buffer, 0, n);
+        }
+        deflater.end();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        writeUInt(bos, crc.getValue());
+        writeUInt(bos, data.length);
+        return bos.toByteArray();
+    }
+
+    private static void writeUInt(ByteArrayOutputStream bos, long v) {
+        for (int i = 0; i < 4; i++) {
+            bos.write((int) (v >> (8 * i)) & 0xff);
+        }
+    }
+}
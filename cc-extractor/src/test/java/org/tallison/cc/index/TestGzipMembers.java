@@ -0,0 +1,238 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class TestGzipMembers {
+
+    private static final int NUM_MEMBERS = 20;
+    private static final int LINES_PER_MEMBER = 300;
+
+    private static Path DIR;
+    private static Path SHARD;
+    private static Path CLUSTER_IDX;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        DIR = Files.createTempDirectory("cc-gzip-members");
+        SHARD = DIR.resolve("cdx-00000.gz");
+        CLUSTER_IDX = DIR.resolve(ClusterIdx.CLUSTER_IDX);
+        try (OutputStream os = Files.newOutputStream(SHARD);
+             Writer idx = Files.newBufferedWriter(CLUSTER_IDX, StandardCharsets.UTF_8)) {
+            long offset = 0;
+            for (int m = 0; m < NUM_MEMBERS; m++) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream();
+                try (GZIPOutputStream gz = new GZIPOutputStream(bos)) {
+                    for (int i = 0; i < LINES_PER_MEMBER; i++) {
+                        gz.write(line(m, i).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+                byte[] member = bos.toByteArray();
+                os.write(member);
+                idx.write(key(m, 0) + "\tcdx-00000.gz\t" + offset + "\t" + member.length + "\t" + m + "\n");
+                offset += member.length;
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() throws IOException {
+        FileUtils.deleteDirectory(DIR.toFile());
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        List<CCIndexRange> ranges = GzipMembers.split(SHARD, 4, null);
+        assertEquals(4, ranges.size());
+        assertContiguous(ranges);
+        assertEquals(NUM_MEMBERS * LINES_PER_MEMBER, countLines(ranges));
+    }
+
+    @Test
+    public void testClusterIdx() throws Exception {
+        ClusterIdx clusterIdx = ClusterIdx.load(CLUSTER_IDX);
+        assertEquals(NUM_MEMBERS, clusterIdx.getBlocks("cdx-00000.gz").size());
+        List<CCIndexRange> ranges = GzipMembers.split(SHARD, 7, clusterIdx);
+        assertEquals(7, ranges.size());
+        assertContiguous(ranges);
+        for (CCIndexRange r : ranges) {
+            boolean found = r.getStart() == 0;
+            for (ClusterIdx.Block b : clusterIdx.getBlocks("cdx-00000.gz")) {
+                if (b.getOffset() == r.getStart()) {
+                    found = true;
+                }
+            }
+            assertTrue(r.toString(), found);
+        }
+        assertEquals(NUM_MEMBERS * LINES_PER_MEMBER, countLines(ranges));
+    }
+
+    @Test
+    public void testMoreRangesThanMembers() throws Exception {
+        List<CCIndexRange> ranges = GzipMembers.split(SHARD, NUM_MEMBERS * 3, null);
+        assertEquals(NUM_MEMBERS, ranges.size());
+        assertEquals(NUM_MEMBERS * LINES_PER_MEMBER, countLines(ranges));
+    }
+
+    @Test
+    public void testSurtPrefix() throws Exception {
+        ClusterIdx clusterIdx = ClusterIdx.load(CLUSTER_IDX);
+        List<CCIndexRange> ranges = clusterIdx.getRanges(DIR,
+                Collections.singletonList("com,example00007)"));
+        //the block before the first matching block may hold matching keys, too
+        assertEquals(1, ranges.size());
+        assertEquals(clusterIdx.getBlocks().get(6).getOffset(), ranges.get(0).getStart());
+        assertEquals(clusterIdx.getBlocks().get(8).getOffset(), ranges.get(0).getEnd());
+
+        CCIndexReader reader = new CCIndexReader();
+        reader.setSurtPrefixes(Collections.singletonList("com,example00007)"));
+        List<String> lines = readLines(reader, ranges);
+        assertEquals(LINES_PER_MEMBER, lines.size());
+        assertEquals(line(7, 0).trim(), lines.get(0));
+
+        ranges = clusterIdx.getRanges(DIR, Arrays.asList("com,example00003)", "com,example00012)"));
+        assertEquals(2, ranges.size());
+
+        ranges = clusterIdx.getRanges(DIR, Collections.singletonList("org,"));
+        assertEquals(1, ranges.size());
+        reader.setSurtPrefixes(Collections.singletonList("org,"));
+        assertEquals(0, readLines(reader, ranges).size());
+    }
+
+    @Test
+    public void testPipelined() throws Exception {
+        List<CCIndexRange> ranges = GzipMembers.split(SHARD, 5, null);
+        ArrayBlockingQueue<CCIndexRange> queue = new ArrayBlockingQueue<>(ranges.size() + 2);
+        queue.addAll(ranges);
+        queue.add(CCIndexReaderWrapper.POISON);
+        queue.add(CCIndexReaderWrapper.POISON);
+        //tiny queue so that the inflaters have to wait on the processors
+        ArrayBlockingQueue<List<String>> batches = new ArrayBlockingQueue<>(2);
+        Set<String> lines = Collections.synchronizedSet(new HashSet<>());
+        ExecutorService executorService = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<Integer>> processors = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                processors.add(executorService.submit(
+                        new CCIndexBatchWrapper(batches, new LineCollector(lines))));
+            }
+            List<Future<Integer>> inflaters = new ArrayList<>();
+            for (int t = 0; t < 2; t++) {
+                inflaters.add(executorService.submit(new CCIndexReaderWrapper(queue,
+                        new CCIndexLineBatcher(batches, 77))));
+            }
+            for (Future<Integer> f : inflaters) {
+                f.get();
+            }
+            for (int t = 0; t < 3; t++) {
+                batches.put(CCIndexBatchWrapper.POISON);
+            }
+            for (Future<Integer> f : processors) {
+                f.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(NUM_MEMBERS * LINES_PER_MEMBER, lines.size());
+        assertTrue(lines.contains(line(NUM_MEMBERS - 1, LINES_PER_MEMBER - 1).trim()));
+    }
+
+    private static void assertContiguous(List<CCIndexRange> ranges) throws IOException {
+        assertEquals(0, ranges.get(0).getStart());
+        for (int i = 1; i < ranges.size(); i++) {
+            assertEquals(ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+        }
+        assertEquals(Files.size(SHARD), ranges.get(ranges.size() - 1).getEnd());
+    }
+
+    private static int countLines(List<CCIndexRange> ranges) {
+        List<String> lines = readLines(new CCIndexReader(), ranges);
+        for (int m = 0; m < NUM_MEMBERS; m++) {
+            for (int i = 0; i < LINES_PER_MEMBER; i++) {
+                assertEquals(line(m, i).trim(), lines.get(m * LINES_PER_MEMBER + i));
+            }
+        }
+        return lines.size();
+    }
+
+    private static List<String> readLines(CCIndexReader reader, List<CCIndexRange> ranges) {
+        List<String> lines = new ArrayList<>();
+        IndexRecordProcessor processor = new LineCollector(lines);
+        for (CCIndexRange r : ranges) {
+            reader.process(r, processor);
+        }
+        return lines;
+    }
+
+    private static class LineCollector implements IndexRecordProcessor {
+        private final Collection<String> lines;
+
+        LineCollector(Collection<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public void init(String[] args) {
+        }
+
+        @Override
+        public void process(String json) {
+            lines.add(json);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static String key(int member, int i) {
+        return String.format("com,example%05d)/%05d 20200220040220", member, i);
+    }
+
+    private static String line(int member, int i) {
+        return key(member, i) + " {\"url\": \"http://example" + member + ".com/" + i +
+                "\", \"mime\": \"text/html\", \"status\": \"200\", \"digest\": \"" +
+                Integer.toHexString(member * 100000 + i) + "\"}\n";
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestIndexRecordProcessorFactory {
+
+    @Test
+    public void testSharedState() throws Exception {
+        Shared.LOADS.set(0);
+        IndexRecordProcessorFactory factory = new IndexRecordProcessorFactory(Shared.class,
+                new String[]{"a", "b"});
+        Shared p1 = (Shared) factory.newProcessor();
+        Shared p2 = (Shared) factory.newProcessor();
+        assertEquals(1, Shared.LOADS.get());
+        assertTrue(p1 != p2);
+        assertTrue(p1.state == p2.state);
+        assertEquals("a", p1.state.get(0));
+
+        //init(args) alone still works and loads its own state
+        Shared p3 = new Shared();
+        p3.init(new String[]{"c"});
+        assertEquals(2, Shared.LOADS.get());
+        assertEquals("c", p3.state.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNotAProcessor() throws Exception {
+        IndexRecordProcessorFactory.forName(String.class.getName(), new String[0]);
+    }
+
+    public static class Shared implements SharedStateProcessor<List<String>> {
+        private static final AtomicInteger LOADS = new AtomicInteger();
+        private List<String> state;
+
+        @Override
+        public List<String> loadState(String[] args) {
+            LOADS.incrementAndGet();
+            List<String> state = new ArrayList<>();
+            state.add(args[0]);
+            return state;
+        }
+
+        @Override
+        public void init(String[] args, List<String> state) {
+            this.state = state;
+        }
+
+        @Override
+        public void init(String[] args) {
+            init(args, loadState(args));
+        }
+
+        @Override
+        public void process(String row) {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TestMimeNormalizer {
+
+    @Test
+    public void testNormalize() throws Exception {
+        MimeNormalizer normalizer = new MimeNormalizer(100);
+        assertNull(normalizer.normalize(null));
+        assertEquals("text/html", normalizer.normalize("\"Text/HTML\""));
+        assertEquals("text/html; charset=utf-8",
+                normalizer.normalize("text/html;  \tcharset=UTF-8 "));
+        assertEquals(MimeNormalizer.normalizeUncached(" \"a  b\" "),
+                normalizer.normalize(" \"a  b\" "));
+    }
+
+    @Test
+    public void testCanonical() throws Exception {
+        MimeNormalizer normalizer = new MimeNormalizer(100);
+        String a = normalizer.normalize(new String("text/html"));
+        String b = normalizer.normalize("TEXT/HTML");
+        String c = normalizer.normalize(new String("text/html"));
+        assertSame(a, b);
+        assertSame(a, c);
+        assertEquals(1, normalizer.getHits());
+        assertEquals(2, normalizer.getMisses());
+        assertEquals(2, normalizer.size());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        MimeNormalizer normalizer = new MimeNormalizer(10);
+        for (int i = 0; i < 100; i++) {
+            assertEquals("mime/" + i, normalizer.normalize("Mime/" + i));
+        }
+        assertEquals(10, normalizer.size());
+        assertEquals("mime/50", normalizer.normalize("Mime/50"));
+        assertEquals(0, normalizer.getHits());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class TestMultiRecordProcessor {
+
+    private static final String ROW = "com,example)/ 20200220040220 {\"url\": \"http://example.com/\", " +
+            "\"mime\": \"text/html\", \"status\": \"200\", \"digest\": \"ABC\"}";
+
+    @Test
+    public void testFanOut() throws Exception {
+        Collector urls = new Collector(EnumSet.of(CCIndexField.URL));
+        Collector mimes = new Collector(EnumSet.of(CCIndexField.MIME));
+        List<String> rows = new ArrayList<>();
+        IndexRecordProcessor rowProcessor = new IndexRecordProcessor() {
+            @Override
+            public void init(String[] args) {
+            }
+
+            @Override
+            public void process(String row) throws IOException {
+                rows.add(row);
+                throw new IOException("bad row");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        MultiRecordProcessor multi = new MultiRecordProcessor(Arrays.asList(rowProcessor, urls, mimes));
+        assertTrue(multi.getFields().containsAll(EnumSet.of(CCIndexField.URL, CCIndexField.MIME)));
+        try {
+            multi.process(ROW);
+            fail("should have rethrown the row processor's exception");
+        } catch (IOException e) {
+            assertEquals("bad row", e.getMessage());
+        }
+        multi.close();
+        assertEquals(Arrays.asList(ROW), rows);
+        assertEquals(1, urls.records.size());
+        assertEquals("http://example.com/", urls.records.get(0).getUrl());
+        assertEquals(1, mimes.records.size());
+        //the record was parsed once and handed to both
+        assertTrue(urls.last == mimes.last);
+        assertTrue(urls.closed && mimes.closed);
+    }
+
+    private static class Collector implements CCIndexRecordProcessor {
+        private final Set<CCIndexField> fields;
+        private final List<CCIndexRecord> records = new ArrayList<>();
+        private CCIndexRecord last = null;
+        private boolean closed = false;
+
+        Collector(Set<CCIndexField> fields) {
+            this.fields = fields;
+        }
+
+        @Override
+        public void init(String[] args) {
+        }
+
+        @Override
+        public void process(CCIndexRecord record) {
+            //the record is reused
+            records.add(record.copy());
+            last = record;
+        }
+
+        @Override
+        public void process(String row) {
+            fail("should get the parsed records");
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public Set<CCIndexField> getFields() {
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.tallison.utils.DigestSet;
+
+public class TestRowFilters {
+
+    @Test
+    public void testStatus() throws Exception {
+        RowFilter ok = RowFilters.status(200);
+        assertTrue(accept(ok, "a)/ 1 {\"url\": \"x\", \"status\": \"200\"}"));
+        assertTrue(accept(ok, "a)/ 1 {\"url\": \"x\",\"status\":200}"));
+        assertFalse(accept(ok, "a)/ 1 {\"url\": \"x\", \"status\": \"2000\"}"));
+        assertFalse(accept(ok, "a)/ 1 {\"url\": \"x\", \"status\": \"404\"}"));
+        assertFalse(accept(ok, "a)/ 1 {\"url\": \"x\"}"));
+        //value in a url isn't the key
+        assertFalse(accept(ok, "a)/ 1 {\"url\": \"x?\\\"status\\\": \\\"200\\\"\", \"status\": \"301\"}"));
+        //second record
+        assertTrue(accept(ok, "a)/ 1 {\"status\": \"404\"} b)/ 1 {\"status\": \"200\"}"));
+    }
+
+    @Test
+    public void testUrlSuffix() throws Exception {
+        RowFilter notRobots = RowFilters.urlNotEndingWith("robots.txt");
+        assertFalse(accept(notRobots, "a)/ 1 {\"url\": \"http://a.com/robots.txt\", \"status\": \"200\"}"));
+        assertTrue(accept(notRobots, "a)/ 1 {\"url\": \"http://a.com/robots.txt?x\", \"status\": \"200\"}"));
+        //escapes are left for the processor
+        assertTrue(accept(notRobots, "a)/ 1 {\"url\": \"http:\\/\\/a.com\\/robots.txt\"}"));
+        assertTrue(accept(notRobots, "a)/ 1 {\"url\": \"http://a.com/robots.txt\"} {\"url\": \"http://a.com/\"}"));
+    }
+
+    @Test
+    public void testDigest() throws Exception {
+        Path file = Files.createTempFile("cc-digests", ".txt");
+        try {
+            Files.write(file, Arrays.asList("3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ"), StandardCharsets.UTF_8);
+            RowFilter digest = RowFilters.digestIn(DigestSet.load(file));
+            assertTrue(accept(digest, "a)/ 1 {\"url\": \"x\", \"digest\": \"3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ\"}"));
+            assertFalse(accept(digest, "a)/ 1 {\"url\": \"x\", \"digest\": \"4I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ\"}"));
+            assertFalse(accept(digest, "a)/ 1 {\"url\": \"x\"}"));
+            //second record
+            assertTrue(accept(digest, "a)/ 1 {\"digest\": \"X\"} {\"digest\":\"3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ\"}"));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testCombinations() throws Exception {
+        RowFilter surt = RowFilters.surtPrefix(Arrays.asList("com,example)/", "org,"));
+        assertTrue(accept(surt, "org,example)/ 1 {}"));
+        assertFalse(accept(surt, "com,example,www)/ 1 {}"));
+        assertTrue(RowFilters.surtPrefix(Arrays.asList()) == RowFilter.ACCEPT_ALL);
+        assertTrue(RowFilters.and(RowFilter.ACCEPT_ALL, surt) == surt);
+
+        RowFilter either = RowFilters.or(Arrays.asList(surt, RowFilters.status(200)));
+        assertTrue(accept(either, "net,example)/ 1 {\"status\": \"200\"}"));
+        assertFalse(accept(either, "net,example)/ 1 {\"status\": \"404\"}"));
+        assertTrue(RowFilters.or(Arrays.asList(surt, RowFilter.ACCEPT_ALL)) == RowFilter.ACCEPT_ALL);
+    }
+
+    /**
+     * The filters may keep rows that the mappers don't want, but they
+     * must never drop one that they do
+     */
+    @Test
+    public void testNeverRejectsWantedRecords() throws Exception {
+        RowFilter filter = RowFilters.ok200NotRobots();
+        int rejected = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                TestRowFilters.class.getResourceAsStream("cdx-sample.txt"), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            while (line != null) {
+                if (! accept(filter, line)) {
+                    rejected++;
+                    for (CCIndexRecord r : CCIndexRecord.parseRecords(line)) {
+                        assertFalse(line, RowFilters.isOk200NotRobots(r));
+                    }
+                }
+                line = reader.readLine();
+            }
+        }
+        //404, 301, robots.txt, the empty record
+        assertEquals(4, rejected);
+    }
+
+    private static boolean accept(RowFilter filter, String row) {
+        byte[] padded = ("xx" + row + "yy").getBytes(StandardCharsets.UTF_8);
+        return filter.accept(padded, 2, padded.length - 4);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.cc.index;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.tallison.cc.index.mappers.CountMimes;
+import org.tallison.cc.index.mappers.CountMimesByTopLevelDomains;
+
+public class TestSharedAggregation {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = tmp.getRoot().toPath();
+        SharedAggregation.setEnabled(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SharedAggregation.setEnabled(false);
+    }
+
+    @Test
+    public void testMergedCounts() throws Exception {
+        String[][] threadRows = {
+                {
+                        CdxRow.of("http://a.com/").mime("text/html").status(200).build(),
+                        CdxRow.of("http://b.org/").mime("text/html").status(200).build(),
+                        CdxRow.of("http://c.com/").mime("application/pdf").status(200).build()
+                },
+                {
+                        CdxRow.of("http://d.com/").mime("Text/HTML").status(200).build(),
+                        CdxRow.of("http://e.org/").mime("application/pdf").status(200).build(),
+                        CdxRow.of("http://f.com/").mime("application/pdf").status(200).build()
+                },
+        };
+        for (String[] rows : threadRows) {
+            CountMimes mimes = new CountMimes();
+            mimes.init(new String[]{dir.toString()});
+            CountMimesByTopLevelDomains byTld = new CountMimesByTopLevelDomains();
+            byTld.init(new String[]{dir.toString()});
+            for (String row : rows) {
+                mimes.process(row);
+                byTld.process(row);
+            }
+            mimes.close();
+            byTld.close();
+        }
+        SharedAggregation.writeAll();
+
+        assertEquals("application/pdf\t3\ntext/html\t3\n", read("mime_counts.txt"));
+        assertEquals("com\tapplication/pdf\t2\ncom\ttext/html\t2\n" +
+                        "org\tapplication/pdf\t1\norg\ttext/html\t1\n",
+                read("mime_by_domain_counts.txt"));
+        //no per-thread files
+        assertEquals(2, dir.toFile().list().length);
+        assertFalse(Files.exists(dir.resolve("mime_counts_1.txt")));
+    }
+
+    private String read(String name) throws Exception {
+        return new String(Files.readAllBytes(dir.resolve(name)), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+public class TestBloomFilter {
+
+    @Test
+    public void testPut() throws Exception {
+        BloomFilter filter = new BloomFilter(100000, 0.01);
+        int added = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.put("a" + i)) {
+                added++;
+            }
+        }
+        //new keys that collide with the ones before them look old
+        assertTrue("added: " + added, added > 98500);
+        for (int i = 0; i < 100000; i++) {
+            assertTrue(filter.mightContain("a" + i));
+            assertFalse(filter.put("a" + i));
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("b" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 1500);
+        filter.close();
+    }
+
+    @Test
+    public void testConcurrentPut() throws Exception {
+        //each key is reported as new exactly once, whichever thread gets there first
+        BloomFilter filter = new BloomFilter(200000, 0.001);
+        AtomicInteger added = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    if (filter.put("k" + i)) {
+                        added.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        //a false positive can make a new key look old, but never the other way around
+        assertTrue(added.get() <= 50000);
+        assertTrue(added.get() > 49900);
+    }
+
+    @Test
+    public void testMapped() throws Exception {
+        Path dir = Files.createTempDirectory("cc-bloom");
+        try {
+            Path file = dir.resolve("test.bloom");
+            BloomFilter filter = new BloomFilter(1000, 0.01, file);
+            assertTrue(filter.put("x"));
+            assertFalse(filter.put("x"));
+            filter.close();
+            assertEquals(filter.getSizeInBytes(), Files.size(file));
+            try {
+                new BloomFilter(1000, 0.01, file);
+                throw new AssertionError("should have refused to overwrite the file");
+            } catch (IllegalArgumentException e) {
+                //expected
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir.toFile());
+        }
+    }
+}
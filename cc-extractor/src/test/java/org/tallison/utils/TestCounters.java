@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestCounters {
+
+    @Test
+    public void testObjectLongCounter() throws Exception {
+        ObjectLongCounter<String> counter = new ObjectLongCounter<>();
+        Map<String, Long> expected = new HashMap<>();
+        Random r = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            String k = "k" + r.nextInt(500);
+            counter.increment(k);
+            expected.merge(k, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), counter.size());
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            assertEquals((long) e.getValue(), counter.get(e.getKey()));
+        }
+        assertEquals(0, counter.get("missing"));
+        assertFalse(counter.containsKey("missing"));
+
+        counter.clear();
+        counter.add("b", 2);
+        counter.add("a", 2);
+        counter.add("c", 5);
+        assertEquals(Arrays.asList("c", "a", "b"), counter.keysByCountDesc(Comparator.naturalOrder()));
+
+        //as a map to ids, 0 is a value like any other
+        assertEquals(-1, counter.get("d", -1));
+        counter.put("d", 0);
+        assertEquals(0, counter.get("d", -1));
+        counter.put("c", 9);
+        assertEquals(9, counter.get("c"));
+        assertEquals(4, counter.size());
+    }
+
+    @Test
+    public void testLongLongCounter() throws Exception {
+        LongLongCounter counter = new LongLongCounter();
+        Map<Long, Long> expected = new HashMap<>();
+        Random r = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            long k = LongLongCounter.pack(r.nextInt(50) - 25, r.nextInt(50));
+            counter.increment(k);
+            expected.merge(k, 1L, Long::sum);
+        }
+        assertEquals(expected.size(), counter.size());
+        assertEquals(expected.size(), counter.keys().length);
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals((long) e.getValue(), counter.get(e.getKey()));
+        }
+        assertEquals(-1, counter.get(LongLongCounter.pack(100, 100), -1));
+
+        //0 is a key like any other
+        counter.put(0, 7);
+        assertTrue(counter.containsKey(0));
+        assertEquals(7, counter.get(0));
+    }
+
+    @Test
+    public void testPack() throws Exception {
+        long packed = LongLongCounter.pack(-3, Integer.MAX_VALUE);
+        assertEquals(-3, LongLongCounter.high(packed));
+        assertEquals(Integer.MAX_VALUE, LongLongCounter.low(packed));
+        packed = LongLongCounter.pack(7, -1);
+        assertEquals(7, LongLongCounter.high(packed));
+        assertEquals(-1, LongLongCounter.low(packed));
+    }
+
+    @Test
+    public void testSpaceSaving() throws Exception {
+        //zipf-ish: key i shows up about 1000/i times, plus lots of noise
+        SpaceSaving<String> sketch = new SpaceSaving<>(100);
+        Map<String, Long> expected = new HashMap<>();
+        Random r = new Random(42);
+        for (int i = 1; i <= 50; i++) {
+            for (int j = 0; j < 1000 / i; j++) {
+                offer(sketch, expected, "k" + i);
+                offer(sketch, expected, "noise" + r.nextInt(100000));
+            }
+        }
+        assertEquals(100, sketch.size());
+        assertTrue(sketch.getMin() <= sketch.getTotal() / 100);
+        assertBounds(sketch, expected);
+        List<SpaceSaving.Counter<String>> top = sketch.getTop(3);
+        assertEquals("k1", top.get(0).getKey());
+        assertEquals("k2", top.get(1).getKey());
+        assertEquals("k3", top.get(2).getKey());
+        assertEquals(1000, top.get(0).getCount() - top.get(0).getError(), 10);
+
+        long total = sketch.getTotal();
+        assertFalse(sketch.addIfCounted("not counted", 5));
+        assertEquals(total, sketch.getTotal());
+        long k2 = sketch.get("k2").getCount();
+        assertTrue(sketch.addIfCounted("k2", 5));
+        assertEquals(k2 + 5, sketch.get("k2").getCount());
+        assertEquals(total + 5, sketch.getTotal());
+    }
+
+    @Test
+    public void testSpaceSavingMerge() throws Exception {
+        SpaceSaving<String> a = new SpaceSaving<>(20);
+        SpaceSaving<String> b = new SpaceSaving<>(20);
+        Map<String, Long> expected = new HashMap<>();
+        Random r = new Random(7);
+        for (int i = 0; i < 5000; i++) {
+            String k = (r.nextInt(4) == 0) ? "noise" + r.nextInt(1000) : "k" + r.nextInt(5);
+            offer((i % 2 == 0) ? a : b, expected, k);
+        }
+        a.merge(b);
+        assertEquals(5000, a.getTotal());
+        assertBounds(a, expected);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(a.get("k" + i) != null);
+        }
+
+        SpaceSaving<String> restored = new SpaceSaving<>(20);
+        for (SpaceSaving.Counter<String> c : a.getTop(20)) {
+            restored.putCounter(c.getKey(), c.getCount(), c.getError());
+        }
+        assertEquals(a.getMin(), restored.getMin());
+        assertEquals(a.getTop(5).get(0).getKey(), restored.getTop(5).get(0).getKey());
+    }
+
+    private static void offer(SpaceSaving<String> sketch, Map<String, Long> expected, String k) {
+        sketch.offer(k);
+        expected.merge(k, 1L, Long::sum);
+    }
+
+    //counts are over the true counts by at most the error, and missing keys are at most the min
+    private static void assertBounds(SpaceSaving<String> sketch, Map<String, Long> expected) {
+        for (Map.Entry<String, Long> e : expected.entrySet()) {
+            SpaceSaving.Counter<String> c = sketch.get(e.getKey());
+            if (c == null) {
+                assertTrue(e.getValue() <= sketch.getMin());
+            } else {
+                assertTrue(c.getCount() >= e.getValue());
+                assertTrue(c.getCount() - c.getError() <= e.getValue());
+            }
+        }
+    }
+}
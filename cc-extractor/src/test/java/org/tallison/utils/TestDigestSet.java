@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestDigestSet {
+
+    @Test
+    public void testContains() throws Exception {
+        Random r = new Random(42);
+        List<String> in = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            String d = randomDigest(r);
+            in.add(d);
+            lines.add(d);
+            if (i % 1000 == 0) {
+                //duplicates, whitespace and the sha1: prefix
+                lines.add("  " + d);
+                lines.add("sha1:" + d);
+            }
+        }
+        lines.add("");
+        lines.add("not a digest");
+        DigestSet set = load(lines);
+        assertEquals(20001, set.size());
+        for (String d : in) {
+            assertTrue(d, set.contains(d));
+            byte[] padded = ("x\"" + d + "\"x").getBytes(StandardCharsets.US_ASCII);
+            assertTrue(d, set.contains(padded, 2, d.length()));
+            assertTrue(set.contains("sha1:" + d));
+        }
+        for (int i = 0; i < 20000; i++) {
+            assertFalse(set.contains(randomDigest(r)));
+        }
+        assertTrue(set.contains("not a digest"));
+        assertFalse(set.contains("not a digest either"));
+        assertFalse(set.contains((String) null));
+        //not base32
+        assertFalse(set.contains(in.get(0).replace(in.get(0).charAt(0), '1')));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        DigestSet set = load(new ArrayList<>());
+        assertEquals(0, set.size());
+        assertFalse(set.contains("3I42H3S6NNFQ2MSVX7XZKYAYSCX5QBYJ"));
+    }
+
+    private static DigestSet load(List<String> lines) throws Exception {
+        Path file = Files.createTempFile("cc-digests", ".txt");
+        try {
+            Files.write(file, lines, StandardCharsets.UTF_8);
+            return DigestSet.load(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static String randomDigest(Random r) {
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < DigestSet.BASE32_LENGTH; i++) {
+            sb.append(alphabet.charAt(r.nextInt(32)));
+        }
+        return sb.toString();
+    }
+}
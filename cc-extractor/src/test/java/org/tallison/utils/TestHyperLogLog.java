@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestHyperLogLog {
+
+    @Test
+    public void testEstimate() {
+        HyperLogLog hll = new HyperLogLog();
+        assertEquals(0, hll.estimate());
+        for (int i = 0; i < 10; i++) {
+            hll.add("http://host" + i + ".com/");
+            hll.add("http://host" + i + ".com/");
+        }
+        assertEquals(10, hll.estimate());
+        for (int i = 0; i < 1000000; i++) {
+            hll.add("http://host" + i + ".com/");
+        }
+        assertWithin(1000000, hll.estimate(), 0.05);
+    }
+
+    @Test
+    public void testMerge() {
+        HyperLogLog a = new HyperLogLog(14);
+        HyperLogLog b = new HyperLogLog(14);
+        for (int i = 0; i < 60000; i++) {
+            a.add(Integer.toString(i));
+        }
+        for (int i = 40000; i < 100000; i++) {
+            b.add(Integer.toString(i));
+        }
+        a.merge(b);
+        assertWithin(100000, a.estimate(), 0.03);
+    }
+
+    @Test
+    public void testSerialize() {
+        HyperLogLog sparse = new HyperLogLog();
+        for (int i = 0; i < 100; i++) {
+            sparse.add(Integer.toString(i));
+        }
+        String s = sparse.serialize();
+        assertTrue(s, s.startsWith("hll:12:s:"));
+        assertEquals(sparse.estimate(), HyperLogLog.deserialize(s).estimate());
+
+        HyperLogLog dense = new HyperLogLog(8);
+        for (int i = 0; i < 10000; i++) {
+            dense.add(Integer.toString(i));
+        }
+        s = dense.serialize();
+        assertTrue(s, s.startsWith("hll:8:d:"));
+        assertEquals(dense.estimate(), HyperLogLog.deserialize(s).estimate());
+        assertTrue(HyperLogLog.deserialize(new HyperLogLog().serialize()).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMismatchedPrecision() {
+        new HyperLogLog(10).merge(new HyperLogLog(12));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSketch() {
+        HyperLogLog.deserialize("hll:12:d:AAAA");
+    }
+
+    private static void assertWithin(long expected, long actual, double error) {
+        assertTrue("expected about " + expected + ", but got " + actual,
+                Math.abs(expected - actual) <= expected * error);
+    }
+}
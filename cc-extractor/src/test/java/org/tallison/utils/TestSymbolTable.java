@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+public class TestSymbolTable {
+
+    @Test
+    public void testIds() throws Exception {
+        SymbolTable table = new SymbolTable("test", 100);
+        assertEquals(0, table.getId("a"));
+        assertEquals(1, table.getId("b"));
+        assertEquals(0, table.getId(new String("a")));
+        assertEquals(SymbolTable.NO_ID, table.lookup("c"));
+        assertEquals(2, table.size());
+        assertEquals("b", table.getSymbol(1));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        SymbolTable table = new SymbolTable("test", 3);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, table.getId("s" + i));
+        }
+        assertEquals(SymbolTable.NO_ID, table.getId("s3"));
+        assertEquals(2, table.getId("s2"));
+        assertEquals(3, table.size());
+    }
+
+    @Test
+    public void testByteCache() throws Exception {
+        SymbolTable table = new SymbolTable("test", 1000);
+        SymbolTable.ByteCache cache = table.newByteCache(10);
+        byte[] bytes = "xxétéxx".getBytes(StandardCharsets.UTF_8);
+        int id = cache.getId(bytes, 2, bytes.length - 4);
+        assertEquals("été", table.getSymbol(id));
+        assertEquals(id, cache.getId(bytes, 2, bytes.length - 4));
+        assertEquals(id, table.getId("été"));
+        //past the cache's max entries, lookups still go to the table
+        for (int i = 0; i < 500; i++) {
+            byte[] b = ("v" + i).getBytes(StandardCharsets.UTF_8);
+            assertEquals(table.getId("v" + i), cache.getId(b, 0, b.length));
+        }
+        assertEquals(501, table.size());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        SymbolTable table = new SymbolTable("test", 100000);
+        int numThreads = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
+        List<Future<int[]>> futures = new ArrayList<>();
+        for (int t = 0; t < numThreads; t++) {
+            final int offset = t * 100;
+            futures.add(executorService.submit(new Callable<int[]>() {
+                @Override
+                public int[] call() throws Exception {
+                    SymbolTable.ByteCache cache = table.newByteCache(1000);
+                    int[] ids = new int[1000];
+                    for (int i = 0; i < ids.length; i++) {
+                        byte[] b = Integer.toString((i + offset) % 1000).getBytes(StandardCharsets.UTF_8);
+                        ids[(i + offset) % 1000] = cache.getId(b, 0, b.length);
+                    }
+                    return ids;
+                }
+            }));
+        }
+        int[] first = futures.get(0).get();
+        for (Future<int[]> f : futures) {
+            int[] ids = f.get();
+            for (int i = 0; i < ids.length; i++) {
+                assertEquals(first[i], ids[i]);
+                assertEquals(Integer.toString(i), table.getSymbol(ids[i]));
+            }
+        }
+        executorService.shutdownNow();
+        assertEquals(1000, table.size());
+        assertTrue(table.getId("999") < 1000);
+    }
+}
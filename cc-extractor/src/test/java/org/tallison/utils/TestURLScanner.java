@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.tallison.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TestURLScanner {
+
+    @Test
+    public void testParts() throws Exception {
+        URLScanner scanner = new URLScanner();
+        assertTrue(scanner.scan("http://user@www.Example.co.uk:8080/a/b/file.PDF?x=1&y=a.b#frag"));
+        assertEquals("www.example.co.uk", scanner.getHost());
+        assertEquals("uk", scanner.getTLD());
+        assertEquals("pdf", scanner.getExtension());
+        assertEquals("x=1&y=a.b", scanner.getQuery());
+        assertEquals("example.co.uk", scanner.getRegisteredDomain());
+
+        assertTrue(scanner.scan("https://example.com"));
+        assertNull(scanner.getExtension());
+        assertNull(scanner.getQuery());
+        assertEquals("com", scanner.getTLD());
+
+        assertTrue(scanner.scan("http://a.com/dir.d/"));
+        assertNull(scanner.getExtension());
+        assertTrue(scanner.scan("http://a.com/x.tar.gz"));
+        assertEquals("gz", scanner.getExtension());
+
+        assertTrue(scanner.scan("http://www.example.com./"));
+        assertEquals("www.example.com", scanner.getHost());
+        assertEquals("example.com", scanner.getRegisteredDomain());
+    }
+
+    @Test
+    public void testNoTLD() throws Exception {
+        URLScanner scanner = new URLScanner();
+        assertTrue(scanner.scan("https://192.168.1.1/x"));
+        assertNull(scanner.getTLD());
+        assertNull(scanner.getRegisteredDomain());
+
+        assertTrue(scanner.scan("http://[::1]:80/index.html"));
+        assertEquals("[::1]", scanner.getHost());
+        assertNull(scanner.getTLD());
+        assertEquals("html", scanner.getExtension());
+
+        assertFalse(scanner.scan("mailto:someone@example.com"));
+        assertNull(scanner.getHost());
+        assertFalse(scanner.scan("www.example.com/no/scheme"));
+        assertFalse(scanner.scan(null));
+    }
+
+    @Test
+    public void testPublicSuffixes() throws Exception {
+        PublicSuffixList psl = PublicSuffixList.getDefault();
+        assertEquals("example.com", psl.getRegisteredDomain("a.b.Example.COM"));
+        assertNull(psl.getRegisteredDomain("co.uk"));
+        assertNull(psl.getRegisteredDomain("localhost"));
+        //private section
+        assertEquals("foo.blogspot.com", psl.getRegisteredDomain("www.foo.blogspot.com"));
+        //wildcard and exception: *.kawasaki.jp, !city.kawasaki.jp
+        assertEquals("a.b.kawasaki.jp", psl.getRegisteredDomain("www.a.b.kawasaki.jp"));
+        assertEquals("city.kawasaki.jp", psl.getRegisteredDomain("www.city.kawasaki.jp"));
+        //unicode rule and its punycode form
+        assertEquals("example.公司.cn", psl.getRegisteredDomain("www.example.公司.cn"));
+        assertEquals("example.xn--55qx5d.cn", psl.getRegisteredDomain("www.example.xn--55qx5d.cn"));
+
+        String s = "xxwww.example.co.ukyy";
+        assertEquals(6, psl.getRegisteredDomainStart(s, 2, s.length() - 2));
+    }
+}